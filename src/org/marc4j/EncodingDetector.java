@@ -0,0 +1,211 @@
+package org.marc4j;
+
+/**
+ * Guesses the character encoding of the data in a binary MARC record from its
+ * bytes, in a single pass and without decoding any of the data.
+ * <p>
+ * The guess is based on the bytes that have the high bit set, and on the bytes
+ * next to them. A MARC-8 or UNIMARC combining diacritic precedes the letter it
+ * modifies, whereas an accented ISO-8859-1 letter takes the place of that
+ * letter, so an accented lower case letter at the end of a word can only be
+ * ISO-8859-1.
+ * MARC-8 escape sequences are a sure sign of MARC-8. When the bytes don't
+ * point clearly to one encoding no guess is made.
+ * </p>
+ */
+final class EncodingDetector {
+
+    static final String MARC8 = "MARC8";
+
+    static final String UNIMARC = "Unimarc";
+
+    static final String ISO8859_1 = "ISO8859_1";
+
+    private EncodingDetector() {
+    }
+
+    /**
+     * Returns true if the bytes are well-formed UTF-8, that is if decoding
+     * them as UTF-8 and encoding the result again gives back the same bytes.
+     *
+     * @param buf - the buffer holding the data
+     * @param offset - the position of the data in the buffer
+     * @param length - the number of bytes of data
+     * @return true if the data is valid UTF-8
+     */
+    static boolean isValidUtf8(final byte[] buf, final int offset, final int length) {
+        final int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            final int b = buf[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            final int trailing;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                trailing = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                trailing = 2;
+                if (b == 0xE0) {
+                    min = 0xA0; // overlong
+                } else if (b == 0xED) {
+                    max = 0x9F; // surrogates
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                trailing = 3;
+                if (b == 0xF0) {
+                    min = 0x90; // overlong
+                } else if (b == 0xF4) {
+                    max = 0x8F; // above U+10FFFF
+                }
+            } else {
+                return false;
+            }
+            if (i + trailing >= end) {
+                return false;
+            }
+            final int second = buf[i + 1] & 0xFF;
+            if (second < min || second > max) {
+                return false;
+            }
+            for (int j = 2; j <= trailing; j++) {
+                final int next = buf[i + j] & 0xFF;
+                if (next < 0x80 || next > 0xBF) {
+                    return false;
+                }
+            }
+            i += trailing + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the data holds a MARC-8 escape sequence, an escape
+     * character followed by one of the characters that select a character
+     * set.
+     *
+     * @param buf - the buffer holding the data
+     * @param offset - the position of the data in the buffer
+     * @param length - the number of bytes of data
+     * @return true if the data has MARC-8 escape sequences
+     */
+    static boolean hasMarc8Escapes(final byte[] buf, final int offset, final int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end - 1; i++) {
+            if (buf[i] == 0x1B && isEscapeFinal(buf[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Guesses the encoding of a record that is not valid UTF-8. Returns
+     * {@link #MARC8}, {@link #UNIMARC} or {@link #ISO8859_1}, or
+     * <code>null</code> if the bytes don't point clearly to one of them.
+     *
+     * @param buf - the buffer holding the record
+     * @param offset - the position of the record in the buffer
+     * @param length - the number of bytes of the record
+     * @return the name of the encoding, or null if no guess can be made
+     */
+    static String detect(final byte[] buf, final int offset, final int length) {
+        final int end = offset + length;
+
+        boolean hasEscapes = false;
+        boolean marc8Possible = true;
+        boolean unimarcPossible = true;
+        boolean latin1Possible = true;
+        int marc8Diacritics = 0;
+        int unimarcDiacritics = 0;
+        int wordFinalLetters = 0;
+
+        for (int i = offset; i < end; i++) {
+            final int b = buf[i] & 0xFF;
+            if (b == 0x1B) {
+                if (i + 1 < end && isEscapeFinal(buf[i + 1])) {
+                    hasEscapes = true;
+                }
+                continue;
+            }
+            if (b < 0x80) {
+                continue;
+            }
+            final int next = i + 1 < end ? buf[i + 1] & 0xFF : -1;
+            final boolean nextIsLetter = isLetter(next);
+            final boolean prevIsLetter = i - 1 >= offset && isLetter(buf[i - 1] & 0xFF) &&
+                    (i - 2 < offset || buf[i - 2] != Constants.US);
+
+            if (isMarc8Combining(b)) {
+                if (nextIsLetter) {
+                    marc8Diacritics++;
+                } else if (next < 0x80) {
+                    // a diacritic on a space, digit or punctuation
+                    marc8Possible = false;
+                }
+            } else if (!isMarc8Spacing(b)) {
+                marc8Possible = false;
+            }
+
+            if (b >= 0xC1 && b <= 0xCF && nextIsLetter) {
+                unimarcDiacritics++;
+                if ("aeiouAEIOU".indexOf(next) < 0) {
+                    unimarcPossible = false;
+                }
+            } else {
+                unimarcPossible = false;
+            }
+
+            if (b >= 0xC0 && b != 0xD7 && b != 0xF7) {
+                if (b >= 0xE0 && prevIsLetter && buf[i - 1] >= 'a' && !nextIsLetter && next < 0x80) {
+                    wordFinalLetters++;
+                }
+            } else {
+                latin1Possible = false;
+            }
+        }
+
+        if (!marc8Possible) {
+            hasEscapes = false;
+        }
+        if (hasEscapes || marc8Possible && unimarcDiacritics == 0 && wordFinalLetters == 0) {
+            return MARC8;
+        }
+        if (unimarcPossible && unimarcDiacritics > 0 && marc8Diacritics == 0 && wordFinalLetters == 0) {
+            return UNIMARC;
+        }
+        if (latin1Possible && wordFinalLetters > 0 && !marc8Possible && !unimarcPossible) {
+            return ISO8859_1;
+        }
+        return null;
+    }
+
+    private static boolean isEscapeFinal(final byte b) {
+        return b == '-' || b == '(' || b == ',' || b == ')' || b == '$' || b == 'b' || b == 's' || b == 'p';
+    }
+
+    private static boolean isLetter(final int b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z';
+    }
+
+    /**
+     * Returns true for the combining diacritics of the MARC-8 Extended Latin
+     * (ANSEL) character set.
+     */
+    private static boolean isMarc8Combining(final int b) {
+        return b >= 0xE0 && b <= 0xFB || b == 0xFE;
+    }
+
+    /**
+     * Returns true for the spacing characters of the MARC-8 Extended Latin
+     * (ANSEL) character set.
+     */
+    private static boolean isMarc8Spacing(final int b) {
+        return b >= 0xA1 && b <= 0xAE || b >= 0xB0 && b <= 0xBA || b == 0xBC || b == 0xBD ||
+                b >= 0xC0 && b <= 0xC8 || b == 0x88 || b == 0x89 || b == 0x8D || b == 0x8E;
+    }
+
+}
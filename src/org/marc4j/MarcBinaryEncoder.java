@@ -0,0 +1,611 @@
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ * Encodes MARC record objects in ISO 2709 format.
+ * <p>
+ * The leader, directory and field data of a record are written straight into
+ * a single byte buffer that is reused for every record, and numbers are
+ * formatted without going through {@link java.text.DecimalFormat}. Data in
+ * UTF-8 or ISO 8859-1 is encoded into the buffer directly, other encodings
+ * fall back to {@link String#getBytes(Charset)}.
+ * </p>
+ * <p>
+ * An encoder keeps no state that is shared with other encoders, so any
+ * number of them can be used on different threads at the same time. A single
+ * encoder must only be used by one thread at a time.
+ * </p>
+ *
+ * <pre>
+ * MarcBinaryEncoder encoder = new MarcBinaryEncoder(&quot;UTF-8&quot;, false);
+ * encoder.encode(record);
+ * encoder.writeTo(out);
+ * </pre>
+ * <p>
+ * A record can also be encoded field by field, without building a
+ * {@link Record}, by calling {@link #startRecord(Leader)}, then
+ * {@link #addControlField(String, CharSequence)} or
+ * {@link #startDataField(String, char, char)},
+ * {@link #addSubfield(char, CharSequence)} and {@link #endDataField()} for
+ * every field, and finally {@link #endRecord()}. The result is the same as
+ * encoding a record with those fields.
+ * </p>
+ */
+public class MarcBinaryEncoder {
+
+    private final String encoding;
+
+    private CharConverter converter = null;
+
+    private boolean allowOversizeEntry;
+
+    private byte[] buf = new byte[8192];
+
+    private int length = 0;
+
+    private boolean hasOversizeOffset;
+
+    private boolean hasOversizeLength;
+
+    // the state of a record that is encoded field by field
+    private Leader streamLeader = null;
+
+    private Charset streamCharset;
+
+    private String[] fieldTags = new String[64];
+
+    private int[] fieldStarts = new int[64];
+
+    private int[] fieldLengths = new int[64];
+
+    private boolean[] fieldIsControl = new boolean[64];
+
+    private int fieldCount;
+
+    private int controlNumberField;
+
+    private String dataFieldTag = null;
+
+    private int dataFieldStart;
+
+    /**
+     * Constructs an encoder for the supplied character encoding.
+     *
+     * @param encoding - the encoding of the data, or
+     *        {@link MarcStreamWriter#ENCODING_BY_CHAR_CODE} to choose between
+     *        UTF-8 and ISO 8859-1 from the leader of each record
+     * @param allowOversizeEntry - true to allow oversized records to be encoded
+     */
+    public MarcBinaryEncoder(final String encoding, final boolean allowOversizeEntry) {
+        this.encoding = encoding;
+        this.allowOversizeEntry = allowOversizeEntry;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    public CharConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Sets the character converter applied to the data of every field.
+     *
+     * @param converter - the character converter
+     */
+    public void setConverter(final CharConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Sets whether records that are too long for ISO 2709 are encoded anyway,
+     * with the numbers that overflow written as all nines.
+     *
+     * @param allowOversizeEntry - true if oversized records are allowed
+     */
+    public void setAllowOversizeEntry(final boolean allowOversizeEntry) {
+        this.allowOversizeEntry = allowOversizeEntry;
+    }
+
+    /**
+     * Encodes a record, replacing the previously encoded one. The base address
+     * and record length in the leader of the record are updated, as is the
+     * character coding scheme when a converter is set.
+     *
+     * @param record - the record to encode
+     * @throws MarcException if the record is too long or its data can't be encoded
+     */
+    public void encode(final Record record) {
+        final Leader ldr = record.getLeader();
+        streamLeader = null;
+
+        if (converter != null) {
+            ldr.setCharCodingScheme(converter.outputsUnicode() ? 'a' : ' ');
+        }
+        final Charset charset = getCharset(ldr);
+
+        final List<ControlField> controlFields = record.getControlFields();
+        final List<DataField> dataFields = record.getDataFields();
+
+        hasOversizeOffset = false;
+        hasOversizeLength = false;
+
+        final int baseAddress = 24 + 12 * (controlFields.size() + dataFields.size()) + 1;
+        int entry = 24;
+        length = 0;
+        ensureCapacity(baseAddress);
+        length = baseAddress;
+
+        for (final ControlField cf : controlFields) {
+            final int start = length;
+            appendData(cf.getData(), charset);
+            append(Constants.FT);
+            writeEntry(entry, cf.getTag(), length - start, start - baseAddress);
+            entry += 12;
+        }
+
+        for (final DataField df : dataFields) {
+            final int start = length;
+            ensureCapacity(2);
+            buf[length++] = (byte) df.getIndicator1();
+            buf[length++] = (byte) df.getIndicator2();
+            for (final Subfield sf : df.getSubfields()) {
+                ensureCapacity(2);
+                buf[length++] = (byte) Constants.US;
+                buf[length++] = (byte) sf.getCode();
+                appendData(sf.getData(), charset);
+            }
+            append(Constants.FT);
+            writeEntry(entry, df.getTag(), length - start, start - baseAddress);
+            entry += 12;
+        }
+        buf[entry] = (byte) Constants.FT;
+        append(Constants.RT);
+        finish(ldr, baseAddress);
+    }
+
+    /**
+     * Starts encoding a record field by field, replacing the previously
+     * encoded record. The character encoding is chosen from the supplied
+     * leader, which is completed by {@link #endRecord()}.
+     *
+     * @param ldr - the leader of the record
+     */
+    public void startRecord(final Leader ldr) {
+        if (converter != null) {
+            ldr.setCharCodingScheme(converter.outputsUnicode() ? 'a' : ' ');
+        }
+        streamLeader = ldr;
+        streamCharset = getCharset(ldr);
+        hasOversizeOffset = false;
+        hasOversizeLength = false;
+        length = 0;
+        fieldCount = 0;
+        controlNumberField = -1;
+        dataFieldTag = null;
+    }
+
+    /**
+     * Adds a control field to the record started by
+     * {@link #startRecord(Leader)}. Like in a {@link Record}, control fields
+     * come before data fields, a 001 field comes first and replaces an earlier
+     * 001 field, and a 000 field is ignored.
+     *
+     * @param tag - the tag of the field
+     * @param data - the data of the field
+     */
+    public void addControlField(final String tag, final CharSequence data) {
+        checkStarted();
+        if (tag.equals("000")) {
+            return;
+        }
+        final int start = length;
+        appendData(data, streamCharset);
+        append(Constants.FT);
+        if (tag.equals("001")) {
+            if (controlNumberField >= 0) {
+                // the new field replaces the old one
+                fieldTags[controlNumberField] = null;
+            }
+            controlNumberField = fieldCount;
+        }
+        addEntry(tag, start, true);
+    }
+
+    /**
+     * Starts a data field of the record started by
+     * {@link #startRecord(Leader)}.
+     *
+     * @param tag - the tag of the field
+     * @param ind1 - the first indicator
+     * @param ind2 - the second indicator
+     */
+    public void startDataField(final String tag, final char ind1, final char ind2) {
+        checkStarted();
+        dataFieldTag = tag;
+        dataFieldStart = length;
+        ensureCapacity(2);
+        buf[length++] = (byte) ind1;
+        buf[length++] = (byte) ind2;
+    }
+
+    /**
+     * Adds a subfield to the data field started by
+     * {@link #startDataField(String, char, char)}.
+     *
+     * @param code - the subfield code
+     * @param data - the data of the subfield
+     */
+    public void addSubfield(final char code, final CharSequence data) {
+        if (dataFieldTag == null) {
+            throw new IllegalStateException("no data field started");
+        }
+        ensureCapacity(2);
+        buf[length++] = (byte) Constants.US;
+        buf[length++] = (byte) code;
+        appendData(data, streamCharset);
+    }
+
+    /**
+     * Ends the data field started by
+     * {@link #startDataField(String, char, char)}.
+     */
+    public void endDataField() {
+        if (dataFieldTag == null) {
+            throw new IllegalStateException("no data field started");
+        }
+        append(Constants.FT);
+        addEntry(dataFieldTag, dataFieldStart, false);
+        dataFieldTag = null;
+    }
+
+    /**
+     * Ends the record started by {@link #startRecord(Leader)}, writing its
+     * leader and directory in front of the field data. The base address and
+     * record length in the leader are updated.
+     *
+     * @throws MarcException if the record is too long
+     */
+    public void endRecord() {
+        checkStarted();
+        if (dataFieldTag != null) {
+            throw new IllegalStateException("data field " + dataFieldTag + " not ended");
+        }
+        final Leader ldr = streamLeader;
+        streamLeader = null;
+        if (converter != null) {
+            ldr.setCharCodingScheme(converter.outputsUnicode() ? 'a' : ' ');
+        }
+
+        // the directory order, with the control number first and replaced
+        // fields left out
+        final int[] order = new int[fieldCount];
+        int entries = 0;
+        if (controlNumberField >= 0) {
+            order[entries++] = controlNumberField;
+        }
+        for (final boolean control : new boolean[] { true, false }) {
+            for (int i = 0; i < fieldCount; i++) {
+                if (fieldTags[i] != null && i != controlNumberField && fieldIsControl[i] == control) {
+                    order[entries++] = i;
+                }
+            }
+        }
+
+        boolean inOrder = true;
+        int dataLength = 0;
+        for (int i = 0; i < entries; i++) {
+            inOrder &= fieldStarts[order[i]] == dataLength;
+            dataLength += fieldLengths[order[i]];
+        }
+
+        final int baseAddress = 24 + 12 * entries + 1;
+        final int end = baseAddress + dataLength;
+        ensureCapacity(end + 1 - length);
+
+        if (inOrder) {
+            System.arraycopy(buf, 0, buf, baseAddress, dataLength);
+        } else {
+            // move the fields into directory order
+            final byte[] data = new byte[length];
+            System.arraycopy(buf, 0, data, 0, length);
+            int start = 0;
+            for (int i = 0; i < entries; i++) {
+                final int field = order[i];
+                System.arraycopy(data, fieldStarts[field], buf, baseAddress + start, fieldLengths[field]);
+                fieldStarts[field] = start;
+                start += fieldLengths[field];
+            }
+        }
+
+        for (int i = 0; i < entries; i++) {
+            writeEntry(24 + 12 * i, fieldTags[order[i]], fieldLengths[order[i]], fieldStarts[order[i]]);
+        }
+        buf[baseAddress - 1] = (byte) Constants.FT;
+        length = end;
+        append(Constants.RT);
+        finish(ldr, baseAddress);
+    }
+
+    private void checkStarted() {
+        if (streamLeader == null) {
+            throw new IllegalStateException("no record started");
+        }
+    }
+
+    /**
+     * Adds a directory entry for the field that starts at <code>start</code>
+     * and ends at the current length.
+     */
+    private void addEntry(final String tag, final int start, final boolean control) {
+        if (fieldCount == fieldTags.length) {
+            final int size = fieldCount * 2;
+            final String[] tags = new String[size];
+            final int[] starts = new int[size];
+            final int[] lengths = new int[size];
+            final boolean[] controls = new boolean[size];
+            System.arraycopy(fieldTags, 0, tags, 0, fieldCount);
+            System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+            System.arraycopy(fieldLengths, 0, lengths, 0, fieldCount);
+            System.arraycopy(fieldIsControl, 0, controls, 0, fieldCount);
+            fieldTags = tags;
+            fieldStarts = starts;
+            fieldLengths = lengths;
+            fieldIsControl = controls;
+        }
+        fieldTags[fieldCount] = tag;
+        fieldStarts[fieldCount] = start;
+        fieldLengths[fieldCount] = length - start;
+        fieldIsControl[fieldCount] = control;
+        fieldCount++;
+    }
+
+    /**
+     * Completes the leader of an encoded record and checks its size.
+     */
+    private void finish(final Leader ldr, final int baseAddress) {
+        final int recordLength = length;
+        ldr.setBaseAddressOfData(baseAddress);
+        ldr.setRecordLength(recordLength);
+
+        if (!allowOversizeEntry && (baseAddress > 99999 || recordLength > 99999 || hasOversizeOffset)) {
+            throw new MarcException("Record is too long to be a valid MARC binary record, it's length would be " +
+                    recordLength + " which is more thatn 99999 bytes");
+        }
+        if (!allowOversizeEntry && hasOversizeLength) {
+            throw new MarcException("Record has field that is too long to be a valid MARC binary record. " +
+                    "The maximum length for a field counting all of the sub-fields is 9999 bytes.");
+        }
+        writeLeader(ldr, buf);
+    }
+
+    /**
+     * Returns true if a field of the last record encoded starts at an offset
+     * that doesn't fit in its directory entry.
+     *
+     * @return true if the record has an oversized offset
+     */
+    public boolean hasOversizeOffset() {
+        return hasOversizeOffset;
+    }
+
+    /**
+     * Returns true if a field of the last record encoded is too long for its
+     * directory entry.
+     *
+     * @return true if the record has an oversized field
+     */
+    public boolean hasOversizeLength() {
+        return hasOversizeLength;
+    }
+
+    /**
+     * Returns the length in bytes of the encoded record.
+     *
+     * @return the length of the encoded record
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the buffer holding the encoded record in its first
+     * {@link #getLength()} bytes. The buffer is overwritten by the next call
+     * to {@link #encode(Record)}.
+     *
+     * @return the buffer holding the encoded record
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Returns a copy of the encoded record.
+     *
+     * @return the bytes of the encoded record
+     */
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[length];
+        System.arraycopy(buf, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Writes the encoded record to the supplied stream.
+     *
+     * @param out - the stream to write to
+     * @throws IOException if the record can't be written
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buf, 0, length);
+    }
+
+    /**
+     * Writes <code>value</code> into <code>width</code> bytes of the buffer as
+     * a zero padded decimal number. A value that doesn't fit is written as all
+     * nines, just like {@link org.marc4j.util.CustomDecimalFormat} does.
+     *
+     * @param buffer - the buffer to write to
+     * @param offset - the position of the first digit
+     * @param width - the number of digits
+     * @param value - the number to write
+     */
+    public static void formatNumber(final byte[] buffer, final int offset, final int width, final int value) {
+        int remaining = value;
+        if (exceeds(value, width)) {
+            for (int i = 0; i < width; i++) {
+                buffer[offset + i] = '9';
+            }
+            return;
+        }
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+    }
+
+    private static boolean exceeds(final int value, final int width) {
+        int max = 9;
+        for (int i = 1; i < width; i++) {
+            max = max * 10 + 9;
+        }
+        return value > max;
+    }
+
+    private Charset getCharset(final Leader ldr) {
+        final String name = encoding.equals(MarcStreamWriter.ENCODING_BY_CHAR_CODE) ? (ldr
+                .getCharCodingScheme() == 'a' ? "UTF-8" : "ISO8859_1") : encoding;
+        try {
+            return Charset.forName(name);
+        } catch (final IllegalArgumentException e) {
+            throw new MarcException("IO Error occured while writing record", new UnsupportedEncodingException(name));
+        }
+    }
+
+    private void writeEntry(final int entry, final String tag, final int fieldLength, final int start) {
+        for (int i = 0; i < 3; i++) {
+            buf[entry + i] = (byte) (i < tag.length() ? latin1(tag.charAt(i)) : ' ');
+        }
+        formatNumber(buf, entry + 3, 4, fieldLength);
+        formatNumber(buf, entry + 7, 5, start);
+        if (fieldLength > 99999) {
+            hasOversizeLength = true;
+        }
+        if (start > 99999) {
+            hasOversizeOffset = true;
+        }
+    }
+
+    /**
+     * Writes the 24 bytes of the leader to the start of the buffer.
+     */
+    static void writeLeader(final Leader ldr, final byte[] buf) {
+        formatNumber(buf, 0, 5, ldr.getRecordLength());
+        buf[5] = (byte) ldr.getRecordStatus();
+        buf[6] = (byte) ldr.getTypeOfRecord();
+        copyLatin1(ldr.getImplDefined1(), buf, 7, 2);
+        buf[9] = (byte) ldr.getCharCodingScheme();
+        buf[10] = (byte) ('0' + ldr.getIndicatorCount() % 10);
+        buf[11] = (byte) ('0' + ldr.getSubfieldCodeLength() % 10);
+        formatNumber(buf, 12, 5, ldr.getBaseAddressOfData());
+        copyLatin1(ldr.getImplDefined2(), buf, 17, 3);
+        copyLatin1(ldr.getEntryMap(), buf, 20, 4);
+    }
+
+    private static void copyLatin1(final char[] chars, final byte[] buf, final int offset, final int width) {
+        for (int i = 0; i < width; i++) {
+            buf[offset + i] = (byte) (chars != null && i < chars.length ? latin1(chars[i]) : ' ');
+        }
+    }
+
+    private static int latin1(final char c) {
+        return c <= 0xFF ? c : '?';
+    }
+
+    private void appendData(final CharSequence value, final Charset charset) {
+        final CharSequence data = converter != null ? converter.convert(value.toString()) : value;
+
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            appendUtf8(data);
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            appendLatin1(data);
+        } else {
+            final byte[] bytes = data.toString().getBytes(charset);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+
+    private void appendUtf8(final CharSequence data) {
+        final int count = data.length();
+        ensureCapacity(count * 3);
+        for (int i = 0; i < count; i++) {
+            final char c = data.charAt(i);
+            if (c < 0x80) {
+                buf[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[length++] = (byte) (0xC0 | c >> 6);
+                buf[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(data.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, data.charAt(++i));
+                buf[length++] = (byte) (0xF0 | cp >> 18);
+                buf[length++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[length++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced, like String.getBytes does
+                buf[length++] = '?';
+            } else {
+                buf[length++] = (byte) (0xE0 | c >> 12);
+                buf[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void appendLatin1(final CharSequence data) {
+        final int count = data.length();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            final char c = data.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(data.charAt(i + 1))) {
+                // a surrogate pair is a single unmappable character
+                i++;
+            }
+            buf[length++] = (byte) latin1(c);
+        }
+    }
+
+    private void append(final int b) {
+        ensureCapacity(1);
+        buf[length++] = (byte) b;
+    }
+
+    /**
+     * Makes sure <code>extra</code> more bytes fit in the buffer.
+     */
+    private void ensureCapacity(final int extra) {
+        if (length + extra > buf.length) {
+            final byte[] bigger = new byte[Math.max(buf.length * 2, length + extra)];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+    }
+
+}
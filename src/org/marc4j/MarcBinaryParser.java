@@ -0,0 +1,477 @@
+package org.marc4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.impl.LazyRecordImpl;
+import org.marc4j.marc.impl.Verifier;
+
+/**
+ * Parses MARC records in ISO 2709 format directly from a byte array.
+ * <p>
+ * The parser works on the raw record bytes with index arithmetic: the
+ * directory is read in a single pass and every field is decoded straight from
+ * the buffer, without wrapping the record or its fields in intermediate
+ * streams. The buffer is only read during {@link #parseRecord(byte[], int, int)},
+ * so callers are free to reuse it for the next record.
+ * </p>
+ * <p>
+ * When no encoding is given as a constructor argument the parser resolves the
+ * encoding by looking at the character coding scheme (leader position 9) in
+ * MARC21 records. A record that does not specify a known scheme is decoded
+ * using the encoding of the previous record. Instances are therefore not
+ * thread-safe, use one parser per thread.
+ * </p>
+ * <p>
+ * With lazy decoding enabled the parser returns {@link LazyRecordImpl}
+ * instances, which keep a copy of the raw record and only decode a field when
+ * it is accessed. They decode through this parser, possibly on other threads
+ * while it parses later records.
+ * </p>
+ */
+public class MarcBinaryParser {
+
+    private final MarcFactory factory;
+
+    private String encoding = "ISO8859_1";
+
+    private boolean override = false;
+
+    private Charset overrideCharset = null;
+
+    private CharConverter converterAnsel = null;
+
+    private boolean lazyDecoding = false;
+
+    private TagSelector tagSelector = null;
+
+    /**
+     * Constructs a parser that creates records with the default
+     * {@link MarcFactory}.
+     */
+    public MarcBinaryParser() {
+        this(MarcFactory.newInstance(), null);
+    }
+
+    /**
+     * Constructs a parser that creates records with the supplied factory.
+     *
+     * @param factory - the factory used to create the record objects
+     * @param encoding - the expected encoding of the record data, or
+     *        <code>null</code> to use the encoding given in the leader
+     */
+    public MarcBinaryParser(final MarcFactory factory, final String encoding) {
+        this.factory = factory;
+        if (encoding != null) {
+            this.encoding = encoding;
+            override = true;
+        }
+    }
+
+    /**
+     * Sets whether records are decoded lazily. When enabled
+     * {@link #parseRecord(byte[], int, int)} only parses the leader and the
+     * directory and returns a {@link LazyRecordImpl} that decodes the field
+     * data when a field is first accessed.
+     *
+     * @param lazyDecoding - true to return lazily decoded records
+     */
+    public void setLazyDecoding(final boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Returns true if records are decoded lazily.
+     *
+     * @return true if lazily decoded records are returned
+     */
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Sets the selector of the fields to decode. Fields it doesn't select are
+     * skipped using the lengths in the directory and are left out of the
+     * records returned by {@link #parseRecord(byte[], int, int)}.
+     *
+     * @param tagSelector - the fields to decode, or <code>null</code> for all
+     */
+    public void setTagSelector(final TagSelector tagSelector) {
+        this.tagSelector = tagSelector;
+    }
+
+    /**
+     * Returns the selector of the fields to decode, or <code>null</code> if
+     * all fields are decoded.
+     *
+     * @return the fields to decode
+     */
+    public TagSelector getTagSelector() {
+        return tagSelector;
+    }
+
+    /**
+     * Returns the record length stated in the first five bytes of the leader
+     * starting at the supplied offset.
+     *
+     * @param buf - the buffer holding the leader
+     * @param offset - the position of the leader in the buffer
+     * @return the record length, including the leader and record terminator
+     */
+    public static int parseRecordLength(final byte[] buf, final int offset) {
+        final int length = parseNumber(buf, offset, 5);
+        if (length < 24) {
+            throw new MarcException("unable to parse record length");
+        }
+        return length;
+    }
+
+    /**
+     * Returns true if the 24 bytes at the supplied offset look like the
+     * leader of a record: the record length and base address are numeric,
+     * and the base address leaves room for a directory made up of whole
+     * entries inside the record.
+     *
+     * @param buf - the buffer holding the candidate leader
+     * @param offset - the position of the candidate leader in the buffer
+     * @return true if the bytes can be the start of a record
+     */
+    public static boolean isPlausibleLeader(final byte[] buf, final int offset) {
+        final int length = parseNumber(buf, offset, 5);
+        final int baseAddress = parseNumber(buf, offset + 12, 5);
+        return length >= 24 && baseAddress >= 25 && baseAddress <= length &&
+                (baseAddress - 25) % 12 == 0;
+    }
+
+    /**
+     * Parses the record stored in the buffer at the supplied offset. The
+     * length is the number of bytes of the record, leader included, normally
+     * the record length stated in the leader.
+     *
+     * @param recordBuf - the buffer holding the record
+     * @param recordOffset - the position of the leader in the buffer
+     * @param length - the number of bytes belonging to the record
+     * @return Record - the record object
+     */
+    public Record parseRecord(final byte[] recordBuf, final int recordOffset, final int length) {
+        final byte[] buf;
+        final int offset;
+        if (lazyDecoding) {
+            // the record outlives the caller's buffer, keep a private copy
+            buf = Arrays.copyOfRange(recordBuf, recordOffset, recordOffset + length);
+            offset = 0;
+        } else {
+            buf = recordBuf;
+            offset = recordOffset;
+        }
+        final int end = offset + length;
+
+        final Leader ldr = factory.newLeader();
+        ldr.setRecordLength(length);
+        final int directoryLength;
+
+        try {
+            parseLeader(ldr, buf, offset);
+            directoryLength = ldr.getBaseAddressOfData() - (24 + 1);
+        } catch (final MarcException e) {
+            throw new MarcException("error parsing leader with data: " + new String(buf, offset, 24), e);
+        }
+
+        // if MARC 21 then check encoding
+        switch (ldr.getCharCodingScheme()) {
+            case ' ':
+                if (!override) {
+                    encoding = "ISO-8859-1";
+                }
+                break;
+            case 'a':
+                if (!override) {
+                    encoding = "UTF8";
+                }
+        }
+
+        final Record record;
+        if (lazyDecoding) {
+            record = new LazyRecordImpl(buf, encoding, this);
+        } else {
+            record = factory.newRecord();
+        }
+        record.setLeader(ldr);
+
+        if (directoryLength < 0 || directoryLength % 12 != 0) {
+            throw new MarcException("invalid directory");
+        }
+
+        final int size = directoryLength / 12;
+        final int dirStart = offset + 24;
+
+        if (dirStart + directoryLength > end) {
+            throw new MarcException("an error occured reading input", new EOFException());
+        }
+
+        final String[] tags = new String[size];
+        final int[] lengths = new int[size];
+
+        // field order is kept as (start << 32 | index) so the entries can be
+        // sorted on their start position without boxing
+        final long[] order = new long[size];
+        boolean sorted = true;
+
+        for (int i = 0, pos = dirStart; i < size; i++, pos += 12) {
+            // a null tag marks a field that is skipped
+            if (tagSelector == null || tagSelector.selects(buf, pos)) {
+                tags[i] = new String(buf, pos, 3, StandardCharsets.ISO_8859_1);
+            }
+            lengths[i] = parseNumber(buf, pos + 3, 4);
+            final int start = parseNumber(buf, pos + 7, 5);
+            if (lengths[i] < 0 || start < 0) {
+                throw new MarcException("invalid directory entry: " + new String(buf, pos, 12,
+                        StandardCharsets.ISO_8859_1));
+            }
+            order[i] = (long) start << 32 | i;
+            if (i > 0 && order[i] < order[i - 1]) {
+                sorted = false;
+            }
+        }
+
+        // Sort starting character positions
+        if (!sorted) {
+            Arrays.sort(order);
+        }
+
+        int pos = dirStart + directoryLength;
+
+        if (pos >= end || buf[pos++] != Constants.FT) {
+            throw new MarcException("expected field terminator at end of directory");
+        }
+
+        int lastTerminator = end - 1;
+        while (lastTerminator >= pos && buf[lastTerminator] != Constants.FT) {
+            lastTerminator--;
+        }
+
+        for (int s = 0; s < size; s++) {
+            final int i = (int) order[s];
+
+            if (pos > lastTerminator) {
+                throw new MarcException("an error occured reading input", new IOException("Field not terminated"));
+            }
+
+            if (tags[i] == null) {
+                if (pos + lengths[i] > end) {
+                    throw new MarcException("an error occured reading input", new EOFException());
+                }
+                pos += lengths[i];
+                continue;
+            }
+
+            if (Verifier.isControlField(tags[i])) {
+                final int dataLength = lengths[i] - 1;
+                if (dataLength < 0 || pos + dataLength > end) {
+                    throw new MarcException("an error occured reading input", new EOFException());
+                }
+
+                if (pos + dataLength == end || buf[pos + dataLength] != Constants.FT) {
+                    throw new MarcException("expected field terminator at end of field");
+                }
+
+                if (lazyDecoding) {
+                    ((LazyRecordImpl) record).addLazyControlField(tags[i], pos, dataLength);
+                } else {
+                    record.addVariableField(factory.newControlField(tags[i], getDataAsString(buf, pos, dataLength)));
+                }
+                pos += dataLength + 1;
+            } else {
+                if (pos + lengths[i] > end) {
+                    throw new MarcException("an error occured reading input", new EOFException());
+                }
+
+                try {
+                    if (lazyDecoding) {
+                        ((LazyRecordImpl) record).addLazyDataField(tags[i], pos, lengths[i]);
+                    } else {
+                        record.addVariableField(parseDataField(tags[i], buf, pos, lengths[i]));
+                    }
+                } catch (final IOException e) {
+                    throw new MarcException("error parsing data field for tag: " + tags[i] + " with data: " +
+                            new String(buf, pos, lengths[i]), e);
+                }
+                pos += lengths[i];
+            }
+        }
+
+        if (pos >= end || buf[pos] != Constants.RT) {
+            throw new MarcException("expected record terminator");
+        }
+
+        return record;
+    }
+
+    private DataField parseDataField(final String tag, final byte[] buf, final int offset, final int length)
+            throws IOException {
+        final int end = offset + length;
+        int pos = offset;
+
+        final char ind1 = pos < end ? (char) (buf[pos++] & 0xFF) : (char) -1;
+        final char ind2 = pos < end ? (char) (buf[pos++] & 0xFF) : (char) -1;
+
+        final DataField dataField = factory.newDataField(tag, ind1, ind2);
+        parseSubfields(dataField, buf, pos, end - pos, encoding);
+        return dataField;
+    }
+
+    /**
+     * Parses the subfields of a data field and adds them to the supplied
+     * field. The range starts after the indicators of the field.
+     *
+     * @param dataField - the field to add the subfields to
+     * @param buf - the buffer holding the field
+     * @param offset - the position of the first subfield in the buffer
+     * @param length - the number of bytes left in the field
+     * @param encoding - the encoding of the subfield data
+     * @throws IOException if a subfield is not terminated
+     */
+    public void parseSubfields(final DataField dataField, final byte[] buf, final int offset, final int length,
+            final String encoding) throws IOException {
+        final int end = offset + length;
+        int pos = offset;
+
+        while (pos < end) {
+            if (buf[pos++] != Constants.US) {
+                continue;
+            }
+            if (pos == end) {
+                throw new IOException("unexpected end of data field");
+            }
+
+            final int code = buf[pos++] & 0xFF;
+            if (code == Constants.FT) {
+                continue;
+            }
+
+            int dataEnd = pos;
+            while (dataEnd < end && buf[dataEnd] != Constants.US && buf[dataEnd] != Constants.FT) {
+                dataEnd++;
+            }
+            if (dataEnd == end) {
+                throw new IOException("subfield not terminated");
+            }
+
+            dataField.addSubfield(factory.newSubfield((char) code,
+                    getDataAsString(buf, pos, dataEnd - pos, encoding)));
+            pos = dataEnd;
+        }
+    }
+
+    private void parseLeader(final Leader ldr, final byte[] buf, final int offset) {
+        // Skip over bytes for record length, If we get here, its already been
+        // computed.
+        ldr.setRecordStatus((char) (buf[offset + 5] & 0xFF));
+        ldr.setTypeOfRecord((char) (buf[offset + 6] & 0xFF));
+        ldr.setImplDefined1(getChars(buf, offset + 7, 2));
+        ldr.setCharCodingScheme((char) (buf[offset + 9] & 0xFF));
+        final int indicatorCount = parseNumber(buf, offset + 10, 1);
+        final int subfieldCodeLength = parseNumber(buf, offset + 11, 1);
+        final int baseAddr = parseNumber(buf, offset + 12, 5);
+        ldr.setImplDefined2(getChars(buf, offset + 17, 3));
+        ldr.setEntryMap(getChars(buf, offset + 20, 4));
+
+        if (indicatorCount < 0) {
+            throw new MarcException("unable to parse indicator count");
+        }
+        ldr.setIndicatorCount(indicatorCount);
+        if (subfieldCodeLength < 0) {
+            throw new MarcException("unable to parse subfield code length");
+        }
+        ldr.setSubfieldCodeLength(subfieldCodeLength);
+        if (baseAddr < 0) {
+            throw new MarcException("unable to parse base address of data");
+        }
+        ldr.setBaseAddressOfData(baseAddr);
+    }
+
+    private static char[] getChars(final byte[] buf, final int offset, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buf[offset + i] & 0xFF);
+        }
+        return chars;
+    }
+
+    /**
+     * Parses a fixed width run of ASCII digits, returns -1 if any of the bytes
+     * is not a digit.
+     */
+    private static int parseNumber(final byte[] buf, final int offset, final int width) {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            final int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a data element using the encoding of the record being parsed.
+     *
+     * @param bytes - the buffer holding the data element
+     * @param offset - the position of the data element in the buffer
+     * @param length - the length of the data element in bytes
+     * @return the decoded data element
+     */
+    protected String getDataAsString(final byte[] bytes, final int offset, final int length) {
+        return getDataAsString(bytes, offset, length, encoding);
+    }
+
+    /**
+     * Decodes a data element using the supplied encoding, as resolved for the
+     * record the data element belongs to. MARC-8 data is converted while
+     * holding the lock of the parser, since the converter keeps state, so
+     * this method may be called from several threads at the same time.
+     *
+     * @param bytes - the buffer holding the data element
+     * @param offset - the position of the data element in the buffer
+     * @param length - the length of the data element in bytes
+     * @param encoding - the encoding of the record
+     * @return the decoded data element
+     */
+    public String getDataAsString(final byte[] bytes, final int offset, final int length, final String encoding) {
+        String dataElement = null;
+        if (encoding.equals("UTF-8") || encoding.equals("UTF8")) {
+            dataElement = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        } else if (encoding.equals("MARC-8") || encoding.equals("MARC8")) {
+            // lazily decoded records use the converter from other threads
+            synchronized (this) {
+                if (converterAnsel == null) {
+                    converterAnsel = new AnselToUnicode();
+                }
+                dataElement = converterAnsel.convert(bytes, offset, length);
+            }
+        } else if (encoding.equals("ISO-8859-1") || encoding.equals("ISO8859_1") || encoding.equals("ISO_8859_1")) {
+            dataElement = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        } else if (override) {
+            if (overrideCharset == null) {
+                try {
+                    overrideCharset = Charset.forName(encoding);
+                } catch (final IllegalArgumentException e) {
+                    throw new MarcException("unsupported encoding", e);
+                }
+            }
+            dataElement = new String(bytes, offset, length, overrideCharset);
+        }
+        return dataElement;
+    }
+
+}
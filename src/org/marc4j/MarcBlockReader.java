@@ -0,0 +1,151 @@
+package org.marc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.marc4j.marc.Record;
+import org.marc4j.util.BlockRecordReader;
+import org.marc4j.util.BlockRecordWriter;
+
+/**
+ * An iterator over the records of a block compressed file of binary MARC
+ * records, written by a {@link BlockRecordWriter}, that decompresses and
+ * decodes the blocks on several threads.
+ * <p>
+ * The thread calling {@link #hasNext()} and {@link #next()} only reads the
+ * compressed blocks from the input. A pool of worker threads decompresses
+ * them and decodes their records with a {@link MarcPermissiveStreamReader}.
+ * Records are still returned in input order. At most a fixed number of blocks
+ * per worker is read ahead.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.mrc.gz&quot;);
+ * MarcReader reader = new MarcBlockReader(input, 4, false, true, &quot;MARC8&quot;);
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * </pre>
+ */
+public class MarcBlockReader implements MarcReader {
+
+    // number of blocks read ahead for every worker thread
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final InputStream input;
+
+    private final OrderedWorkQueue<Record> queue;
+
+    private final boolean permissive;
+
+    private final boolean convertToUTF8;
+
+    private final String defaultEncoding;
+
+    /**
+     * Constructs an instance that reads the blocks from the input stream and
+     * decodes them on the given number of threads, neither permissively nor
+     * converting the records to UTF-8.
+     *
+     * @param input - the InputStream to read the blocks from
+     * @param threads - the number of threads decoding blocks
+     */
+    public MarcBlockReader(final InputStream input, final int threads) {
+        this(input, threads, false, false, "ISO8859_1");
+    }
+
+    /**
+     * Constructs an instance that reads the blocks from the input stream and
+     * decodes them on the given number of threads. The remaining parameters
+     * have the same meaning as for
+     * {@link MarcPermissiveStreamReader#MarcPermissiveStreamReader(InputStream, boolean, boolean, String)}.
+     *
+     * @param input - the InputStream to read the blocks from
+     * @param threads - the number of threads decoding blocks
+     * @param permissive - true to enable the permissive error recovery
+     * @param convertToUTF8 - true to convert the records to UTF-8
+     * @param defaultEncoding - the expected encoding of records without an 'a' in leader position 9
+     */
+    public MarcBlockReader(final InputStream input, final int threads, final boolean permissive,
+            final boolean convertToUTF8, final String defaultEncoding) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one decoding thread is needed");
+        }
+        this.input = input;
+        this.permissive = permissive;
+        this.convertToUTF8 = convertToUTF8;
+        this.defaultEncoding = defaultEncoding;
+        queue = new OrderedWorkQueue<Record>(new OrderedWorkQueue.Source<Record>() {
+
+            @Override
+            public OrderedWorkQueue.Task<Record> next() {
+                return nextBlock();
+            }
+        }, threads, BLOCKS_PER_THREAD, "marc4j-decoder", false);
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        return queue.hasNext();
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        return queue.next();
+    }
+
+    /**
+     * Stops the worker threads. Records that were not returned yet are
+     * discarded.
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * Reads the next block and returns the task that decodes its records, or
+     * <code>null</code> at the end of the input.
+     */
+    private OrderedWorkQueue.Task<Record> nextBlock() {
+        final byte[] block;
+        try {
+            block = BlockRecordReader.readBlock(input);
+        } catch (final IOException e) {
+            throw new MarcException("error reading block", e);
+        }
+        if (block == null) {
+            return null;
+        }
+        return new OrderedWorkQueue.Task<Record>() {
+
+            @Override
+            public void run(final List<Record> records) {
+                final byte[] data;
+                try {
+                    data = BlockRecordReader.inflateBlock(block);
+                } catch (final IOException e) {
+                    throw new MarcException(e.getMessage(), e);
+                }
+                final MarcReader reader = new MarcPermissiveStreamReader(new ByteArrayInputStream(data), permissive,
+                        convertToUTF8, defaultEncoding);
+                while (reader.hasNext()) {
+                    records.add(reader.next());
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,244 @@
+package org.marc4j;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.Record;
+
+/**
+ * Class for writing MARC record objects in ISO 2709 format to a file.
+ * <p>
+ * Every record is encoded by a {@link MarcBinaryEncoder} straight into a
+ * buffer of its own. The buffers are kept until they add up to the flush
+ * threshold, and then the records held in them are all written to the file
+ * with a single gathering write, without being copied into one array first.
+ * The buffers are reused for the records that follow, but only as many of
+ * them as fit in the flush threshold are kept, so the memory held by the
+ * writer stays below the threshold or the size of the largest record.
+ * </p>
+ *
+ * <pre>
+ * MarcWriter writer = new MarcFileChannelWriter(new File(&quot;output.mrc&quot;), &quot;UTF-8&quot;);
+ * while (reader.hasNext()) {
+ *     writer.write(reader.next());
+ * }
+ * writer.close();
+ * </pre>
+ */
+public class MarcFileChannelWriter implements MarcWriter {
+
+    /**
+     * The default number of bytes of buffers filled before they are written
+     * out.
+     */
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1024 * 1024;
+
+    // most platforms accept at most 1024 buffers in a single gathering write
+    private static final int MAX_BUFFERS = 1024;
+
+    private FileChannel channel;
+
+    private final String encoding;
+
+    private CharConverter converter = null;
+
+    private boolean allowOversizeEntry = false;
+
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+
+    private final List<MarcBinaryEncoder> encoders = new ArrayList<MarcBinaryEncoder>();
+
+    private final ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS];
+
+    private int count = 0;
+
+    private long pendingBytes = 0;
+
+    // the size of the buffers holding the records collected so far
+    private long pendingCapacity = 0;
+
+    /**
+     * Constructs an instance that writes to the supplied file, replacing any
+     * previous content, in ISO 8859-1.
+     *
+     * @param file - the file to write to
+     * @throws IOException if the file can not be opened
+     */
+    public MarcFileChannelWriter(final File file) throws IOException {
+        this(file, "ISO8859_1");
+    }
+
+    /**
+     * Constructs an instance that writes to the supplied file, replacing any
+     * previous content, in the supplied character encoding.
+     *
+     * @param file - the file to write to
+     * @param encoding - the encoding to use when writing out the records
+     * @throws IOException if the file can not be opened
+     */
+    public MarcFileChannelWriter(final File file, final String encoding) throws IOException {
+        this(new FileOutputStream(file).getChannel(), encoding);
+    }
+
+    /**
+     * Constructs an instance that writes to the supplied channel in the
+     * supplied character encoding, starting at its current position.
+     *
+     * @param channel - the channel to write to
+     * @param encoding - the encoding to use when writing out the records
+     */
+    public MarcFileChannelWriter(final FileChannel channel, final String encoding) {
+        this.channel = channel;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    @Override
+    public CharConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Sets the character converter.
+     *
+     * @param converter - the character converter
+     */
+    @Override
+    public void setConverter(final CharConverter converter) {
+        this.converter = converter;
+        for (final MarcBinaryEncoder encoder : encoders) {
+            encoder.setConverter(converter);
+        }
+    }
+
+    /**
+     * Sets whether an oversized entry is allowed.
+     *
+     * @param allowOversizeEntry - true if an oversized entry ought to be allowed
+     */
+    public void setAllowOversizeEntry(final boolean allowOversizeEntry) {
+        this.allowOversizeEntry = allowOversizeEntry;
+        for (final MarcBinaryEncoder encoder : encoders) {
+            encoder.setAllowOversizeEntry(allowOversizeEntry);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of buffers filled before they are written
+     * out.
+     *
+     * @return the flush threshold in bytes
+     */
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * Sets the number of bytes of buffers filled before they are written out,
+     * which bounds the memory held by the writer. A threshold of zero writes
+     * every record as soon as it is encoded.
+     *
+     * @param flushThreshold - the flush threshold in bytes
+     */
+    public void setFlushThreshold(final int flushThreshold) {
+        this.flushThreshold = Math.max(flushThreshold, 0);
+    }
+
+    /**
+     * Writes a <code>Record</code> object to the writer.
+     *
+     * @param record - the <code>Record</code> object
+     */
+    @Override
+    public void write(final Record record) {
+        if (channel == null) {
+            throw new MarcException("writer has been closed");
+        }
+        if (count == encoders.size()) {
+            final MarcBinaryEncoder encoder = new MarcBinaryEncoder(encoding, allowOversizeEntry);
+            encoder.setConverter(converter);
+            encoders.add(encoder);
+        }
+        final MarcBinaryEncoder encoder = encoders.get(count);
+        encoder.encode(record);
+
+        // the encoder only replaces its buffer when it has to grow it
+        if (buffers[count] == null || buffers[count].array() != encoder.getBuffer()) {
+            buffers[count] = ByteBuffer.wrap(encoder.getBuffer());
+        }
+        buffers[count].limit(encoder.getLength()).position(0);
+        pendingBytes += encoder.getLength();
+        pendingCapacity += encoder.getBuffer().length;
+        count++;
+
+        if (pendingCapacity >= flushThreshold || count == MAX_BUFFERS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the records collected so far to the file.
+     */
+    public void flush() {
+        try {
+            long remaining = pendingBytes;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, 0, count);
+            }
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while writing record", e);
+        } finally {
+            count = 0;
+            pendingBytes = 0;
+            pendingCapacity = 0;
+            trimEncoders();
+        }
+    }
+
+    /**
+     * Drops the encoders, and the buffers they hold, that don't fit in the
+     * flush threshold, always keeping one.
+     */
+    private void trimEncoders() {
+        long capacity = 0;
+        int keep = 0;
+        while (keep < encoders.size() && (keep == 0 || capacity + encoders.get(keep).getBuffer().length <=
+                flushThreshold)) {
+            capacity += encoders.get(keep).getBuffer().length;
+            keep++;
+        }
+        for (int i = encoders.size() - 1; i >= keep; i--) {
+            encoders.remove(i);
+            buffers[i] = null;
+        }
+    }
+
+    /**
+     * Writes the records collected so far and closes the file.
+     */
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            channel.close();
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured on close", e);
+        } finally {
+            channel = null;
+        }
+    }
+
+}
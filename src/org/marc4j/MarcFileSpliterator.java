@@ -0,0 +1,151 @@
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.marc4j.marc.Record;
+
+/**
+ * A {@link Spliterator} over the records in a file of binary MARC records.
+ * Splitting cuts the remaining byte range of the file in half at a record
+ * boundary found by a {@link MarcFileSplitter}, so every part of a parallel
+ * stream reads and decodes its own records straight from the file.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * final MarcFileSplitter splitter = new MarcFileSplitter(new File(&quot;file.mrc&quot;));
+ * final long count = StreamSupport.stream(new MarcFileSpliterator(splitter, true, true, &quot;BESTGUESS&quot;), true)
+ *         .filter(record -&gt; record.getVariableField(&quot;245&quot;) != null).count();
+ * splitter.close();
+ * </pre>
+ *
+ * <p>
+ * A range is only split before any of its records have been read, and ranges
+ * smaller than twice the minimum split size are not split at all.
+ * </p>
+ */
+public class MarcFileSpliterator implements Spliterator<Record> {
+
+    /**
+     * The default smallest number of bytes in a range created by splitting.
+     */
+    public static final long DEFAULT_MIN_SPLIT_SIZE = 1024 * 1024;
+
+    private final MarcFileSplitter splitter;
+
+    private final boolean permissive;
+
+    private final boolean convertToUTF8;
+
+    private final String defaultEncoding;
+
+    private final long minSplitSize;
+
+    private long start;
+
+    private final long end;
+
+    private MarcReader reader = null;
+
+    /**
+     * Constructs an instance for all the records in the file of the supplied
+     * splitter.
+     *
+     * @param splitter - the splitter of the file to read
+     * @param permissive - true to use the permissive/error correcting features
+     * @param convertToUTF8 - true to convert the records to UTF8 as they are read
+     * @param defaultEncoding - the expected encoding of the records
+     */
+    public MarcFileSpliterator(final MarcFileSplitter splitter, final boolean permissive,
+            final boolean convertToUTF8, final String defaultEncoding) {
+        this(splitter, 0, splitter.getFileSize(), permissive, convertToUTF8, defaultEncoding,
+                DEFAULT_MIN_SPLIT_SIZE);
+    }
+
+    /**
+     * Constructs an instance for the records in a range of the file of the
+     * supplied splitter, where both offsets are record boundaries.
+     *
+     * @param splitter - the splitter of the file to read
+     * @param start - the offset of the first record of the range
+     * @param end - the offset just past the last record of the range
+     * @param permissive - true to use the permissive/error correcting features
+     * @param convertToUTF8 - true to convert the records to UTF8 as they are read
+     * @param defaultEncoding - the expected encoding of the records
+     * @param minSplitSize - the smallest number of bytes in a range created by splitting
+     */
+    public MarcFileSpliterator(final MarcFileSplitter splitter, final long start, final long end,
+            final boolean permissive, final boolean convertToUTF8, final String defaultEncoding,
+            final long minSplitSize) {
+        this.splitter = splitter;
+        this.start = start;
+        this.end = end;
+        this.permissive = permissive;
+        this.convertToUTF8 = convertToUTF8;
+        this.defaultEncoding = defaultEncoding;
+        this.minSplitSize = Math.max(minSplitSize, 1);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Record> action) {
+        final MarcReader marcReader = getReader();
+        if (!marcReader.hasNext()) {
+            return false;
+        }
+        action.accept(marcReader.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super Record> action) {
+        final MarcReader marcReader = getReader();
+        while (marcReader.hasNext()) {
+            action.accept(marcReader.next());
+        }
+    }
+
+    @Override
+    public Spliterator<Record> trySplit() {
+        if (reader != null || end - start < 2 * minSplitSize) {
+            return null;
+        }
+        final long middle;
+        try {
+            middle = splitter.findRecordStart(start + (end - start) / 2);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (middle <= start || middle >= end) {
+            return null;
+        }
+        final Spliterator<Record> prefix = new MarcFileSpliterator(splitter, start, middle, permissive,
+                convertToUTF8, defaultEncoding, minSplitSize);
+        start = middle;
+        return prefix;
+    }
+
+    /**
+     * Returns the number of bytes in the range, which is roughly
+     * proportional to the number of records in it.
+     */
+    @Override
+    public long estimateSize() {
+        return end - start;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private MarcReader getReader() {
+        if (reader == null) {
+            reader = splitter.getReader(start, end, permissive, convertToUTF8, defaultEncoding);
+        }
+        return reader;
+    }
+
+}
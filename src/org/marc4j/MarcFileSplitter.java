@@ -0,0 +1,295 @@
+package org.marc4j;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a single file of MARC records in ISO 2709 format into byte ranges
+ * that each start at a record boundary, so the ranges can be read
+ * concurrently.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * final MarcFileSplitter splitter = new MarcFileSplitter(new File(&quot;file.mrc&quot;));
+ * final long[] bounds = splitter.split(4);
+ * for (int i = 0; i &lt; bounds.length - 1; i++) {
+ *     // hand each range to a different worker
+ *     MarcReader reader = splitter.getReader(bounds[i], bounds[i + 1], true, true, &quot;BESTGUESS&quot;);
+ *     while (reader.hasNext()) {
+ *         Record record = reader.next();
+ *         // Process record
+ *     }
+ * }
+ * splitter.close();
+ * </pre>
+ *
+ * <p>
+ * A split point is moved forward from the requested offset to the first
+ * record terminator that is followed by a plausible leader, one whose record
+ * length ends on another record terminator. Records with a damaged leader are
+ * never chosen as a split point, they simply stay in the range of the record
+ * before them, so every range can be read with the usual
+ * {@link MarcPermissiveStreamReader} semantics.
+ * </p>
+ * <p>
+ * The ranges are read through a single shared file channel using positional
+ * reads, so readers for different ranges can be used from different threads.
+ * </p>
+ */
+public class MarcFileSplitter {
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private FileChannel channel;
+
+    private final long fileSize;
+
+    /**
+     * Constructs an instance that splits the specified file.
+     *
+     * @param file - the file of MARC records to split
+     * @throws IOException if the file can not be opened
+     */
+    public MarcFileSplitter(final File file) throws IOException {
+        this.file = file;
+        channel = new RandomAccessFile(file, "r").getChannel();
+        fileSize = channel.size();
+    }
+
+    /**
+     * Returns the size of the file being split.
+     *
+     * @return the size of the file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Splits the file into at most <code>parts</code> ranges of roughly equal
+     * size. The returned array holds the start of every range followed by the
+     * end of the last one, so range <code>i</code> runs from
+     * <code>bounds[i]</code> up to <code>bounds[i + 1]</code>. Ranges that
+     * would be empty because no record starts inside them are left out.
+     *
+     * @param parts - the number of ranges wanted
+     * @return the boundaries of the ranges
+     * @throws IOException if the file can not be read
+     */
+    public long[] split(final int parts) throws IOException {
+        final List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        for (int i = 1; i < parts; i++) {
+            final long start = findRecordStart(fileSize / parts * i);
+            if (start > bounds.get(bounds.size() - 1) && start < fileSize) {
+                bounds.add(start);
+            }
+        }
+        bounds.add(fileSize);
+
+        final long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset of the first record that starts at or after the
+     * supplied offset, or the size of the file if there is none.
+     *
+     * @param offset - the offset to start looking from
+     * @return the offset of the start of a record
+     * @throws IOException if the file can not be read
+     */
+    public long findRecordStart(final long offset) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        final byte[] leader = new byte[24];
+
+        // a record starting exactly at offset is preceded by its terminator
+        long position = offset - 1;
+        while (position < fileSize) {
+            buffer.clear();
+            final int read = readFully(buffer, position);
+            final byte[] bytes = buffer.array();
+
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == Constants.RT && isRecordStart(position + i + 1, leader)) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Returns true if a record that can be framed by its leader starts at the
+     * supplied offset.
+     */
+    private boolean isRecordStart(final long offset, final byte[] leader) throws IOException {
+        if (offset + 24 > fileSize) {
+            return false;
+        }
+        if (readFully(ByteBuffer.wrap(leader), offset) < 24 || !MarcBinaryParser.isPlausibleLeader(leader, 0)) {
+            return false;
+        }
+        final long recordEnd = offset + MarcBinaryParser.parseRecordLength(leader, 0);
+        if (recordEnd > fileSize) {
+            return false;
+        }
+        final ByteBuffer terminator = ByteBuffer.allocate(1);
+        return readFully(terminator, recordEnd - 1) == 1 && terminator.get(0) == Constants.RT;
+    }
+
+    /**
+     * Returns a stream over the bytes of the file from <code>start</code> up
+     * to <code>end</code>.
+     *
+     * @param start - the offset of the first byte of the range
+     * @param end - the offset just past the last byte of the range
+     * @return an InputStream reading the range
+     */
+    public InputStream getInputStream(final long start, final long end) {
+        if (start < 0 || start > end || end > fileSize) {
+            throw new IllegalArgumentException("invalid range " + start + "-" + end + " for " + file);
+        }
+        return new RangeInputStream(start, end);
+    }
+
+    /**
+     * Returns a reader for the records in the range from <code>start</code>
+     * up to <code>end</code>, where both offsets are range boundaries
+     * returned by {@link #split(int)} or {@link #findRecordStart(long)}.
+     *
+     * @param start - the offset of the first record of the range
+     * @param end - the offset just past the last record of the range
+     * @param permissive - true to use the permissive/error correcting features
+     * @param convertToUTF8 - true to convert the records to UTF8 as they are read
+     * @param defaultEncoding - the expected encoding of the records
+     * @return a reader for the records in the range
+     */
+    public MarcReader getReader(final long start, final long end, final boolean permissive,
+            final boolean convertToUTF8, final String defaultEncoding) {
+        return new MarcPermissiveStreamReader(new BufferedInputStream(getInputStream(start, end),
+                SCAN_BUFFER_SIZE), permissive, convertToUTF8, defaultEncoding);
+    }
+
+    /**
+     * Splits the file into at most <code>parts</code> ranges and returns a
+     * reader for each of them, see {@link #split(int)}.
+     *
+     * @param parts - the number of ranges wanted
+     * @param permissive - true to use the permissive/error correcting features
+     * @param convertToUTF8 - true to convert the records to UTF8 as they are read
+     * @param defaultEncoding - the expected encoding of the records
+     * @return a reader for every range, in file order
+     * @throws IOException if the file can not be read
+     */
+    public List<MarcReader> getReaders(final int parts, final boolean permissive,
+            final boolean convertToUTF8, final String defaultEncoding) throws IOException {
+        final long[] bounds = split(parts);
+        final List<MarcReader> readers = new ArrayList<MarcReader>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            readers.add(getReader(bounds[i], bounds[i + 1], permissive, convertToUTF8, defaultEncoding));
+        }
+        return readers;
+    }
+
+    /**
+     * Closes the underlying file. Readers and streams returned by this
+     * splitter can no longer be used afterwards.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Fills the buffer from the supplied position, stopping early only at the
+     * end of the file, and returns the number of bytes read.
+     */
+    private int readFully(final ByteBuffer buffer, final long position) throws IOException {
+        if (channel == null) {
+            throw new IOException("splitter has been closed: " + file);
+        }
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * An InputStream over a byte range of the file, reading with positional
+     * reads so streams over different ranges don't interfere.
+     */
+    private class RangeInputStream extends InputStream {
+
+        private long position;
+
+        private final long end;
+
+        RangeInputStream(final long start, final long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            final int toRead = (int) Math.min(len, end - position);
+            final int read = readFully(ByteBuffer.wrap(b, off, toRead), position);
+            if (read == 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+}
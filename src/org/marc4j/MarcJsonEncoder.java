@@ -0,0 +1,564 @@
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ * Encodes MARC record objects as JSON, in the same formats as
+ * {@link MarcJsonWriter}.
+ * <p>
+ * The JSON of a record is written as UTF-8 straight into a single byte buffer
+ * that is reused for every record. Field data is escaped while it is copied
+ * into the buffer, and runs of characters that need no escaping are copied
+ * without further checks.
+ * </p>
+ * <p>
+ * In the {@link MarcJsonWriter#MARC_IN_JSON_LINES} format a record is written
+ * as MARC-in-JSON on a single line. Labels are always quoted and indentation
+ * is ignored, and tags, codes, indicators and the leader are escaped like the
+ * data, so every line is a valid JSON object.
+ * </p>
+ * <p>
+ * A single encoder must only be used by one thread at a time.
+ * </p>
+ *
+ * <pre>
+ * MarcJsonEncoder encoder = new MarcJsonEncoder(MarcJsonWriter.MARC_IN_JSON);
+ * encoder.encode(record);
+ * encoder.writeTo(out);
+ * </pre>
+ */
+public class MarcJsonEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final int jsonFormat;
+
+    private CharConverter converter = null;
+
+    private boolean indent = false;
+
+    private boolean escapeSlash = false;
+
+    private boolean quoteLabels;
+
+    private boolean normalize = false;
+
+    // true while a record is encoded in the JSON Lines format
+    private boolean lines = false;
+
+    private byte[] buf = new byte[8192];
+
+    private int length = 0;
+
+    /**
+     * Constructs an encoder for the supplied JSON format. Labels are quoted in
+     * the MARC_IN_JSON format and left unquoted in the MARC_JSON format.
+     *
+     * @param jsonFormat - {@link MarcJsonWriter#MARC_IN_JSON}, {@link MarcJsonWriter#MARC_JSON} or
+     *        {@link MarcJsonWriter#MARC_IN_JSON_LINES}
+     */
+    public MarcJsonEncoder(final int jsonFormat) {
+        this.jsonFormat = jsonFormat;
+        this.quoteLabels = jsonFormat != MarcJsonWriter.MARC_JSON;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter being used
+     */
+    public CharConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Sets the character converter that is applied to the data of the fields.
+     *
+     * @param converter - the character converter
+     */
+    public void setConverter(final CharConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Activates or deactivates indentation.
+     *
+     * @param indent - true to produce pretty-printed indented output
+     */
+    public void setIndent(final boolean indent) {
+        this.indent = indent;
+    }
+
+    /**
+     * Turns escaping of slashes in the field data on or off.
+     *
+     * @param escapeSlash - true to write slashes as <code>\/</code>
+     */
+    public void setEscapeSlash(final boolean escapeSlash) {
+        this.escapeSlash = escapeSlash;
+    }
+
+    /**
+     * Turns quoting of labels on or off.
+     *
+     * @param quoteLabels - true to put quotes around labels
+     */
+    public void setQuoteLabels(final boolean quoteLabels) {
+        this.quoteLabels = quoteLabels;
+    }
+
+    /**
+     * Turns Unicode normalization of the field data on or off.
+     *
+     * @param normalize - true to normalize the data to NFC
+     */
+    public void setUnicodeNormalization(final boolean normalize) {
+        this.normalize = normalize;
+    }
+
+    /**
+     * Encodes the supplied record, replacing the previously encoded record in
+     * the buffer.
+     *
+     * @param record - the record to encode
+     */
+    public void encode(final Record record) {
+        encode(record, jsonFormat);
+    }
+
+    /**
+     * Encodes the supplied record in the given format.
+     */
+    void encode(final Record record, final int format) {
+        length = 0;
+        lines = format == MarcJsonWriter.MARC_IN_JSON_LINES;
+        if (format == MarcJsonWriter.MARC_JSON) {
+            encodeMarcJson(record);
+        } else {
+            encodeMarcInJson(record);
+        }
+    }
+
+    private void encodeMarcJson(final Record record) {
+        append('{');
+        indent("\n    ");
+        label("leader");
+        appendAscii(":\"");
+        appendText(record.getLeader().toString());
+        appendAscii("\",");
+        indent("\n    ");
+        label("controlfield");
+        append(':');
+        indent("\n    ");
+        append('[');
+        boolean firstField = true;
+
+        for (final ControlField cf : record.getControlFields()) {
+            if (!firstField) {
+                append(',');
+            } else {
+                firstField = false;
+            }
+            indent("\n        ");
+            appendAscii("{ ");
+            label("tag");
+            appendAscii(" : \"");
+            appendText(cf.getTag());
+            appendAscii("\", ");
+            label("data");
+            appendAscii(" : \"");
+            appendEscaped(cf.getData());
+            appendAscii("\" }");
+        }
+
+        indent("\n    ");
+        append(']');
+        indent("\n    ");
+        appendAscii("datafield :");
+        indent("\n    ");
+        append('[');
+        firstField = true;
+
+        for (final DataField df : record.getDataFields()) {
+            if (!firstField) {
+                append(',');
+            } else {
+                firstField = false;
+            }
+            indent("\n        ");
+            append('{');
+            indent("\n            ");
+            label("tag");
+            appendAscii(" : \"");
+            appendText(df.getTag());
+            appendAscii("\", ");
+            label("ind");
+            appendAscii(" : \"");
+            appendChar(df.getIndicator1());
+            appendChar(df.getIndicator2());
+            appendAscii("\",");
+            indent("\n            ");
+            label("subfield");
+            appendAscii(" :");
+            indent("\n            ");
+            append('[');
+            boolean firstSubfield = true;
+
+            for (final Subfield sf : df.getSubfields()) {
+                if (!firstSubfield) {
+                    append(',');
+                } else {
+                    firstSubfield = false;
+                }
+                indent("\n                ");
+                appendAscii("{ ");
+                label("code");
+                appendAscii(" : \"");
+                appendChar(sf.getCode());
+                appendAscii("\", ");
+                label("data");
+                appendAscii(" : \"");
+                appendEscaped(sf.getData());
+                appendAscii("\" }");
+            }
+
+            indent("\n            ");
+            append(']');
+            indent("\n        ");
+            append('}');
+        }
+
+        indent("\n    ");
+        append(']');
+        indent("\n");
+        appendAscii("}\n");
+    }
+
+    private void encodeMarcInJson(final Record record) {
+        append('{');
+        indent("\n    ");
+        label("leader");
+        appendAscii(":\"");
+        appendText(record.getLeader().toString());
+        appendAscii("\",");
+        indent("\n    ");
+        label("fields");
+        append(':');
+        indent("\n    ");
+        append('[');
+        boolean firstField = true;
+
+        for (final ControlField cf : record.getControlFields()) {
+            if (!firstField) {
+                append(',');
+            } else {
+                firstField = false;
+            }
+            indent("\n        ");
+            append('{');
+            indent("\n            ");
+            quoteLabel();
+            appendText(cf.getTag());
+            quoteLabel();
+            appendAscii(":\"");
+            appendEscaped(cf.getData());
+            append('"');
+            indent("\n        ");
+            append('}');
+        }
+
+        for (final DataField df : record.getDataFields()) {
+            if (!firstField) {
+                append(',');
+            } else {
+                firstField = false;
+            }
+            indent("\n        ");
+            append('{');
+            indent("\n            ");
+            quoteLabel();
+            appendText(df.getTag());
+            quoteLabel();
+            append(':');
+            indent("\n                ");
+            append('{');
+            label("subfields");
+            append(':');
+            indent("\n                ");
+            append('[');
+            boolean firstSubfield = true;
+
+            for (final Subfield sf : df.getSubfields()) {
+                if (!firstSubfield) {
+                    append(',');
+                } else {
+                    firstSubfield = false;
+                }
+                indent("\n                    ");
+                append('{');
+                indent("\n                        ");
+                quoteLabel();
+                appendChar(sf.getCode());
+                quoteLabel();
+                appendAscii(":\"");
+                appendEscaped(sf.getData());
+                append('"');
+                indent("\n                    ");
+                append('}');
+            }
+
+            indent("\n                ");
+            appendAscii("],");
+            indent("\n                ");
+            label("ind1");
+            appendAscii(":\"");
+            appendChar(df.getIndicator1());
+            appendAscii("\",");
+            indent("\n                ");
+            label("ind2");
+            appendAscii(":\"");
+            appendChar(df.getIndicator2());
+            append('"');
+            indent("\n            ");
+            append('}');
+            indent("\n        ");
+            append('}');
+        }
+
+        indent("\n    ");
+        append(']');
+        indent("\n");
+        appendAscii("}\n");
+    }
+
+    /**
+     * Returns the length in bytes of the encoded record.
+     *
+     * @return the length of the encoded record
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the buffer holding the encoded record in its first
+     * {@link #getLength()} bytes. The buffer is overwritten by the next call
+     * to {@link #encode(Record)}.
+     *
+     * @return the buffer holding the encoded record
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Returns a copy of the encoded record.
+     *
+     * @return the bytes of the encoded record
+     */
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[length];
+        System.arraycopy(buf, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Returns the encoded record as a string.
+     *
+     * @return the JSON of the encoded record
+     */
+    @Override
+    public String toString() {
+        return new String(buf, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the encoded record to the supplied stream.
+     *
+     * @param out - the stream to write to
+     * @throws IOException if the record can't be written
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buf, 0, length);
+    }
+
+    private void indent(final String indentStr) {
+        if (indent && !lines) {
+            appendAscii(indentStr);
+        }
+    }
+
+    private void quoteLabel() {
+        if (quoteLabels || lines) {
+            append('"');
+        }
+    }
+
+    private void label(final String name) {
+        quoteLabel();
+        appendAscii(name);
+        quoteLabel();
+    }
+
+    /**
+     * Escapes the supplied field data after converting and normalizing it.
+     */
+    private void appendEscaped(final String value) {
+        String data = value;
+        if (converter != null) {
+            data = converter.convert(data);
+        }
+        if (normalize) {
+            data = Normalizer.normalize(data, Normalizer.Form.NFC);
+        }
+        appendJsonString(data);
+    }
+
+    /**
+     * Appends the supplied text as the contents of a JSON string. Quotes,
+     * backslashes and the usual control characters get their short escapes,
+     * other characters below 0x1f or above 0xff are written as Unicode
+     * escapes. 0x1f itself is only escaped in the JSON Lines format.
+     */
+    private void appendJsonString(final String data) {
+        final int count = data.length();
+        ensureCapacity(count * 6);
+        final byte[] b = buf;
+        int pos = length;
+
+        for (int i = 0; i < count; i++) {
+            final char c = data.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\' && c != '/') {
+                b[pos++] = (byte) c;
+                continue;
+            }
+            switch (c) {
+                case '/':
+                    if (escapeSlash) {
+                        b[pos++] = '\\';
+                    }
+                    b[pos++] = '/';
+                    break;
+                case '"':
+                case '\\':
+                    b[pos++] = '\\';
+                    b[pos++] = (byte) c;
+                    break;
+                case '\b':
+                    pos = shortEscape(b, pos, 'b');
+                    break;
+                case '\f':
+                    pos = shortEscape(b, pos, 'f');
+                    break;
+                case '\n':
+                    pos = shortEscape(b, pos, 'n');
+                    break;
+                case '\r':
+                    pos = shortEscape(b, pos, 'r');
+                    break;
+                case '\t':
+                    pos = shortEscape(b, pos, 't');
+                    break;
+                default:
+                    if (c > 0xff || c < 0x1f || c == 0x1f && lines) {
+                        b[pos++] = '\\';
+                        b[pos++] = 'u';
+                        b[pos++] = HEX[c >> 12];
+                        b[pos++] = HEX[c >> 8 & 0xF];
+                        b[pos++] = HEX[c >> 4 & 0xF];
+                        b[pos++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        b[pos++] = (byte) c;
+                    } else {
+                        b[pos++] = (byte) (0xC0 | c >> 6);
+                        b[pos++] = (byte) (0x80 | c & 0x3F);
+                    }
+                    break;
+            }
+        }
+        length = pos;
+    }
+
+    private static int shortEscape(final byte[] b, final int pos, final char c) {
+        b[pos] = '\\';
+        b[pos + 1] = (byte) c;
+        return pos + 2;
+    }
+
+    /**
+     * Appends text that is not escaped, such as tags and the leader, as UTF-8.
+     * It is escaped after all in the JSON Lines format.
+     */
+    private void appendText(final String text) {
+        if (lines) {
+            appendJsonString(text);
+            return;
+        }
+        final int count = text.length();
+        ensureCapacity(count * 3);
+        for (int i = 0; i < count; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                buf[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[length++] = (byte) (0xC0 | c >> 6);
+                buf[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, text.charAt(++i));
+                buf[length++] = (byte) (0xF0 | cp >> 18);
+                buf[length++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[length++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced, like String.getBytes does
+                buf[length++] = '?';
+            } else {
+                buf[length++] = (byte) (0xE0 | c >> 12);
+                buf[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void appendChar(final char c) {
+        if (c < 0x80 && !lines) {
+            append(c);
+        } else {
+            appendText(String.valueOf(c));
+        }
+    }
+
+    private void appendAscii(final String text) {
+        final int count = text.length();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            buf[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void append(final int b) {
+        ensureCapacity(1);
+        buf[length++] = (byte) b;
+    }
+
+    /**
+     * Makes sure <code>extra</code> more bytes fit in the buffer.
+     */
+    private void ensureCapacity(final int extra) {
+        if (length + extra > buf.length) {
+            final byte[] bigger = new byte[Math.max(buf.length * 2, length + extra)];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package org.marc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.marc4j.marc.Record;
+
+/**
+ * An iterator over MARC records in JSON Lines format, with one MARC-in-JSON
+ * record per line, as written by a {@link MarcJsonWriter} in the
+ * {@link MarcJsonWriter#MARC_IN_JSON_LINES} format.
+ * <p>
+ * The input is cut into chunks of whole lines without parsing it, and every
+ * chunk is parsed with a {@link MarcJsonReader}. Given a number of threads, a
+ * pool of worker threads parses the chunks while the thread calling
+ * {@link #hasNext()} and {@link #next()} only cuts them. Records are still
+ * returned in input order, and at most a fixed number of chunks per worker is
+ * read ahead. Without a number of threads the chunks are parsed on the calling
+ * thread.
+ * </p>
+ * <p>
+ * The input is read as UTF-8. Since a chunk is parsed by a
+ * {@link MarcJsonReader}, a line may also hold a record in the MARC-JSON
+ * format, but a record must not be spread over several lines.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.jsonl&quot;);
+ * MarcReader reader = new MarcJsonLinesReader(input, 8);
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * </pre>
+ */
+public class MarcJsonLinesReader implements MarcReader {
+
+    /** The default number of bytes of input parsed in one go */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    // number of chunks read ahead for every worker thread
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final InputStream input;
+
+    private final int chunkSize;
+
+    private final OrderedWorkQueue<Record> queue;
+
+    // the start of a line that didn't fit in the previous chunk
+    private byte[] carry = new byte[0];
+
+    private boolean firstChunk = true;
+
+    /**
+     * Constructs an instance that reads the records from the input stream and
+     * parses them on the calling thread.
+     *
+     * @param input - the InputStream to read the records from
+     */
+    public MarcJsonLinesReader(final InputStream input) {
+        this.input = input;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        queue = newQueue(0);
+    }
+
+    /**
+     * Constructs an instance that reads the records from the input stream and
+     * parses them on the given number of threads.
+     *
+     * @param input - the InputStream to read the records from
+     * @param threads - the number of threads parsing records
+     */
+    public MarcJsonLinesReader(final InputStream input, final int threads) {
+        this(input, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs an instance that reads the records from the input stream and
+     * parses them on the given number of threads, in chunks of about the given
+     * size. A chunk holds at least one line, however long it is.
+     *
+     * @param input - the InputStream to read the records from
+     * @param threads - the number of threads parsing records
+     * @param chunkSize - the number of bytes of input to parse in one go
+     */
+    public MarcJsonLinesReader(final InputStream input, final int threads, final int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one parsing thread is needed");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("the chunk size must be positive");
+        }
+        this.input = input;
+        this.chunkSize = chunkSize;
+        queue = newQueue(threads);
+    }
+
+    private OrderedWorkQueue<Record> newQueue(final int threads) {
+        return new OrderedWorkQueue<Record>(new OrderedWorkQueue.Source<Record>() {
+
+            @Override
+            public OrderedWorkQueue.Task<Record> next() {
+                final byte[] chunk;
+                try {
+                    chunk = nextChunk();
+                } catch (final IOException e) {
+                    throw new MarcException("error reading input", e);
+                }
+                return chunk != null ? new ParseTask(chunk) : null;
+            }
+        }, threads, CHUNKS_PER_THREAD, "marc4j-json-parser", true);
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        return queue.hasNext();
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        return queue.next();
+    }
+
+    /**
+     * Stops the worker threads. Records that were not returned yet are
+     * discarded.
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * Reads the next chunk of whole lines, or <code>null</code> at the end of
+     * the input. The chunk ends with the last newline read, the rest of the
+     * input read is kept for the next chunk.
+     */
+    private byte[] nextChunk() throws IOException {
+        byte[] buf = Arrays.copyOf(carry, Math.max(chunkSize, carry.length * 2));
+        int length = carry.length;
+        int scanned = length;
+
+        while (true) {
+            int read = 0;
+            while (length < buf.length && (read = input.read(buf, length, buf.length - length)) >= 0) {
+                length += read;
+            }
+            int start = 0;
+            if (firstChunk && length >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB &&
+                    buf[2] == (byte) 0xBF) {
+                // skip a byte order mark
+                start = 3;
+            }
+            if (read < 0) {
+                carry = new byte[0];
+                firstChunk = false;
+                return length > start ? Arrays.copyOfRange(buf, start, length) : null;
+            }
+            for (int i = length - 1; i >= scanned; i--) {
+                if (buf[i] == '\n') {
+                    carry = Arrays.copyOfRange(buf, i + 1, length);
+                    firstChunk = false;
+                    return Arrays.copyOfRange(buf, start, i + 1);
+                }
+            }
+            // a line that is longer than the chunk
+            scanned = length;
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+    }
+
+    /**
+     * Parses the records in a chunk of lines.
+     */
+    private static class ParseTask implements OrderedWorkQueue.Task<Record> {
+
+        private final byte[] chunk;
+
+        ParseTask(final byte[] chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run(final List<Record> records) {
+            final MarcReader reader = new MarcJsonReader(new ByteArrayInputStream(chunk), StandardCharsets.UTF_8);
+            try {
+                while (reader.hasNext()) {
+                    records.add(reader.next());
+                }
+            } catch (final MarcException e) {
+                throw e;
+            } catch (final RuntimeException e) {
+                throw new MarcException("Malformed JSON input", e);
+            }
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ package org.marc4j;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
@@ -40,10 +41,21 @@ public class MarcJsonReader implements MarcReader {
      * @param is - an InputStream to read
      */
     public MarcJsonReader(final InputStream is) {
+        this(is, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a MarcJsonReader that decodes the supplied {@link InputStream}
+     * with the given character set.
+     * 
+     * @param is - an InputStream to read
+     * @param charset - the character set of the input
+     */
+    MarcJsonReader(final InputStream is, final Charset charset) {
         parser = new JsonParser(JsonParser.OPT_INTERN_KEYWORDS |
                         JsonParser.OPT_UNQUOTED_KEYWORDS |
                         JsonParser.OPT_SINGLE_QUOTE_STRINGS);
-        parser.setInput("MarcInput", new InputStreamReader(is), false);
+        parser.setInput("MarcInput", new InputStreamReader(is, charset), false);
         // if(System.getProperty("org.marc4j.marc.MarcFactory") == null)
         // {
         // System.setProperty("org.marc4j.marc.MarcFactory",
@@ -3,21 +3,37 @@ package org.marc4j;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.text.Normalizer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 
 import org.marc4j.converter.CharConverter;
-import org.marc4j.marc.ControlField;
-import org.marc4j.marc.DataField;
 import org.marc4j.marc.Record;
-import org.marc4j.marc.Subfield;
 
+/**
+ * Writes MARC records as JSON, in either the MARC-in-JSON or the MARC-JSON
+ * format, or in MARC-in-JSON with one record per line.
+ * <p>
+ * Records are encoded by a {@link MarcJsonEncoder}, which writes the UTF-8
+ * bytes of a record into a buffer that is reused for every record, and the
+ * buffer is written to the output stream in one go. A subclass that overrides
+ * {@link #toMarcJson(Record)} or {@link #toMarcInJson(Record)} has the
+ * MARC-JSON and MARC-in-JSON output of its records written from the strings
+ * those methods return instead.
+ * </p>
+ */
 public class MarcJsonWriter implements MarcWriter {
 
     public final static int MARC_IN_JSON = 0;
 
     public final static int MARC_JSON = 1;
 
+    /**
+     * MARC-in-JSON with one record per line and no indentation, known as JSON
+     * Lines or newline-delimited JSON. It can be read with a
+     * {@link MarcJsonLinesReader}.
+     */
+    public final static int MARC_IN_JSON_LINES = 2;
+
     /**
      * Character encoding. Default is UTF-8.
      */
@@ -33,9 +49,10 @@ public class MarcJsonWriter implements MarcWriter {
 
     private boolean quoteLabels = true;
 
-    private String ql = "\"";
+    private final MarcJsonEncoder encoder = new MarcJsonEncoder(MARC_IN_JSON);
 
-    private boolean normalize = false;
+    // whether a subclass overrides one of the methods returning the JSON of a record
+    private Boolean usesOverrides = null;
 
     /**
      * Creates a {@link MarcJsonWriter} with the supplied {@link OutputStream}.
@@ -61,7 +78,8 @@ public class MarcJsonWriter implements MarcWriter {
      * Creates a {@link MarcJsonWriter} with the supplied {@link OutputStream} to write using the supplied JSON format.
      *
      * @param os - the OutputStream to write to
-     * @param jsonFormat - whether to use the MARC_IN_JSON format (default) or the MARC_JSON format (1)
+     * @param jsonFormat - whether to use the MARC_IN_JSON format (default), the MARC_JSON format (1) or the
+     *        MARC_IN_JSON_LINES format (2)
      */
     public MarcJsonWriter(final OutputStream os, final int jsonFormat) {
         this.os = os;
@@ -78,9 +96,11 @@ public class MarcJsonWriter implements MarcWriter {
      *
      * @param os - the OutputStream to write to
      * @param conv - the Character converter to use to transform the data as it is being written out.
-     * @param jsonFormat - whether to use the MARC_IN_JSON format (default) or the MARC_JSON format (1)
+     * @param jsonFormat - whether to use the MARC_IN_JSON format (default), the MARC_JSON format (1) or the
+     *        MARC_IN_JSON_LINES format (2)
      */
     public MarcJsonWriter(final OutputStream os, final CharConverter conv, final int jsonFormat) {
+        this.os = os;
         setConverter(conv);
         useJsonFormat = jsonFormat;
 
@@ -97,331 +117,26 @@ public class MarcJsonWriter implements MarcWriter {
         // TODO Auto-generated method stub
     }
 
+    /**
+     * Returns the supplied record in the MARC-JSON format.
+     *
+     * @param record - the record to encode
+     * @return the JSON of the record
+     */
     protected String toMarcJson(final Record record) {
-        final StringBuffer buf = new StringBuffer();
-        buf.append("{");
-
-        indent(buf, "\n    ");
-
-        buf.append(ql + "leader" + ql + ":\"").append(record.getLeader().toString()).append("\",");
-
-        indent(buf, "\n    ");
-
-        buf.append(ql + "controlfield" + ql + ":");
-
-        indent(buf, "\n    ");
-
-        buf.append("[");
-        boolean firstField = true;
-
-        for (final ControlField cf : record.getControlFields()) {
-            if (!firstField) {
-                buf.append(",");
-            } else {
-                firstField = false;
-            }
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("{ " + ql + "tag" + ql + " : \"" + cf.getTag() + "\", " + ql + "data" + ql + " : ")
-                    .append("\"" + unicodeEscape(cf.getData()) + "\" }");
-        }
-
-        indent(buf, "\n    ");
-
-        buf.append("]");
-
-        indent(buf, "\n    ");
-
-        buf.append("datafield :");
-
-        indent(buf, "\n    ");
-
-        buf.append("[");
-        firstField = true;
-
-        for (final DataField df : record.getDataFields()) {
-            if (!firstField) {
-                buf.append(",");
-            } else {
-                firstField = false;
-            }
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("{");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append(ql + "tag" + ql + " : \"" + df.getTag() + "\", " + ql + "ind" + ql + " : \"" +
-                    df.getIndicator1() + df.getIndicator2() + "\",");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append(ql + "subfield" + ql + " :");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append("[");
-            boolean firstSubfield = true;
-
-            for (final Subfield sf : df.getSubfields()) {
-                if (!firstSubfield) {
-                    buf.append(",");
-                } else {
-                    firstSubfield = false;
-                }
-
-                if (indent) {
-                    buf.append("\n                ");
-                }
-
-                buf.append("{ " + ql + "code" + ql + " : \"" + sf.getCode() + "\", " + ql + "data" + ql + " : \"" +
-                        unicodeEscape(sf.getData()) + "\" }");
-            }
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append("]");
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("}");
-        }
-
-        indent(buf, "\n    ");
-
-        buf.append("]");
-
-        indent(buf, "\n");
-
-        buf.append("}\n");
-
-        return (buf.toString());
-    }
-
-    private void indent(StringBuffer buf, String indentStr) {
-        if (indent) {
-            buf.append(indentStr);
-        }
-        
+        encoder.encode(record, MARC_JSON);
+        return encoder.toString();
     }
 
+    /**
+     * Returns the supplied record in the MARC-in-JSON format.
+     *
+     * @param record - the record to encode
+     * @return the JSON of the record
+     */
     protected String toMarcInJson(final Record record) {
-        final StringBuffer buf = new StringBuffer();
-        buf.append("{");
-
-        indent(buf, "\n    ");;
-
-        buf.append(ql + "leader" + ql + ":\"").append(record.getLeader().toString()).append("\",");
-
-        indent(buf, "\n    ");;
-
-        buf.append(ql + "fields" + ql + ":");
-
-        indent(buf, "\n    ");;
-
-        buf.append("[");
-        boolean firstField = true;
-
-        for (final ControlField cf : record.getControlFields()) {
-            if (!firstField) {
-                buf.append(",");
-            } else {
-                firstField = false;
-            }
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("{");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append(ql + cf.getTag() + ql + ":").append("\"" + unicodeEscape(cf.getData()) + "\"");
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("}");
-        }
-
-        for (final DataField df : record.getDataFields()) {
-            if (!firstField) {
-                buf.append(",");
-            } else {
-                firstField = false;
-            }
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("{");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append(ql + df.getTag() + ql + ":");
-
-            if (indent) {
-                buf.append("\n                ");
-            }
-
-            buf.append("{");
-            // if (indent) buf.append("\n                ");
-            buf.append(ql + "subfields" + ql + ":");
-
-            if (indent) {
-                buf.append("\n                ");
-            }
-
-            buf.append("[");
-            boolean firstSubfield = true;
-
-            for (final Subfield sf : df.getSubfields()) {
-                if (!firstSubfield) {
-                    buf.append(",");
-                } else {
-                    firstSubfield = false;
-                }
-
-                if (indent) {
-                    buf.append("\n                    ");
-                }
-
-                buf.append("{");
-
-                if (indent) {
-                    buf.append("\n                        ");
-                }
-
-                buf.append(ql + sf.getCode() + ql + ":\"" + unicodeEscape(sf.getData()) + "\"");
-
-                if (indent) {
-                    buf.append("\n                    ");
-                }
-
-                buf.append("}");
-            }
-
-            if (indent) {
-                buf.append("\n                ");
-            }
-
-            buf.append("],");
-
-            if (indent) {
-                buf.append("\n                ");
-            }
-
-            buf.append(ql + "ind1" + ql + ":\"" + df.getIndicator1() + "\",");
-
-            if (indent) {
-                buf.append("\n                ");
-            }
-
-            buf.append(ql + "ind2" + ql + ":\"" + df.getIndicator2() + "\"");
-
-            if (indent) {
-                buf.append("\n            ");
-            }
-
-            buf.append("}");
-
-            if (indent) {
-                buf.append("\n        ");
-            }
-
-            buf.append("}");
-        }
-
-        indent(buf, "\n    ");;
-
-        buf.append("]");
-
-        indent(buf, "\n");;
-
-        buf.append("}\n");
-
-        return (buf.toString());
-    }
-
-    private String unicodeEscape(String data) {
-        if (converter != null) {
-            data = converter.convert(data);
-        }
-
-        if (normalize) {
-            data = Normalizer.normalize(data, Normalizer.Form.NFC);
-        }
-
-        final StringBuffer buffer = new StringBuffer();
-
-        for (int i = 0; i < data.length(); i++) {
-            final char c = data.charAt(i);
-            switch (c) {
-                case '/': {
-                    if (escapeSlash) {
-                        buffer.append("\\/");
-                    } else {
-                        buffer.append("/");
-                    }
-                }
-                    break;
-                case '"':
-                    buffer.append("\\\"");
-                    break;
-                case '\\':
-                    buffer.append("\\\\");
-                    break;
-                case '\b':
-                    buffer.append("\\b");
-                    break;
-                case '\f':
-                    buffer.append("\\f");
-                    break;
-                case '\n':
-                    buffer.append("\\n");
-                    break;
-                case '\r':
-                    buffer.append("\\r");
-                    break;
-                case '\t':
-                    buffer.append("\\t");
-                    break;
-                default: {
-                    if (c > 0xff || c < 0x1f) {
-                        final String val = "0000" + Integer.toHexString(c);
-                        buffer.append("\\u" + val.substring(val.length() - 4, val.length()));
-                    } else {
-                        buffer.append(c);
-                    }
-
-                    break;
-                }
-            }
-        }
-        return (buffer.toString());
+        encoder.encode(record, MARC_IN_JSON);
+        return encoder.toString();
     }
 
     /**
@@ -442,6 +157,7 @@ public class MarcJsonWriter implements MarcWriter {
     @Override
     public void setConverter(final CharConverter converter) {
         this.converter = converter;
+        encoder.setConverter(converter);
     }
 
     /**
@@ -454,12 +170,14 @@ public class MarcJsonWriter implements MarcWriter {
     }
 
     /**
-     * Activates or deactivates indentation. Default value is false.
+     * Activates or deactivates indentation. Default value is false. Output in
+     * the MARC_IN_JSON_LINES format is never indented.
      *
      * @param indent - true to produce pretty-printed indented output
      */
     public void setIndent(final boolean indent) {
         this.indent = indent;
+        encoder.setIndent(indent);
     }
 
     /**
@@ -467,26 +185,44 @@ public class MarcJsonWriter implements MarcWriter {
      */
     @Override
     public void write(final Record record) {
-        String recordAsJson = "";
+        if (useJsonFormat != MARC_IN_JSON && useJsonFormat != MARC_JSON && useJsonFormat != MARC_IN_JSON_LINES) {
+            return;
+        }
 
-        if (useJsonFormat == MARC_IN_JSON) {
-            recordAsJson = toMarcInJson(record);
-        } else if (useJsonFormat == MARC_JSON) {
-            recordAsJson = toMarcJson(record);
+        if (usesOverrides == null) {
+            usesOverrides = overridesJsonMethods(getClass());
         }
 
         try {
-            os.write(recordAsJson.getBytes("UTF-8"));
+            if (usesOverrides && useJsonFormat != MARC_IN_JSON_LINES) {
+                final String json = useJsonFormat == MARC_JSON ? toMarcJson(record) : toMarcInJson(record);
+                os.write(json.getBytes(StandardCharsets.UTF_8));
+            } else {
+                encoder.encode(record, useJsonFormat);
+                encoder.writeTo(os);
+            }
             os.flush();
-        } catch (final UnsupportedEncodingException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         } catch (final IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns true if the supplied class, or a superclass below this one,
+     * overrides one of the methods returning the JSON of a record.
+     */
+    private static boolean overridesJsonMethods(final Class<?> type) {
+        for (Class<?> c = type; c != MarcJsonWriter.class; c = c.getSuperclass()) {
+            for (final Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals("toMarcJson") || method.getName().equals("toMarcInJson")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns true if escape slashes are turned on; else, false.
      *
@@ -503,6 +239,7 @@ public class MarcJsonWriter implements MarcWriter {
      */
     public void setEscapeSlash(final boolean escapeSlash) {
         this.escapeSlash = escapeSlash;
+        encoder.setEscapeSlash(escapeSlash);
     }
 
     /**
@@ -521,7 +258,7 @@ public class MarcJsonWriter implements MarcWriter {
      */
     public void setQuoteLabels(final boolean quoteLabels) {
         this.quoteLabels = quoteLabels;
-        ql = (quoteLabels) ? "\"" : "";
+        encoder.setQuoteLabels(quoteLabels);
     }
 
     /**
@@ -539,7 +276,7 @@ public class MarcJsonWriter implements MarcWriter {
      * @param b - true to turn on Unicode normalization (NFC)
      */
     public void setUnicodeNormalization(final boolean b) {
-        this.normalize = b;
+        encoder.setUnicodeNormalization(b);
     }
 
 }
@@ -0,0 +1,232 @@
+package org.marc4j;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+
+/**
+ * An iterator over a file of MARC records in ISO 2709 format that reads the
+ * file through a memory mapping instead of an <code>InputStream</code>.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * MarcMappedFileReader reader = new MarcMappedFileReader(new File(&quot;file.mrc&quot;));
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * <p>
+ * The file is mapped in windows, so files larger than 2 GB can be read. A
+ * record that crosses the end of the current window causes the next window to
+ * be mapped starting at that record. Records are framed using the record
+ * length in the leader, exactly like {@link MarcStreamReader}, and are parsed
+ * with a {@link MarcBinaryParser}.
+ * </p>
+ * <p>
+ * The file is closed once the last record has been read, call
+ * {@link #close()} when the iteration is abandoned before that.
+ * </p>
+ */
+public class MarcMappedFileReader implements MarcReader {
+
+    /**
+     * The default size of a mapped window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    // a window must at least hold the largest possible record
+    private static final int MIN_WINDOW_SIZE = 100000;
+
+    private FileChannel channel;
+
+    private final long fileSize;
+
+    private final int windowSize;
+
+    private MappedByteBuffer window = null;
+
+    private long windowStart = 0;
+
+    private long position = 0;
+
+    private long recordOffset = -1;
+
+    private final MarcBinaryParser parser;
+
+    private byte[] recordBuf = new byte[4096];
+
+    /**
+     * Constructs an instance that reads the specified file.
+     *
+     * @param file - the file to read the records from
+     * @throws IOException if the file can not be opened
+     */
+    public MarcMappedFileReader(final File file) throws IOException {
+        this(file, null, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs an instance that reads the specified file.
+     *
+     * @param file - the file to read the records from
+     * @param encoding - the expected encoding of the records
+     * @throws IOException if the file can not be opened
+     */
+    public MarcMappedFileReader(final File file, final String encoding) throws IOException {
+        this(file, encoding, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs an instance that reads the specified file, mapping at most
+     * <code>windowSize</code> bytes at a time.
+     *
+     * @param file - the file to read the records from
+     * @param encoding - the expected encoding of the records
+     * @param windowSize - the number of bytes mapped at a time
+     * @throws IOException if the file can not be opened
+     */
+    public MarcMappedFileReader(final File file, final String encoding, final int windowSize)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        fileSize = channel.size();
+        this.windowSize = Math.max(windowSize, MIN_WINDOW_SIZE);
+        parser = new MarcBinaryParser(MarcFactory.newInstance(), encoding);
+    }
+
+    /**
+     * Sets whether the records are decoded lazily. Lazily decoded records
+     * only convert the data of the fields that are actually accessed, see
+     * {@link org.marc4j.marc.impl.LazyRecordImpl}.
+     *
+     * @param lazyDecoding - true to return lazily decoded records
+     */
+    public void setLazyDecoding(final boolean lazyDecoding) {
+        parser.setLazyDecoding(lazyDecoding);
+    }
+
+    /**
+     * Sets the selector of the fields to decode. Fields it doesn't select are
+     * skipped using the lengths in the directory and are left out of the records returned.
+     *
+     * @param tagSelector - the fields to decode, or <code>null</code> for all
+     */
+    public void setTagSelector(final TagSelector tagSelector) {
+        parser.setTagSelector(tagSelector);
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        if (position < fileSize) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        if (channel == null) {
+            throw new MarcException("reader has been closed");
+        }
+
+        try {
+            if (position + 24 > fileSize) {
+                throw new EOFException();
+            }
+            ensureMapped(24);
+            window.position((int) (position - windowStart));
+            window.get(recordBuf, 0, 24);
+
+            final int recordLength;
+            try {
+                recordLength = MarcBinaryParser.parseRecordLength(recordBuf, 0);
+            } catch (final MarcException e) {
+                // without a length the following records can't be found
+                position = fileSize;
+                throw e;
+            }
+            if (position + recordLength > fileSize) {
+                throw new EOFException();
+            }
+            ensureMapped(recordLength);
+            if (recordBuf.length < recordLength) {
+                recordBuf = new byte[Math.max(recordLength, recordBuf.length * 2)];
+            }
+            window.position((int) (position - windowStart));
+            window.get(recordBuf, 0, recordLength);
+
+            recordOffset = position;
+            position += recordLength;
+            return parser.parseRecord(recordBuf, 0, recordLength);
+        } catch (final EOFException e) {
+            // nothing is left to read after a truncated record
+            position = fileSize;
+            throw new MarcException("Premature end of file encountered", e);
+        } catch (final IOException e) {
+            throw new MarcException("an error occured reading input", e);
+        }
+    }
+
+    /**
+     * Returns the file offset of the record last returned by {@link #next()},
+     * or -1 if no record has been read yet.
+     *
+     * @return the byte offset of the current record in the file
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * Closes the underlying file. Further calls to {@link #hasNext()} return
+     * false.
+     */
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                throw new MarcException(e.getMessage(), e);
+            } finally {
+                channel = null;
+                window = null;
+                position = fileSize;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the <code>length</code> bytes at the current position are
+     * covered by the mapped window, mapping a new window starting at the
+     * current position if they are not.
+     */
+    private void ensureMapped(final int length) throws IOException {
+        if (window != null && position >= windowStart &&
+                position + length <= windowStart + window.limit()) {
+            return;
+        }
+        windowStart = position;
+        final long size = Math.min(windowSize, fileSize - windowStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+    }
+
+}
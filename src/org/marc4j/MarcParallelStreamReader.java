@@ -0,0 +1,155 @@
+package org.marc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.marc4j.MarcPermissiveStreamReader.FramedRecord;
+import org.marc4j.marc.Record;
+
+/**
+ * An iterator over a collection of MARC records in ISO 2709 format that
+ * decodes the records on several threads.
+ * <p>
+ * Reading is split in two stages. The thread calling {@link #hasNext()} and
+ * {@link #next()} frames the raw records from the input, and a pool of worker
+ * threads parses them and converts their character data. Records are still
+ * returned in input order. At most a fixed number of records per worker is
+ * read ahead, so memory use stays bounded however fast the workers are.
+ * </p>
+ * <p>
+ * The records are framed and decoded exactly like
+ * {@link MarcPermissiveStreamReader} does with the same settings. The worker
+ * threads are daemon threads that are stopped once the input is exhausted,
+ * call {@link #close()} when the iteration is abandoned before that.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.mrc&quot;);
+ * MarcReader reader = new MarcParallelStreamReader(input, 8, false, true, &quot;MARC8&quot;);
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * </pre>
+ */
+public class MarcParallelStreamReader implements MarcReader {
+
+    // number of records read ahead for every worker thread
+    private static final int RECORDS_PER_THREAD = 16;
+
+    private final MarcPermissiveStreamReader framer;
+
+    private final ThreadLocal<MarcPermissiveStreamReader> decoders;
+
+    private final OrderedWorkQueue<Record> queue;
+
+    private TagSelector tagSelector = null;
+
+    /**
+     * Constructs an instance with the specified input stream that decodes
+     * the records on the given number of threads, neither permissively nor
+     * converting them to UTF-8.
+     *
+     * @param input - the InputStream to read the records from
+     * @param threads - the number of threads decoding records
+     */
+    public MarcParallelStreamReader(final InputStream input, final int threads) {
+        this(input, threads, false, false, "ISO8859_1");
+    }
+
+    /**
+     * Constructs an instance with the specified input stream that decodes
+     * the records on the given number of threads. The remaining parameters
+     * have the same meaning as for
+     * {@link MarcPermissiveStreamReader#MarcPermissiveStreamReader(InputStream, boolean, boolean, String)}.
+     *
+     * @param input - the InputStream to read the records from
+     * @param threads - the number of threads decoding records
+     * @param permissive - true to enable the permissive error recovery
+     * @param convertToUTF8 - true to convert the records to UTF-8
+     * @param defaultEncoding - the expected encoding of records without an 'a' in leader position 9
+     */
+    public MarcParallelStreamReader(final InputStream input, final int threads, final boolean permissive,
+            final boolean convertToUTF8, final String defaultEncoding) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one decoding thread is needed");
+        }
+        framer = new MarcPermissiveStreamReader(input, permissive, convertToUTF8, defaultEncoding);
+        decoders = new ThreadLocal<MarcPermissiveStreamReader>() {
+
+            @Override
+            protected MarcPermissiveStreamReader initialValue() {
+                return new MarcPermissiveStreamReader(new ByteArrayInputStream(new byte[0]), permissive,
+                        convertToUTF8, defaultEncoding);
+            }
+        };
+        queue = new OrderedWorkQueue<Record>(new OrderedWorkQueue.Source<Record>() {
+
+            @Override
+            public OrderedWorkQueue.Task<Record> next() {
+                return nextRecord();
+            }
+        }, threads, RECORDS_PER_THREAD, "marc4j-decoder", false);
+    }
+
+    /**
+     * Sets the selector of the fields to decode. Fields it doesn't select are
+     * skipped without being decoded and are left out of the records returned.
+     *
+     * @param tagSelector - the fields to decode, or <code>null</code> for all
+     */
+    public void setTagSelector(final TagSelector tagSelector) {
+        this.tagSelector = tagSelector;
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        return queue.hasNext();
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        return queue.next();
+    }
+
+    /**
+     * Stops the worker threads. Records that were not returned yet are
+     * discarded.
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * Frames the next record and returns the task that decodes it, or
+     * <code>null</code> at the end of the input.
+     */
+    private OrderedWorkQueue.Task<Record> nextRecord() {
+        if (!framer.hasNext()) {
+            return null;
+        }
+        final FramedRecord framed = framer.readRecord();
+        final TagSelector selector = tagSelector;
+        return new OrderedWorkQueue.Task<Record>() {
+
+            @Override
+            public void run(final List<Record> records) {
+                final MarcPermissiveStreamReader decoder = decoders.get();
+                decoder.setTagSelector(selector);
+                records.add(decoder.decodeRecord(framed));
+            }
+        };
+    }
+
+}
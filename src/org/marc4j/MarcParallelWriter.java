@@ -0,0 +1,508 @@
+package org.marc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.Record;
+
+/**
+ * A {@link MarcWriter} that converts and encodes records on a pool of worker
+ * threads, while writing them to the output stream in the order they were
+ * passed to {@link #write(Record)}. Records can be written in ISO 2709,
+ * MARCXML or either of the JSON formats, and the output is the same as that of
+ * {@link MarcStreamWriter}, {@link MarcXmlWriter} or {@link MarcJsonWriter}.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * MarcParallelWriter writer = new MarcParallelWriter(output, MarcParallelWriter.ISO2709, 8);
+ * writer.setConverterFactory(new Supplier&lt;CharConverter&gt;() {
+ *
+ *     public CharConverter get() {
+ *         return new UnicodeToAnsel();
+ *     }
+ * });
+ * while (reader.hasNext()) {
+ *     writer.write(reader.next());
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * <p>
+ * Character converters keep state while converting, so every worker needs a
+ * converter of its own, created by the factory set with
+ * {@link #setConverterFactory(Supplier)}. A converter set with
+ * {@link #setConverter(CharConverter)} is shared by the workers and only
+ * used by one of them at a time.
+ * </p>
+ * <p>
+ * At most a fixed number of records per thread are being encoded or waiting
+ * to be written at any time, so a slow output stream holds up the caller
+ * instead of filling the memory. A record must not be changed after it was
+ * passed to {@link #write(Record)}. An error encoding a record is thrown from
+ * the call to {@link #write(Record)} or {@link #close()} that would have
+ * written it, and the record is left out of the output.
+ * </p>
+ */
+public class MarcParallelWriter implements MarcWriter {
+
+    /**
+     * Writes records in ISO 2709 format, like {@link MarcStreamWriter}.
+     */
+    public static final int ISO2709 = 0;
+
+    /**
+     * Writes a MARCXML collection, like {@link MarcXmlWriter}.
+     */
+    public static final int MARCXML = 1;
+
+    /**
+     * Writes records in the MARC-in-JSON format, like {@link MarcJsonWriter}.
+     */
+    public static final int MARC_IN_JSON = 2;
+
+    /**
+     * Writes records in the MARC-JSON format, like {@link MarcJsonWriter}.
+     */
+    public static final int MARC_JSON = 3;
+
+    // number of records queued per worker thread
+    private static final int RECORDS_PER_THREAD = 16;
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private static final String COLLECTION = Constants.MARCXML_NS_PREFIX + ":collection";
+
+    private final OutputStream out;
+
+    private final int format;
+
+    private final int threads;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    private ExecutorService executor = null;
+
+    private ThreadLocal<Encoder> encoders = null;
+
+    // the encoder that writes the start and the end of the output
+    private Encoder frame = null;
+
+    private boolean empty = true;
+
+    private boolean closed = false;
+
+    private CharConverter converter = null;
+
+    private Supplier<? extends CharConverter> converterFactory = null;
+
+    private String encoding = "ISO8859_1";
+
+    private boolean allowOversizeEntry = false;
+
+    private boolean indent = false;
+
+    private boolean normalize = false;
+
+    /**
+     * Constructs an instance that writes records in the supplied format to
+     * the output stream, encoding them on the given number of threads.
+     *
+     * @param out - the OutputStream to write to
+     * @param format - one of {@link #ISO2709}, {@link #MARCXML},
+     *        {@link #MARC_IN_JSON} or {@link #MARC_JSON}
+     * @param threads - the number of threads encoding records
+     */
+    public MarcParallelWriter(final OutputStream out, final int format, final int threads) {
+        if (format < ISO2709 || format > MARC_JSON) {
+            throw new IllegalArgumentException("unknown output format: " + format);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one encoding thread is needed");
+        }
+        this.out = out;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    @Override
+    public CharConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Sets a character converter that is shared by all the workers, which
+     * take turns using it. Use {@link #setConverterFactory(Supplier)} to have
+     * the records converted in parallel.
+     *
+     * @param converter - the character converter
+     */
+    @Override
+    public void setConverter(final CharConverter converter) {
+        checkNotStarted();
+        this.converter = converter;
+        this.converterFactory = null;
+    }
+
+    /**
+     * Sets the factory that creates the character converter of each worker
+     * thread.
+     *
+     * @param converterFactory - the factory creating character converters
+     */
+    public void setConverterFactory(final Supplier<? extends CharConverter> converterFactory) {
+        checkNotStarted();
+        this.converterFactory = converterFactory;
+        this.converter = null;
+    }
+
+    /**
+     * Sets the character encoding of records written in ISO 2709 format, see
+     * {@link MarcStreamWriter#MarcStreamWriter(OutputStream, String)}.
+     *
+     * @param encoding - the encoding to use when writing out the records
+     */
+    public void setEncoding(final String encoding) {
+        checkNotStarted();
+        this.encoding = encoding;
+    }
+
+    /**
+     * Sets whether oversized records are written in ISO 2709 format.
+     *
+     * @param allowOversizeEntry - true if oversized records ought to be allowed
+     */
+    public void setAllowOversizeEntry(final boolean allowOversizeEntry) {
+        checkNotStarted();
+        this.allowOversizeEntry = allowOversizeEntry;
+    }
+
+    /**
+     * Sets whether MARCXML and JSON output is indented.
+     *
+     * @param indent - true to turn on pretty-print indenting
+     */
+    public void setIndent(final boolean indent) {
+        checkNotStarted();
+        this.indent = indent;
+    }
+
+    /**
+     * Sets whether the data of MARCXML and JSON output is Unicode normalized.
+     *
+     * @param normalize - true to normalize the data to NFC
+     */
+    public void setUnicodeNormalization(final boolean normalize) {
+        checkNotStarted();
+        this.normalize = normalize;
+    }
+
+    /**
+     * Hands the record to a worker thread to be encoded. Records that have
+     * been encoded are written out in turn, and when the maximum number of
+     * records is in progress this waits for the oldest one.
+     *
+     * @param record - the <code>Record</code> object
+     */
+    @Override
+    public void write(final Record record) {
+        if (closed) {
+            throw new MarcException("writer has been closed");
+        }
+        if (executor == null) {
+            start();
+        }
+        if (empty) {
+            try {
+                out.write(frame.getHeader());
+            } catch (final IOException e) {
+                throw new MarcException("IO Error occured while writing record", e);
+            }
+            empty = false;
+        }
+        while (pending.size() >= threads * RECORDS_PER_THREAD || !pending.isEmpty() && pending.peek()
+                .isDone()) {
+            writeNext();
+        }
+        pending.add(executor.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+                return encoders.get().encode(record);
+            }
+        }));
+    }
+
+    /**
+     * Writes all the records still in progress, ends the output and closes
+     * the output stream. Records that failed to encode are left out, and the
+     * first error is thrown once the output has been closed.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor == null) {
+            start();
+        }
+        RuntimeException error = null;
+        try {
+            while (!pending.isEmpty()) {
+                try {
+                    writeNext();
+                } catch (final RuntimeException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        } finally {
+            pending.clear();
+            executor.shutdownNow();
+            try {
+                try {
+                    out.write(empty ? frame.getEmptyOutput() : frame.getFooter());
+                } finally {
+                    out.close();
+                }
+            } catch (final IOException e) {
+                if (error == null) {
+                    error = new MarcException("IO Error occured on close", e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Starts the workers.
+     */
+    private void start() {
+        frame = newEncoder();
+        encoders = new ThreadLocal<Encoder>() {
+
+            @Override
+            protected Encoder initialValue() {
+                return newEncoder();
+            }
+        };
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "marc4j-encoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Waits for the oldest record in progress and writes it out.
+     */
+    private void writeNext() {
+        final Future<byte[]> head = pending.poll();
+        try {
+            out.write(head.get());
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while writing record", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarcException("interrupted while waiting for a record", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new MarcException(cause.getMessage(), cause);
+        }
+    }
+
+    private void checkNotStarted() {
+        if (executor != null) {
+            throw new IllegalStateException("settings can't be changed after records have been written");
+        }
+    }
+
+    private CharConverter newConverter() {
+        if (converterFactory != null) {
+            return converterFactory.get();
+        }
+        if (converter != null) {
+            return new SharedConverter(converter);
+        }
+        return null;
+    }
+
+    private Encoder newEncoder() {
+        switch (format) {
+            case ISO2709:
+                return new BinaryEncoder();
+            case MARCXML:
+                return new XmlEncoder();
+            default:
+                return new JsonEncoder();
+        }
+    }
+
+    /**
+     * Encodes records for one worker thread.
+     */
+    private abstract static class Encoder {
+
+        /**
+         * Returns what is written before the first record.
+         */
+        byte[] getHeader() {
+            return new byte[0];
+        }
+
+        /**
+         * Returns what is written after the last record.
+         */
+        byte[] getFooter() {
+            return new byte[0];
+        }
+
+        /**
+         * Returns what is written when there are no records.
+         */
+        byte[] getEmptyOutput() {
+            return new byte[0];
+        }
+
+        abstract byte[] encode(Record record);
+    }
+
+    private class BinaryEncoder extends Encoder {
+
+        private final MarcBinaryEncoder encoder = new MarcBinaryEncoder(encoding, allowOversizeEntry);
+
+        BinaryEncoder() {
+            encoder.setConverter(newConverter());
+        }
+
+        @Override
+        byte[] encode(final Record record) {
+            encoder.encode(record);
+            return encoder.toByteArray();
+        }
+    }
+
+    private class JsonEncoder extends Encoder {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private final MarcJsonWriter writer = new MarcJsonWriter(buffer, format == MARC_JSON
+                ? MarcJsonWriter.MARC_JSON : MarcJsonWriter.MARC_IN_JSON);
+
+        JsonEncoder() {
+            writer.setConverter(newConverter());
+            writer.setIndent(indent);
+            writer.setUnicodeNormalization(normalize);
+        }
+
+        @Override
+        byte[] encode(final Record record) {
+            buffer.reset();
+            writer.write(record);
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Encodes records with a {@link MarcXmlWriter} that writes the record
+     * elements only. The XML declaration and the collection element around
+     * them are written here, the same way a <code>MarcXmlWriter</code> writing
+     * to a stream writes them.
+     */
+    private class XmlEncoder extends Encoder {
+
+        private final StringWriter buffer = new StringWriter();
+
+        private final MarcXmlWriter writer = MarcXmlWriter.createFragmentWriter(buffer);
+
+        XmlEncoder() {
+            writer.setConverter(newConverter());
+            writer.setIndent(indent);
+            writer.setUnicodeNormalization(normalize);
+        }
+
+        @Override
+        byte[] getHeader() {
+            return (XML_DECLARATION + "<" + COLLECTION + getNamespace() + ">").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] getFooter() {
+            return ((indent ? "\n" : "") + "</" + COLLECTION + ">\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] getEmptyOutput() {
+            if (indent) {
+                return (XML_DECLARATION + "<" + COLLECTION + getNamespace() + ">\n</" + COLLECTION + ">\n")
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+            return (XML_DECLARATION + "<" + COLLECTION + getNamespace() + "/>\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        byte[] encode(final Record record) {
+            writer.write(record);
+            final String xml = buffer.toString();
+            buffer.getBuffer().setLength(0);
+            return xml.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private String getNamespace() {
+            return " xmlns:" + Constants.MARCXML_NS_PREFIX + "=\"" + Constants.MARCXML_NS_URI + "\"";
+        }
+    }
+
+    /**
+     * Lets the workers take turns using a single character converter.
+     */
+    private static class SharedConverter extends CharConverter {
+
+        private final CharConverter converter;
+
+        SharedConverter(final CharConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public String convert(final char[] dataElement) {
+            synchronized (converter) {
+                return converter.convert(dataElement);
+            }
+        }
+
+        @Override
+        public boolean outputsUnicode() {
+            return converter.outputsUnicode();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.marc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.marc4j.marc.Record;
+
+/**
+ * An iterator over a collection of MARC records in MARCXML format that parses
+ * the XML on several threads.
+ * <p>
+ * The thread calling {@link #hasNext()} and {@link #next()} only cuts the
+ * collection into chunks of consecutive records, at the start tags of the
+ * <code>record</code> elements, without parsing it. A pool of worker threads
+ * parses the chunks with a {@link MarcXmlPullReader}. Records are still
+ * returned in input order. At most a fixed number of chunks per worker is read
+ * ahead, so memory use stays bounded however fast the workers are.
+ * </p>
+ * <p>
+ * Every chunk is parsed with the prolog and the root start tag of the
+ * collection in front of it, so namespace declarations and entities declared
+ * there apply to all records. Elements that are neither part of a record nor a
+ * record are kept with the record before them, so they are passed over as by
+ * the other readers. Documents that can't be cut at the byte level, because
+ * they are encoded in UTF-16 or their root element isn't a
+ * <code>collection</code>, are parsed as a whole on the calling thread.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.xml&quot;);
+ * MarcReader reader = new MarcParallelXmlReader(input, 8);
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * </pre>
+ */
+public class MarcParallelXmlReader implements MarcReader {
+
+    // number of chunks read ahead for every worker thread
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final InputStream input;
+
+    private final int chunkSize;
+
+    private final OrderedWorkQueue<Record> queue;
+
+    private MarcXmlSplitter splitter = null;
+
+    private MarcReader sequential = null;
+
+    /**
+     * Constructs an instance that reads the collection from the input stream
+     * and parses it on the given number of threads.
+     *
+     * @param input - the InputStream to read the collection from
+     * @param threads - the number of threads parsing records
+     */
+    public MarcParallelXmlReader(final InputStream input, final int threads) {
+        this(input, threads, MarcXmlSplitter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs an instance that reads the collection from the input stream
+     * and parses it on the given number of threads, in chunks of at least the
+     * given size.
+     *
+     * @param input - the InputStream to read the collection from
+     * @param threads - the number of threads parsing records
+     * @param chunkSize - the number of bytes of XML to parse in one go
+     */
+    public MarcParallelXmlReader(final InputStream input, final int threads, final int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one parsing thread is needed");
+        }
+        this.input = input;
+        this.chunkSize = chunkSize;
+        queue = new OrderedWorkQueue<Record>(new OrderedWorkQueue.Source<Record>() {
+
+            @Override
+            public OrderedWorkQueue.Task<Record> next() {
+                return nextChunk();
+            }
+        }, threads, CHUNKS_PER_THREAD, "marc4j-xml-parser", true);
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        if (sequential == null && queue.hasNext()) {
+            return true;
+        }
+        return sequential != null && sequential.hasNext();
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new MarcException("no more records available");
+        }
+        return sequential != null ? sequential.next() : queue.next();
+    }
+
+    /**
+     * Stops the worker threads. Records that were not returned yet are
+     * discarded.
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * Cuts the next chunk and returns the task that parses it, or
+     * <code>null</code> at the end of the input or when the document can't
+     * be cut.
+     */
+    private OrderedWorkQueue.Task<Record> nextChunk() {
+        final byte[] chunk;
+        try {
+            if (splitter == null) {
+                splitter = new MarcXmlSplitter(input, chunkSize);
+                if (!splitter.isSplittable()) {
+                    sequential = new MarcXmlPullReader(splitter.getInput());
+                    return null;
+                }
+            }
+            chunk = splitter.nextChunk();
+        } catch (final IOException e) {
+            throw new MarcException("error reading input", e);
+        }
+        if (chunk == null) {
+            return null;
+        }
+        return new OrderedWorkQueue.Task<Record>() {
+
+            @Override
+            public void run(final List<Record> records) {
+                final MarcReader reader = new MarcXmlPullReader(new ByteArrayInputStream(chunk));
+                while (reader.hasNext()) {
+                    records.add(reader.next());
+                }
+            }
+        };
+    }
+
+}
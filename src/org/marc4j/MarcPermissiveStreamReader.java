@@ -30,6 +30,7 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -109,6 +110,8 @@ public class MarcPermissiveStreamReader implements MarcReader {
 
     private DataInputStream input = null;
 
+    private ResyncInputStream stream = null;
+
     private Record record;
 
     private String currentField;
@@ -129,7 +132,11 @@ public class MarcPermissiveStreamReader implements MarcReader {
 
     private boolean translateLosslessUnicodeNumericCodeReferencesEnabled = true;
 
-    private int marc_file_lookahead_buffer = 200000;
+    private TagSelector tagSelector = null;
+
+    // reused when scanning ahead for the record terminator of a record that
+    // is longer than its stated length
+    private byte[] resyncBuf = new byte[0];
 
     private AnselToUnicode converterAnsel = null;
 
@@ -164,7 +171,8 @@ public class MarcPermissiveStreamReader implements MarcReader {
     public MarcPermissiveStreamReader(final InputStream input, final boolean permissive,
             final boolean convertToUTF8) {
         this.permissive = permissive;
-        this.input = new DataInputStream(new BufferedInputStream(input));
+        this.stream = new ResyncInputStream(new BufferedInputStream(input));
+        this.input = new DataInputStream(stream);
         factory = MarcFactory.newInstance();
         this.convertToUTF8 = convertToUTF8;
         errors = null;
@@ -198,8 +206,9 @@ public class MarcPermissiveStreamReader implements MarcReader {
             permissive = true;
             defaultEncoding = "BESTGUESS";
         }
-        this.input = new DataInputStream(input.markSupported() ? input : new BufferedInputStream(
+        this.stream = new ResyncInputStream(input.markSupported() ? input : new BufferedInputStream(
                 input));
+        this.input = new DataInputStream(stream);
         factory = MarcFactory.newInstance();
         this.convertToUTF8 = convertToUTF8;
         this.errors = errors;
@@ -227,8 +236,9 @@ public class MarcPermissiveStreamReader implements MarcReader {
     public MarcPermissiveStreamReader(final InputStream input, final boolean permissive,
             final boolean convertToUTF8, final String defaultEncoding) {
         this.permissive = permissive;
-        this.input = new DataInputStream(input.markSupported() ? input : new BufferedInputStream(
+        this.stream = new ResyncInputStream(input.markSupported() ? input : new BufferedInputStream(
                 input));
+        this.input = new DataInputStream(stream);
         factory = MarcFactory.newInstance();
         this.convertToUTF8 = convertToUTF8;
         this.defaultEncoding = defaultEncoding;
@@ -265,7 +275,8 @@ public class MarcPermissiveStreamReader implements MarcReader {
     public MarcPermissiveStreamReader(final InputStream input, final ErrorHandler errors,
             final boolean convertToUTF8, final String defaultEncoding) {
         this.permissive = true;
-        this.input = new DataInputStream(new BufferedInputStream(input));
+        this.stream = new ResyncInputStream(new BufferedInputStream(input));
+        this.input = new DataInputStream(stream);
         factory = MarcFactory.newInstance();
         this.convertToUTF8 = convertToUTF8;
         this.defaultEncoding = defaultEncoding;
@@ -290,31 +301,34 @@ public class MarcPermissiveStreamReader implements MarcReader {
         this.translateLosslessUnicodeNumericCodeReferencesEnabled = translateLosslessUnicodeNumericCodeReferencesEnabled;
     }
 
+    /**
+     * Sets the selector of the fields to decode. Fields it doesn't select are
+     * skipped without being decoded and are left out of the records returned.
+     *
+     * @param tagSelector - the fields to decode, or <code>null</code> for all
+     */
+    public void setTagSelector(final TagSelector tagSelector) {
+        this.tagSelector = tagSelector;
+    }
+
     /**
      * Returns true if the iteration has more records, false otherwise.
      */
     @Override
     public boolean hasNext() {
         try {
-            input.mark(10);
-            int byteread = input.read();
+            int byteread = stream.read();
             if (byteread == -1) {
                 return false;
             }
-            // byte[] recLengthBuf = new byte[5];
-            int numBadBytes = 0;
+            // skip over any junk before the start of the next record
             while (byteread < '0' || byteread > '9') {
-                byteread = input.read();
-                numBadBytes++;
+                byteread = stream.read();
                 if (byteread == -1) {
                     return false;
                 }
             }
-            input.reset();
-            while (numBadBytes > 0) {
-                byteread = input.read();
-                numBadBytes--;
-            }
+            stream.unread(byteread);
         } catch (final IOException e) {
             throw new MarcException(e.getMessage(), e);
         }
@@ -326,9 +340,42 @@ public class MarcPermissiveStreamReader implements MarcReader {
      *
      * @return Record - the record object
      */
-    @SuppressWarnings("deprecation")
     @Override
     public Record next() {
+        return decodeRecord(readRecord());
+    }
+
+    /**
+     * The bytes of a record as framed by {@link #readRecord()}, along with
+     * the record object that collects the errors found while framing it.
+     */
+    static class FramedRecord {
+
+        final Record record;
+
+        final byte[] leader;
+
+        final byte[] recordBuf;
+
+        final int recordLength;
+
+        FramedRecord(final Record record, final byte[] leader, final byte[] recordBuf, final int recordLength) {
+            this.record = record;
+            this.leader = leader;
+            this.recordBuf = recordBuf;
+            this.recordLength = recordLength;
+        }
+    }
+
+    /**
+     * Reads the bytes of the next record from the input without decoding
+     * them. In permissive mode this is where a record length that does not
+     * match the position of the record terminator gets corrected.
+     *
+     * @return the framed record
+     */
+    @SuppressWarnings("deprecation")
+    FramedRecord readRecord() {
         record = factory.newRecord();
         if (errors != null) {
             errors.reset();
@@ -337,33 +384,22 @@ public class MarcPermissiveStreamReader implements MarcReader {
         try {
             final byte[] byteArray = new byte[24];
 
+            final long recordOffset = stream.getPosition();
             input.readFully(byteArray);
             int recordLength = parseRecordLength(byteArray);
             byte[] recordBuf = new byte[recordLength - 24];
             if (permissive) {
-                input.mark(marc_file_lookahead_buffer);
                 input.readFully(recordBuf);
                 if (recordBuf[recordBuf.length - 1] != Constants.RT) {
                     record.addError("n/a", "n/a", MarcError.MAJOR_ERROR,
                             "Record terminator character not found at end of record length");
-                    recordBuf = rereadPermissively(record, input, recordBuf, recordLength);
+                    recordBuf = rereadPermissively(record, recordBuf, recordOffset);
                     recordLength = recordBuf.length + 24;
                 }
             } else {
                 input.readFully(recordBuf);
             }
-            // final String tmp = new String(recordBuf);
-            parseRecord(record, byteArray, recordBuf, recordLength);
-
-            if (this.convertToUTF8) {
-                final Leader l = record.getLeader();
-                l.setCharCodingScheme('a');
-                record.setLeader(l);
-            }
-            if (errors != null && record.hasErrors()) {
-                errors.addErrors(record.getControlNumber(), record.getErrors());
-            }
-            return record;
+            return new FramedRecord(record, byteArray, recordBuf, recordLength);
         } catch (final EOFException e) {
             throw new MarcException("Premature end of file encountered", e);
         } catch (final IOException e) {
@@ -371,59 +407,86 @@ public class MarcPermissiveStreamReader implements MarcReader {
         }
     }
 
-    private byte[] rereadPermissively(final Record record, final DataInputStream input,
-            byte[] recordBuf, int recordLength) throws IOException {
-        int loc = arrayContainsAt(recordBuf, Constants.RT);
+    /**
+     * Decodes a record framed by {@link #readRecord()}. The record may have
+     * been framed by another reader, which lets the decoding of records run
+     * on other threads than the reading of the input.
+     *
+     * @param framed - the framed record
+     * @return Record - the record object
+     */
+    @SuppressWarnings("deprecation")
+    Record decodeRecord(final FramedRecord framed) {
+        record = framed.record;
+
+        // final String tmp = new String(recordBuf);
+        parseRecord(record, framed.leader, framed.recordBuf, framed.recordLength);
+
+        if (this.convertToUTF8) {
+            final Leader l = record.getLeader();
+            l.setCharCodingScheme('a');
+            record.setLeader(l);
+        }
+        if (errors != null && record.hasErrors()) {
+            errors.addErrors(record.getControlNumber(), record.getErrors());
+        }
+        return record;
+    }
+
+    /**
+     * Finds the real end of a record whose stated length does not end on a
+     * record terminator. The bytes are scanned once: when the terminator comes
+     * before the stated end the bytes after it are pushed back onto the input,
+     * otherwise the input is read ahead up to the next terminator. The byte
+     * offsets of the record found are reported in the errors added to it.
+     */
+    private byte[] rereadPermissively(final Record record, final byte[] recordBuf,
+            final long recordOffset) throws IOException {
+        final int loc = arrayContainsAt(recordBuf, Constants.RT);
         if (loc != -1)  // stated record length is too long
         {
+            stream.unread(recordBuf, loc, recordBuf.length - loc);
             record.addError("n/a", "n/a", MarcError.MAJOR_ERROR,
-                    "Record terminator appears before stated record length, using shorter record");
-            recordLength = loc + 24;
-            input.reset();
-            recordBuf = new byte[recordLength - 24];
-            input.readFully(recordBuf);
-        } else  // stated record length is too short read ahead
-        {
-            loc = recordLength - 24;
-
-            boolean done = false;
+                    "Record terminator appears before stated record length, using shorter record" +
+                    describeRange(recordOffset, loc + 24));
+            return Arrays.copyOf(recordBuf, loc);
+        }
 
-            while (!done) {
-                int c = 0;
-                do {
-                    c = input.read();
-                    loc++;
-                } while (loc < marc_file_lookahead_buffer - 24 && c != Constants.RT && c != -1);
+        // stated record length is too short, read ahead to the next terminator
+        int length = recordBuf.length;
+        if (resyncBuf.length < length * 2) {
+            resyncBuf = new byte[Math.max(length * 2, 8192)];
+        }
+        System.arraycopy(recordBuf, 0, resyncBuf, 0, length);
 
-                if (c == Constants.RT) {
-                    record.addError("n/a", "n/a", MarcError.MAJOR_ERROR,
-                            "Record terminator appears after stated record length, reading extra bytes");
-                    recordLength = loc + 24;
-                    input.reset();
-                    recordBuf = new byte[recordLength - 24];
-                    input.readFully(recordBuf);
-                    done = true;
-                } else if (c == -1) {
+        while (true) {
+            if (resyncBuf.length - length < 4096) {
+                resyncBuf = Arrays.copyOf(resyncBuf, resyncBuf.length * 2);
+            }
+            final int read = stream.read(resyncBuf, length, resyncBuf.length - length);
+            if (read == -1) {
+                record.addError("n/a", "n/a", MarcError.MAJOR_ERROR,
+                        "No Record terminator found, end of file reached, Terminator appended" +
+                        describeRange(recordOffset, length + 24));
+                final byte[] result = Arrays.copyOf(resyncBuf, length + 1);
+                result[length] = Constants.RT;
+                return result;
+            }
+            for (int i = length; i < length + read; i++) {
+                if (resyncBuf[i] == Constants.RT) {
+                    stream.unread(resyncBuf, i + 1, length + read - (i + 1));
                     record.addError("n/a", "n/a", MarcError.MAJOR_ERROR,
-                            "No Record terminator found, end of file reached, Terminator appended");
-                    recordLength = loc + 24;
-                    input.reset();
-                    recordBuf = new byte[recordLength - 24 + 1];
-                    input.readFully(recordBuf);
-                    recordBuf[recordBuf.length - 1] = Constants.RT;
-                    done = true;
-                } else {
-                    record.addError("n/a", "n/a", MarcError.FATAL,
-                            "No Record terminator found within " + marc_file_lookahead_buffer + " bytes of start of record, getting desperate.");
-                    input.reset();
-                    marc_file_lookahead_buffer *= 2;
-                    input.mark(marc_file_lookahead_buffer);
-                    loc = 0;
+                            "Record terminator appears after stated record length, reading extra bytes" +
+                            describeRange(recordOffset, i + 1 + 24));
+                    return Arrays.copyOf(resyncBuf, i + 1);
                 }
             }
+            length += read;
         }
+    }
 
-        return recordBuf;
+    private static String describeRange(final long recordOffset, final int recordLength) {
+        return " (record found at bytes " + recordOffset + "-" + (recordOffset + recordLength) + ")";
     }
 
     private void parseRecord(final Record record, byte[] byteArray, byte[] recordBuf,
@@ -562,45 +625,28 @@ public class MarcPermissiveStreamReader implements MarcReader {
         }
 
         if (encoding.equalsIgnoreCase("BESTGUESS")) {
-            try {
-                final String marc8EscSeqCheck = new String(recordBuf, "ISO-8859-1");
-                // If record has MARC8 character set selection strings, it must
-                // be MARC8 encoded
-                if (marc8EscSeqCheck.split("\\e[-(,)$bsp]", 2).length > 1) {
-                    encoding = "MARC8";
-                } else {
-                    boolean hasHighBitChars = false;
-                    for (int i = 0; i < recordBuf.length; i++) {
-                        if (recordBuf[i] < 0) // the high bit is set
-                        {
-                            hasHighBitChars = true;
-                            break;
-                        }
-                    }
-                    if (!hasHighBitChars) {
-                        encoding = "ISO8859_1";  // You can choose any encoding
-                                                // you want here, the results
-                                                // will be the same.
-                    } else {
-                        utfCheck = new String(recordBuf, "UTF-8");
-                        final byte byteCheck[] = utfCheck.getBytes("UTF-8");
-                        encoding = "UTF8";
-
-                        if (recordBuf.length == byteCheck.length) {
-                            for (int i = 0; i < recordBuf.length; i++) {
-                                if (byteCheck[i] != recordBuf[i]) {
-                                    encoding = "MARC8-Maybe";
-                                    break;
-                                }
-                            }
-                        } else {
-                            encoding = "MARC8-Maybe";
-                        }
+            // If record has MARC8 character set selection strings, it must
+            // be MARC8 encoded
+            if (EncodingDetector.hasMarc8Escapes(recordBuf, 0, recordBuf.length)) {
+                encoding = "MARC8";
+            } else {
+                boolean hasHighBitChars = false;
+                for (int i = 0; i < recordBuf.length; i++) {
+                    if (recordBuf[i] < 0) // the high bit is set
+                    {
+                        hasHighBitChars = true;
+                        break;
                     }
                 }
-            } catch (final UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                if (!hasHighBitChars) {
+                    encoding = "ISO8859_1";  // You can choose any encoding
+                                            // you want here, the results
+                                            // will be the same.
+                } else if (EncodingDetector.isValidUtf8(recordBuf, 0, recordBuf.length)) {
+                    encoding = "UTF8";
+                } else {
+                    encoding = "MARC8-Maybe";
+                }
             }
         } else if (permissive && encoding.equals("UTF8")) {
             try {
@@ -679,6 +725,20 @@ public class MarcPermissiveStreamReader implements MarcReader {
             }
         }
 
+        // Rather than decoding every subfield every possible way and picking
+        // the best looking result afterwards, try to tell the encoding from
+        // the bytes of the record first.
+        if (encoding.equals("MARC8-Maybe")) {
+            final String guess = EncodingDetector.detect(recordBuf, 0, recordBuf.length);
+            if (guess != null) {
+                if (permissive) {
+                    record.addError("n/a", "n/a", MarcError.INFO,
+                            "Byte patterns in record indicate it is " + guess + " encoded, choosing " + guess + ".");
+                }
+                encoding = guess;
+            }
+        }
+
         record.setLeader(ldr);
 
         int size = directoryLength / 12;
@@ -845,6 +905,10 @@ public class MarcPermissiveStreamReader implements MarcReader {
                 }
 
                 totalLength += lengths.get(i);
+                if (tagSelector != null && !tagSelector.selects(tags.get(i))) {
+                    inputrec.skipBytes(lengths.get(i));
+                    continue;
+                }
                 if (isControlField(tags.get(i))) {
                     byteArray = new byte[lengths.get(i) - 1];
                     inputrec.readFully(byteArray);
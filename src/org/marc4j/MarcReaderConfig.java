@@ -27,6 +27,12 @@ public class MarcReaderConfig {
 
     private String marcRemapFile = null;
 
+    private boolean lazyDecoding = false;
+
+    private int decodeThreads = 1;
+
+    private TagSelector tagSelector = null;
+
     public MarcReaderConfig(Properties configProps) {
         setCombineConsecutiveRecordsFields(configProps.getProperty("marc.combine_records"),
                 configProps.getProperty("marc.combine_records.left_field"), configProps
@@ -46,6 +52,12 @@ public class MarcReaderConfig {
         setDeleteSubfieldSpec(configProps.getProperty("marc.delete_subfields"));
 
         setMarcRemapFilename(configProps.getProperty("marc.reader.remap"));
+
+        setLazyDecoding(Boolean.parseBoolean(configProps.getProperty("marc.lazy_decode")));
+
+        setDecodeThreads(configProps.getProperty("marc.decode_threads"));
+
+        setIncludeFields(configProps.getProperty("marc.include_fields"));
     }
 
     public MarcReaderConfig() {
@@ -212,4 +224,69 @@ public class MarcReaderConfig {
         }
         return this;
     }
+
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Request records that only decode the fields that are accessed. This only
+     * applies to binary MARC input that is read neither permissively nor with
+     * conversion to UTF-8, other input is always decoded up front.
+     * @param lazyDecoding - true to read lazily decoded records
+     * @return the MarcReaderConfig object for chaining purposes.
+     */
+    public MarcReaderConfig setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+        return this;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * Set the number of threads used to decode binary MARC records. With more
+     * than one thread the records are decoded in parallel, while still being
+     * returned in input order.
+     * @param decodeThreads - the number of decoding threads
+     * @return the MarcReaderConfig object for chaining purposes.
+     */
+    public MarcReaderConfig setDecodeThreads(final int decodeThreads) {
+        this.decodeThreads = Math.max(decodeThreads, 1);
+        return this;
+    }
+
+    public MarcReaderConfig setDecodeThreads(final String decodeThreadsStr) {
+        if (decodeThreadsStr == null || decodeThreadsStr.trim().isEmpty()) {
+            return setDecodeThreads(1);
+        }
+        return setDecodeThreads(Integer.parseInt(decodeThreadsStr.trim()));
+    }
+
+    public TagSelector getTagSelector() {
+        return tagSelector;
+    }
+
+    /**
+     * Only decode the fields whose tags are selected, the other fields of
+     * binary MARC records are skipped and left out of the records read.
+     * @param tagSelector - the fields to keep, or null to keep every field
+     * @return the MarcReaderConfig object for chaining purposes.
+     */
+    public MarcReaderConfig setTagSelector(final TagSelector tagSelector) {
+        this.tagSelector = tagSelector;
+        return this;
+    }
+
+    /**
+     * Only decode the fields listed in the supplied specification, either a
+     * colon separated list of tags such as "001:020:035:245" or a regular
+     * expression matching the tags to keep.
+     * @param includeFieldsStr - the fields to keep, or null to keep every field
+     * @return the MarcReaderConfig object for chaining purposes.
+     */
+    public MarcReaderConfig setIncludeFields(final String includeFieldsStr) {
+        return setTagSelector(TagSelector.parse(includeFieldsStr));
+    }
 }
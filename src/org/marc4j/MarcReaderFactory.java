@@ -9,11 +9,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
 import org.marc4j.util.FileFinderUtil;
 
 public class MarcReaderFactory {
 
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    // how far to look for the end of the first record of JSON input
+    private static final int JSON_LINE_PEEK_SIZE = 256 * 1024;
+
     private MarcReaderFactory() {}
 
     public static MarcReader makeReader(MarcReaderConfig config, final String[] searchDirectories,
@@ -94,6 +100,8 @@ public class MarcReaderFactory {
 
         boolean inputTypeJSON = false;
 
+        boolean inputTypeJSONLines = false;
+
         boolean inputTypeMrk8 = false;
 
         MarcReader reader;
@@ -116,6 +124,11 @@ public class MarcReaderFactory {
             // logger.error("Fatal error: Exception reading from InputStream");
             throw new IllegalArgumentException("Fatal error: Exception reading from InputStream");
         }
+        if (numRead >= 2 && buffer[0] == (byte) 0x1f && buffer[1] == (byte) 0x8b) {
+            // gzip compressed, possibly in several members, look at what it holds
+            return makeReaderInternal(config, new BufferedInputStream(new GZIPInputStream(is, GZIP_BUFFER_SIZE),
+                    GZIP_BUFFER_SIZE));
+        }
         final String filestart = new String(buffer);
         inputTypeXML = false;
         inputTypeBinary = false;
@@ -127,6 +140,7 @@ public class MarcReaderFactory {
             inputTypeXML = true;
         } else if (filestart.startsWith("{")) {
             inputTypeJSON = true;
+            inputTypeJSONLines = isJsonLines(is);
         } else if (filestart.substring(0, 5).matches("\\d\\d\\d\\d\\d")) {
             inputTypeBinary = true;
         } else if (filestart.contains("<?xml") || filestart.contains("<?XML")) {
@@ -148,15 +162,33 @@ public class MarcReaderFactory {
         if (inputTypeXML) {
             // to_utf_8 = true;
             reader = new MarcUnprettyXmlReader(is);
+        } else if (inputTypeJSONLines && config.getDecodeThreads() > 1) {
+            reader = new MarcJsonLinesReader(is, config.getDecodeThreads());
+        } else if (inputTypeJSONLines) {
+            reader = new MarcJsonLinesReader(is);
         } else if (inputTypeJSON) {
             // to_utf_8 = true;
             reader = new MarcJsonReader(is);
         } else if (inputTypeMrk8) {
             // to_utf_8 = true;
             reader = new Mrk8StreamReader(is, config.toUtf8());
+        } else if (inputTypeBinary && config.isLazyDecoding() && !config.isPermissiveReader() &&
+                !config.toUtf8()) {
+            final MarcStreamReader streamReader = new MarcStreamReader(is);
+            streamReader.setLazyDecoding(true);
+            streamReader.setTagSelector(config.getTagSelector());
+            reader = streamReader;
+        } else if (inputTypeBinary && config.getDecodeThreads() > 1) {
+            final MarcParallelStreamReader parallelReader = new MarcParallelStreamReader(is,
+                    config.getDecodeThreads(), config.isPermissiveReader(), config.toUtf8(),
+                    config.getDefaultEncoding());
+            parallelReader.setTagSelector(config.getTagSelector());
+            reader = parallelReader;
         } else if (inputTypeBinary) {
-            reader = new MarcPermissiveStreamReader(is, config.isPermissiveReader(), 
-                    config.toUtf8(), config.getDefaultEncoding());
+            final MarcPermissiveStreamReader permissiveReader = new MarcPermissiveStreamReader(is,
+                    config.isPermissiveReader(), config.toUtf8(), config.getDefaultEncoding());
+            permissiveReader.setTagSelector(config.getTagSelector());
+            reader = permissiveReader;
         } else {
             // logger.error("Fatal error: Unable to determine type of inputfile");
             throw new IllegalArgumentException(
@@ -165,6 +197,29 @@ public class MarcReaderFactory {
         return (reader);
     }
 
+    /**
+     * Returns true if the first line of the JSON input holds a whole record,
+     * which is taken to mean the input has one record per line.
+     */
+    private static boolean isJsonLines(final InputStream is) throws IOException {
+        is.mark(JSON_LINE_PEEK_SIZE);
+        try {
+            int last = -1;
+            for (int i = 0; i < JSON_LINE_PEEK_SIZE; i++) {
+                final int b = is.read();
+                if (b == '\n' || b == -1) {
+                    return last == '}';
+                }
+                if (b != '\r' && b != ' ' && b != '\t') {
+                    last = b;
+                }
+            }
+            return false;
+        } finally {
+            is.reset();
+        }
+    }
+
     public static MarcReader decorateMarcReader(final MarcReader r, MarcReaderConfig config,
             final String[] searchDirectories) throws IOException {
 
@@ -0,0 +1,45 @@
+package org.marc4j;
+
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.marc4j.marc.Record;
+
+/**
+ * A {@link java.util.Spliterator} over the records returned by any
+ * {@link MarcReader}. Splitting hands out batches of records that have
+ * already been read, so a parallel stream can decode and process records on
+ * several threads while a single thread reads them. For a file of binary MARC
+ * records {@link MarcFileSpliterator} splits the file itself instead.
+ */
+public class MarcReaderSpliterator extends Spliterators.AbstractSpliterator<Record> {
+
+    private final MarcReader reader;
+
+    /**
+     * Constructs an instance that returns the records of the supplied reader.
+     *
+     * @param reader - the reader to take the records from
+     */
+    public MarcReaderSpliterator(final MarcReader reader) {
+        super(Long.MAX_VALUE, ORDERED | NONNULL);
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Record> action) {
+        if (!reader.hasNext()) {
+            return false;
+        }
+        action.accept(reader.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super Record> action) {
+        while (reader.hasNext()) {
+            action.accept(reader.next());
+        }
+    }
+
+}
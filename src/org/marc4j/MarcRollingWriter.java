@@ -0,0 +1,354 @@
+package org.marc4j;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.Record;
+
+/**
+ * A {@link MarcWriter} that spreads records in ISO 2709 format over a number
+ * of files, named like <code>basename-01.mrc</code>,
+ * <code>basename-02.mrc</code> and so on.
+ * <p>
+ * By default the writer rolls over to the next file once the current file
+ * holds the maximum number of records or bytes. In partitioned mode, set with
+ * {@link #setPartitions(int)}, the writer keeps all the files open and picks
+ * the file of a record from a hash of its control number, so records with the
+ * same control number always end up in the same file. Records without a
+ * control number are dealt out over the files in turn. Records can be written
+ * to different partitions from several threads at once.
+ * </p>
+ * <p>
+ * Records that are already in ISO 2709 format can be passed to
+ * {@link #writeRaw(byte[])}, which copies their bytes to the output without
+ * decoding them.
+ * </p>
+ *
+ * <pre>
+ * MarcRollingWriter writer = new MarcRollingWriter(&quot;output&quot;, &quot;.mrc&quot;, &quot;UTF-8&quot;);
+ * writer.setMaxRecords(100000);
+ * while (reader.hasNext()) {
+ *     writer.write(reader.next());
+ * }
+ * writer.close();
+ * </pre>
+ */
+public class MarcRollingWriter implements MarcWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String baseName;
+
+    private final String extension;
+
+    private final String encoding;
+
+    private CharConverter converter = null;
+
+    private boolean allowOversizeEntry = false;
+
+    private int maxRecords = 0;
+
+    private long maxBytes = 0;
+
+    private int partitions = 0;
+
+    private Output[] outputs = null;
+
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    private final List<File> files = new ArrayList<File>();
+
+    private boolean closed = false;
+
+    /**
+     * Constructs an instance that writes to files named after the supplied
+     * base name, with a <code>.mrc</code> extension, in ISO 8859-1.
+     *
+     * @param baseName - the path and name the output files start with
+     */
+    public MarcRollingWriter(final String baseName) {
+        this(baseName, ".mrc", "ISO8859_1");
+    }
+
+    /**
+     * Constructs an instance that writes to files named after the supplied
+     * base name and extension, in the supplied character encoding.
+     *
+     * @param baseName - the path and name the output files start with
+     * @param extension - the extension of the output files, including the dot
+     * @param encoding - the encoding to use when writing out the records
+     */
+    public MarcRollingWriter(final String baseName, final String extension, final String encoding) {
+        this.baseName = baseName;
+        this.extension = extension;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    @Override
+    public CharConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Sets the character converter. The converter is not used for records
+     * written with {@link #writeRaw(byte[])}.
+     *
+     * @param converter - the character converter
+     */
+    @Override
+    public void setConverter(final CharConverter converter) {
+        checkNotStarted();
+        this.converter = converter;
+    }
+
+    /**
+     * Sets whether an oversized entry is allowed.
+     *
+     * @param allowOversizeEntry - true if an oversized entry ought to be allowed
+     */
+    public void setAllowOversizeEntry(final boolean allowOversizeEntry) {
+        checkNotStarted();
+        this.allowOversizeEntry = allowOversizeEntry;
+    }
+
+    /**
+     * Sets the maximum number of records in a file, or zero for no limit.
+     *
+     * @param maxRecords - the maximum number of records per file
+     */
+    public void setMaxRecords(final int maxRecords) {
+        checkNotStarted();
+        this.maxRecords = Math.max(maxRecords, 0);
+    }
+
+    /**
+     * Sets the maximum size in bytes of a file, or zero for no limit. A record
+     * larger than the maximum is written to a file of its own.
+     *
+     * @param maxBytes - the maximum number of bytes per file
+     */
+    public void setMaxBytes(final long maxBytes) {
+        checkNotStarted();
+        this.maxBytes = Math.max(maxBytes, 0);
+    }
+
+    /**
+     * Sets the number of files records are partitioned over by their control
+     * number, or zero to roll over from one file to the next. The maximum
+     * number of records or bytes per file does not apply to partitions, and
+     * the file of a partition is only created once a record is written to it.
+     *
+     * @param partitions - the number of partitions
+     */
+    public void setPartitions(final int partitions) {
+        checkNotStarted();
+        this.partitions = Math.max(partitions, 0);
+    }
+
+    /**
+     * Returns the files written to so far, in the order they were opened.
+     *
+     * @return the output files
+     */
+    public List<File> getFiles() {
+        synchronized (files) {
+            return new ArrayList<File>(files);
+        }
+    }
+
+    /**
+     * Writes a <code>Record</code> object to the writer.
+     *
+     * @param record - the <code>Record</code> object
+     */
+    @Override
+    public void write(final Record record) {
+        final Output output = getOutput(partitions > 0 ? record.getControlNumber() : null);
+        synchronized (output) {
+            output.encoder.encode(record);
+            output.write(output.encoder.getBuffer(), output.encoder.getLength());
+        }
+    }
+
+    /**
+     * Writes a record that is already in ISO 2709 format, copying its bytes
+     * to the output as they are.
+     *
+     * @param recordBytes - the bytes of the record
+     */
+    public void writeRaw(final byte[] recordBytes) {
+        final Output output = getOutput(partitions > 0 ? getControlNumber(recordBytes) : null);
+        synchronized (output) {
+            output.write(recordBytes, recordBytes.length);
+        }
+    }
+
+    /**
+     * Closes all the output files.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (outputs == null) {
+            return;
+        }
+        MarcException error = null;
+        for (final Output output : outputs) {
+            synchronized (output) {
+                try {
+                    output.close();
+                } catch (final IOException e) {
+                    if (error == null) {
+                        error = new MarcException("IO Error occured on close", e);
+                    }
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private synchronized Output getOutput(final String controlNumber) {
+        if (closed) {
+            throw new MarcException("writer has been closed");
+        }
+        if (outputs == null) {
+            outputs = new Output[Math.max(partitions, 1)];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = new Output(i + 1);
+            }
+        }
+        if (partitions == 0) {
+            return outputs[0];
+        }
+        if (controlNumber == null) {
+            return outputs[(nextPartition.getAndIncrement() & Integer.MAX_VALUE) % partitions];
+        }
+        return outputs[(controlNumber.hashCode() & Integer.MAX_VALUE) % partitions];
+    }
+
+    private void checkNotStarted() {
+        if (outputs != null) {
+            throw new IllegalStateException("settings can't be changed after records have been written");
+        }
+    }
+
+    /**
+     * Returns the data of the 001 field of a record in ISO 2709 format, or
+     * <code>null</code> if it has none.
+     */
+    private static String getControlNumber(final byte[] data) {
+        if (data.length < 24) {
+            return null;
+        }
+        final int baseAddress = parseNumber(data, 12, 5);
+        for (int entry = 24; entry + 12 <= data.length && data[entry] != Constants.FT; entry += 12) {
+            if (data[entry] == '0' && data[entry + 1] == '0' && data[entry + 2] == '1') {
+                final int length = parseNumber(data, entry + 3, 4);
+                final int start = baseAddress + parseNumber(data, entry + 7, 5);
+                if (baseAddress < 0 || length <= 0 || start + length > data.length) {
+                    return null;
+                }
+                // the control number is plain ASCII, and the field terminator is left off
+                final char[] chars = new char[length - 1];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = (char) (data[start + i] & 0xFF);
+                }
+                return new String(chars);
+            }
+        }
+        return null;
+    }
+
+    private static int parseNumber(final byte[] data, final int offset, final int width) {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + data[i] - '0';
+        }
+        return value;
+    }
+
+    /**
+     * One of the files being written, along with the encoder for its records.
+     * In rolling mode there is a single output that moves on from file to
+     * file.
+     */
+    private class Output {
+
+        private final MarcBinaryEncoder encoder;
+
+        private int fileNumber;
+
+        private OutputStream out = null;
+
+        private int records = 0;
+
+        private long bytes = 0;
+
+        Output(final int fileNumber) {
+            this.fileNumber = fileNumber;
+            encoder = new MarcBinaryEncoder(encoding, allowOversizeEntry);
+            encoder.setConverter(converter);
+        }
+
+        void write(final byte[] data, final int length) {
+            try {
+                if (out != null && partitions == 0 && isFull(length)) {
+                    out.close();
+                    out = null;
+                    fileNumber++;
+                }
+                if (out == null) {
+                    open();
+                }
+                out.write(data, 0, length);
+                records++;
+                bytes += length;
+            } catch (final IOException e) {
+                throw new MarcException("IO Error occured while writing record", e);
+            }
+        }
+
+        private boolean isFull(final int length) {
+            return maxRecords > 0 && records >= maxRecords || maxBytes > 0 && bytes + length > maxBytes;
+        }
+
+        private void open() throws IOException {
+            final File file = new File(String.format("%s-%02d%s", baseName, fileNumber, extension));
+            out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            records = 0;
+            bytes = 0;
+            synchronized (files) {
+                files.add(file);
+            }
+        }
+
+        void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+}
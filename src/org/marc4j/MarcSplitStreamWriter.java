@@ -4,6 +4,10 @@ package org.marc4j;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
@@ -15,7 +19,7 @@ public class MarcSplitStreamWriter extends MarcStreamWriter {
 
     private final int recordThreshold;
 
-    private final String fieldsToSplit;
+    private final TagSelector splitSelector;
 
     /**
      * Creates a MarcSplitStreamWriter with a record threshold and fields to split from the supplied
@@ -28,7 +32,7 @@ public class MarcSplitStreamWriter extends MarcStreamWriter {
     public MarcSplitStreamWriter(final OutputStream out, final int threshold, final String fieldsToSplit) {
         super(out, false);
         recordThreshold = threshold;
-        this.fieldsToSplit = fieldsToSplit;
+        this.splitSelector = new TagSelector(Pattern.compile(fieldsToSplit));
     }
 
     /**
@@ -44,109 +48,120 @@ public class MarcSplitStreamWriter extends MarcStreamWriter {
             final String fieldsToSplit) {
         super(out, encoding, false);
         recordThreshold = threshold;
-        this.fieldsToSplit = fieldsToSplit;
+        this.splitSelector = new TagSelector(Pattern.compile(fieldsToSplit));
     }
 
     /**
-     * Writes a <code>Record</code> object to the writer.
+     * Writes a <code>Record</code> object to the writer. If the record would
+     * be longer than the threshold, the fields to split are spread over as
+     * many records as needed, each of which holds all the other fields. Every
+     * record holds at least one of the fields to split, so a record whose
+     * other fields already reach the threshold is written once for each of
+     * them.
      *
      * @param record - the <code>Record</code> object
      */
     @Override
     public void write(final Record record) {
-        boolean doneWithRec = false;
-        for (final DataField df : record.getDataFields()) {
-            if (!df.getTag().matches(fieldsToSplit)) {
-                continue;
-            }
-            df.setId(null);
-        }
         setEncodingCurrent(record, getConverter());
 
-        while (!doneWithRec) {
-            try {
-                int previous = 0;
-                final ByteArrayOutputStream data = new ByteArrayOutputStream();
-                final ByteArrayOutputStream dir = new ByteArrayOutputStream();
-
-                // control fields
-                for (final ControlField cf : record.getControlFields()) {
-                    data.write(getDataElement(cf.getData()));
-                    data.write(Constants.FT);
-                    dir.write(getEntry(cf.getTag(), data.size() - previous, previous));
-                    previous = data.size();
+        // classify and encode every field once, the fields that are kept in
+        // every record first and the fields to split after them
+        final List<String> tags = new ArrayList<String>();
+        final List<byte[]> fields = new ArrayList<byte[]>();
+        final List<String> splitTags = new ArrayList<String>();
+        final List<byte[]> splitFields = new ArrayList<byte[]>();
+        int baseLength = 0;
+
+        try {
+            for (final ControlField cf : record.getControlFields()) {
+                final byte[] data = getDataElement(cf.getData());
+                final byte[] field = Arrays.copyOf(data, data.length + 1);
+                field[data.length] = Constants.FT;
+                tags.add(cf.getTag());
+                fields.add(field);
+                baseLength += field.length;
+            }
+            for (final DataField df : record.getDataFields()) {
+                final byte[] field = encodeDataField(df);
+                if (splitSelector.selects(df.getTag())) {
+                    splitTags.add(df.getTag());
+                    splitFields.add(field);
+                } else {
+                    tags.add(df.getTag());
+                    fields.add(field);
+                    baseLength += field.length;
                 }
+            }
 
-                // data fields
-                for (final DataField df : record.getDataFields()) {
-                    if (df.getTag().matches(fieldsToSplit)) {
-                        continue;
-                    }
-                    data.write(df.getIndicator1());
-                    data.write(df.getIndicator2());
-                    for (final Subfield sf : df.getSubfields()) {
-                        data.write(Constants.US);
-                        data.write(sf.getCode());
-                        data.write(getDataElement(sf.getData()));
-                    }
-                    data.write(Constants.FT);
-                    dir.write(getEntry(df.getTag(), data.size() - previous, previous));
-                    previous = data.size();
+            int next = 0;
+            do {
+                int end = next;
+                int length = baseLength;
+                while (end < splitFields.size() && (end == next || length < recordThreshold)) {
+                    length += splitFields.get(end).length;
+                    end++;
                 }
-                // data fields
-                doneWithRec = true;
-                for (final DataField df : record.getDataFields()) {
-                    if (previous >= recordThreshold) {
-                        doneWithRec = false;
-                        break;
-                    }
-                    if (!df.getTag().matches(fieldsToSplit)) {
-                        continue;
-                    }
-                    if (!(df.getId() == null || df.getId().intValue() != 0)) {
-                        continue;
-                    }
-                    df.setId(new Long(0));
-                    data.write(df.getIndicator1());
-                    data.write(df.getIndicator2());
-                    for (final Subfield sf : df.getSubfields()) {
-                        data.write(Constants.US);
-                        data.write(sf.getCode());
-                        data.write(getDataElement(sf.getData()));
-                    }
-                    data.write(Constants.FT);
-                    dir.write(getEntry(df.getTag(), data.size() - previous, previous));
-                    previous = data.size();
-                }
-                dir.write(Constants.FT);
-
-                // base address of data and logical record length
-                final Leader ldr = record.getLeader();
-
-                final int baseAddress = 24 + dir.size();
-                ldr.setBaseAddressOfData(baseAddress);
-                final int recordLength = ldr.getBaseAddressOfData() + data.size() + 1;
-                ldr.setRecordLength(recordLength);
+                writeRecord(record.getLeader(), tags, fields, splitTags.subList(next, end), splitFields.subList(
+                        next, end), length);
+                next = end;
+            } while (next < splitFields.size());
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while writing record", e);
+        }
+    }
 
-                // write record to output stream
-                dir.close();
-                data.close();
+    private byte[] encodeDataField(final DataField df) throws IOException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(df.getIndicator1());
+        data.write(df.getIndicator2());
+        for (final Subfield sf : df.getSubfields()) {
+            data.write(Constants.US);
+            data.write(sf.getCode());
+            data.write(getDataElement(sf.getData()));
+        }
+        data.write(Constants.FT);
+        return data.toByteArray();
+    }
 
-                if (!allowOversizeEntry && hasOversizeLength) {
-                    throw new MarcException("Record has field that is too long to be a valid MARC binary record. "
-                            + "The maximum length for a field counting all of the sub-fields is 9999 bytes.");
-                }
-                writeLeader(ldr);
-                out.write(dir.toByteArray());
-                out.write(data.toByteArray());
-                out.write(Constants.RT);
-
-            } catch (final IOException e) {
-                throw new MarcException("IO Error occured while writing record", e);
-            } catch (final MarcException e) {
-                throw e;
+    /**
+     * Writes a record made up of the supplied encoded fields.
+     */
+    private void writeRecord(final Leader ldr, final List<String> tags, final List<byte[]> fields,
+            final List<String> splitTags, final List<byte[]> splitFields, final int dataLength)
+            throws IOException {
+        final int baseAddress = 24 + 12 * (fields.size() + splitFields.size()) + 1;
+        final int recordLength = baseAddress + dataLength + 1;
+        ldr.setBaseAddressOfData(baseAddress);
+        ldr.setRecordLength(recordLength);
+
+        final byte[] buf = new byte[recordLength];
+        MarcBinaryEncoder.writeLeader(ldr, buf);
+
+        int entry = 24;
+        int pos = baseAddress;
+        for (int i = 0; i < fields.size() + splitFields.size(); i++) {
+            final String tag = i < fields.size() ? tags.get(i) : splitTags.get(i - fields.size());
+            final byte[] field = i < fields.size() ? fields.get(i) : splitFields.get(i - fields.size());
+
+            if (field.length > 99999 && !allowOversizeEntry) {
+                throw new MarcException("Record has field that is too long to be a valid MARC binary record. " +
+                        "The maximum length for a field counting all of the sub-fields is 9999 bytes.");
             }
+            for (int t = 0; t < 3; t++) {
+                final char c = t < tag.length() ? tag.charAt(t) : ' ';
+                buf[entry + t] = (byte) (c <= 0xFF ? c : '?');
+            }
+            MarcBinaryEncoder.formatNumber(buf, entry + 3, 4, field.length);
+            MarcBinaryEncoder.formatNumber(buf, entry + 7, 5, pos - baseAddress);
+            entry += 12;
+
+            System.arraycopy(field, 0, buf, pos, field.length);
+            pos += field.length;
         }
+        buf[entry] = Constants.FT;
+        buf[pos] = Constants.RT;
+        out.write(buf);
     }
 
 }
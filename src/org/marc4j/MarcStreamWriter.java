@@ -23,6 +23,7 @@ package org.marc4j;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.text.DecimalFormat;
 
 import org.marc4j.converter.CharConverter;
@@ -65,6 +66,12 @@ import org.marc4j.util.CustomDecimalFormat;
  * }
  * writer.close();
  * </pre>
+ * <p>
+ * Records are encoded by a {@link MarcBinaryEncoder} into a buffer that is reused for every record. A subclass that
+ * overrides one of the protected methods {@link #setEncodingCurrent(Record, CharConverter)},
+ * {@link #getDataElement(String)}, {@link #getEntry(String, int, int)} or {@link #writeLeader(Leader)} has its
+ * records written through those methods instead, field by field.
+ * </p>
  *
  * @author Bas Peters
  */
@@ -85,10 +92,25 @@ public class MarcStreamWriter implements MarcWriter {
 
     protected boolean hasOversizeLength = false;
 
+    /**
+     * @deprecated these formatters are shared by all writers and are not
+     *             thread-safe, {@link MarcBinaryEncoder#formatNumber} is used
+     *             instead
+     */
+    @Deprecated
     protected static DecimalFormat format4Use = new CustomDecimalFormat(4);
 
+    /**
+     * @deprecated see {@link #format4Use}
+     */
+    @Deprecated
     protected static DecimalFormat format5Use = new CustomDecimalFormat(5);
 
+    private MarcBinaryEncoder encoder = null;
+
+    // whether a subclass overrides one of the methods records are written through
+    private Boolean usesHooks = null;
+
     /**
      * Constructs an instance and creates a <code>Writer</code> object with the specified output stream.
      *
@@ -153,6 +175,7 @@ public class MarcStreamWriter implements MarcWriter {
     @Override
     public void setConverter(final CharConverter converter) {
         this.converter = converter;
+        encoder = null;
     }
 
     protected void setEncodingCurrent(Record record, CharConverter converter)
@@ -173,9 +196,38 @@ public class MarcStreamWriter implements MarcWriter {
      */
     @Override
     public void write(final Record record) {
+        if (usesHooks == null) {
+            usesHooks = overridesHooks(getClass());
+        }
+        if (usesHooks) {
+            writeThroughHooks(record);
+            return;
+        }
+        if (encoder == null) {
+            encoder = new MarcBinaryEncoder(encoding, allowOversizeEntry);
+            encoder.setConverter(converter);
+        }
+        setEncodingCurrent(record, converter);
+        try {
+            encoder.encode(record);
+        } finally {
+            hasOversizeOffset = encoder.hasOversizeOffset();
+            hasOversizeLength = encoder.hasOversizeLength();
+        }
 
+        try {
+            encoder.writeTo(out);
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while writing record", e);
+        }
+    }
+
+    /**
+     * Writes a record field by field through the protected methods a subclass may override.
+     */
+    private void writeThroughHooks(final Record record) {
         setEncodingCurrent(record, converter);
-        
+
         int previous = 0;
 
         try {
@@ -215,10 +267,6 @@ public class MarcStreamWriter implements MarcWriter {
             final int recordLength = ldr.getBaseAddressOfData() + data.size() + 1;
             ldr.setRecordLength(recordLength);
 
-            // write record to output stream
-            dir.close();
-            data.close();
-
             if (!allowOversizeEntry && (baseAddress > 99999 || recordLength > 99999 || hasOversizeOffset)) {
                 throw new MarcException("Record is too long to be a valid MARC binary record, it's length would be " +
                         recordLength + " which is more thatn 99999 bytes");
@@ -228,27 +276,44 @@ public class MarcStreamWriter implements MarcWriter {
                         + "The maximum length for a field counting all of the sub-fields is 9999 bytes.");
             }
             writeLeader(ldr);
-            out.write(dir.toByteArray());
-            out.write(data.toByteArray());
+            dir.writeTo(out);
+            data.writeTo(out);
             out.write(Constants.RT);
-
         } catch (final IOException e) {
             throw new MarcException("IO Error occured while writing record", e);
-        } catch (final MarcException e) {
-            throw e;
         }
     }
 
+    /**
+     * Returns true if the supplied class, or a superclass below this one, overrides one of the methods records are
+     * written through.
+     */
+    private static boolean overridesHooks(final Class<?> type) {
+        for (Class<?> c = type; c != MarcStreamWriter.class; c = c.getSuperclass()) {
+            for (final Method method : c.getDeclaredMethods()) {
+                final String name = method.getName();
+                if (name.equals("setEncodingCurrent") || name.equals("getDataElement") || name.equals("getEntry") ||
+                        name.equals("writeLeader")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected void writeLeader(final Leader ldr) throws IOException {
         String leaderEncoding = ENCODING_FOR_DIR_ENTRIES;
-        out.write(format5Use.format(ldr.getRecordLength()).getBytes(leaderEncoding));
+        final byte[] number = new byte[5];
+        MarcBinaryEncoder.formatNumber(number, 0, 5, ldr.getRecordLength());
+        out.write(number);
         out.write(ldr.getRecordStatus());
         out.write(ldr.getTypeOfRecord());
         out.write(new String(ldr.getImplDefined1()).getBytes(leaderEncoding));
         out.write(ldr.getCharCodingScheme());
         out.write(Integer.toString(ldr.getIndicatorCount()).getBytes(leaderEncoding));
         out.write(Integer.toString(ldr.getSubfieldCodeLength()).getBytes(leaderEncoding));
-        out.write(format5Use.format(ldr.getBaseAddressOfData()).getBytes(leaderEncoding));
+        MarcBinaryEncoder.formatNumber(number, 0, 5, ldr.getBaseAddressOfData());
+        out.write(number);
         out.write(new String(ldr.getImplDefined2()).getBytes(leaderEncoding));
         out.write(new String(ldr.getEntryMap()).getBytes(leaderEncoding));
     }
@@ -273,14 +338,18 @@ public class MarcStreamWriter implements MarcWriter {
     }
 
     protected byte[] getEntry(final String tag, final int length, final int start) throws IOException {
-        final String entryUse = tag + format4Use.format(length) + format5Use.format(start);
+        final byte[] tagBytes = tag.getBytes(ENCODING_FOR_DIR_ENTRIES);
+        final byte[] entry = new byte[tagBytes.length + 9];
+        System.arraycopy(tagBytes, 0, entry, 0, tagBytes.length);
+        MarcBinaryEncoder.formatNumber(entry, tagBytes.length, 4, length);
+        MarcBinaryEncoder.formatNumber(entry, tagBytes.length + 4, 5, start);
         if (length > 99999) {
             hasOversizeLength = true;
         }
         if (start > 99999) {
             hasOversizeOffset = true;
         }
-        return (entryUse.getBytes(ENCODING_FOR_DIR_ENTRIES));
+        return entry;
     }
 
     /**
@@ -299,5 +368,6 @@ public class MarcStreamWriter implements MarcWriter {
      */
     public void setAllowOversizeEntry(final boolean allowOversizeEntry) {
         this.allowOversizeEntry = allowOversizeEntry;
+        encoder = null;
     }
 }
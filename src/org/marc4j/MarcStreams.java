@@ -0,0 +1,69 @@
+package org.marc4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.marc4j.marc.Record;
+
+/**
+ * Bridges {@link MarcReader}s to {@link java.util.stream.Stream}s.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * try (Stream&lt;Record&gt; records = MarcStreams.stream(new File(&quot;file.mrc&quot;), true, true, &quot;BESTGUESS&quot;)) {
+ *     records.parallel().map(record -&gt; record.getControlNumber()).forEach(System.out::println);
+ * }
+ * </pre>
+ */
+public final class MarcStreams {
+
+    private MarcStreams() {
+    }
+
+    /**
+     * Returns a sequential stream of the records returned by the supplied
+     * reader. A parallel stream reads the records on one thread and processes
+     * them on several, see {@link MarcReaderSpliterator}.
+     *
+     * @param reader - the reader to take the records from
+     * @return a stream of the records
+     */
+    public static Stream<Record> stream(final MarcReader reader) {
+        return StreamSupport.stream(new MarcReaderSpliterator(reader), false);
+    }
+
+    /**
+     * Returns a sequential stream of the records in a file of binary MARC
+     * records. A parallel stream splits the file so that every thread reads
+     * and decodes its own part of it, see {@link MarcFileSpliterator}. The
+     * file is closed when the stream is closed.
+     *
+     * @param file - the file of binary MARC records
+     * @param permissive - true to use the permissive/error correcting features
+     * @param convertToUTF8 - true to convert the records to UTF8 as they are read
+     * @param defaultEncoding - the expected encoding of the records
+     * @return a stream of the records
+     * @throws IOException if the file can not be opened
+     */
+    public static Stream<Record> stream(final File file, final boolean permissive, final boolean convertToUTF8,
+            final String defaultEncoding) throws IOException {
+        final MarcFileSplitter splitter = new MarcFileSplitter(file);
+        return StreamSupport.stream(new MarcFileSpliterator(splitter, permissive, convertToUTF8, defaultEncoding),
+                false).onClose(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            splitter.close();
+                        } catch (final IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+    }
+
+}
@@ -11,10 +11,10 @@ import org.marc4j.marc.Subfield;
 
 public class MarcUnprettyXmlReader implements MarcReader {
 
-    private MarcXmlReader reader = null;
+    private MarcReader reader = null;
 
     public MarcUnprettyXmlReader(final InputStream input) {
-        reader = new MarcXmlReader(input);
+        reader = new MarcXmlPullReader(input);
     }
 
     /**
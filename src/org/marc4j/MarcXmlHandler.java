@@ -123,6 +123,17 @@ public class MarcXmlHandler implements ContentHandler {
         factory = MarcFactory.newInstance();
     }
 
+    /**
+     * Returns true if the supplied value of the type attribute of a record
+     * element is one of the MARC record types.
+     *
+     * @param type - the value of the type attribute
+     * @return true if the type is known
+     */
+    static boolean isRecordType(final String type) {
+        return RECORD_TYPES.contains(type);
+    }
+
     /**
      * An event fired at the start of the document.
      */
@@ -391,7 +402,7 @@ public class MarcXmlHandler implements ContentHandler {
      * @param aName An element name
      * @return The element name without a namespace prefix
      */
-    private String stripNsPrefix(final String aName) {
+    static String stripNsPrefix(final String aName) {
         final int index = aName.indexOf(":");
 
         if (index == -1 || index + 1 == aName.length()) {
@@ -0,0 +1,302 @@
+package org.marc4j;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ * An iterator over a collection of MARC records in MARCXML format that reads
+ * the XML with a StAX {@link XMLStreamReader}.
+ * <p>
+ * Unlike {@link MarcXmlReader}, which parses the input on a thread of its own
+ * and hands the records over one at a time, this reader pulls the XML events
+ * for a record from the parser on the calling thread, when
+ * {@link #hasNext()} or {@link #next()} asks for it. Records are built the
+ * same way {@link MarcXmlHandler} builds them, including the errors it
+ * records for malformed fields. Elements that are not part of MARCXML are
+ * reported as errors of the record they appear in, and are passed over
+ * between records once a record has been read. External entities are not
+ * resolved.
+ * </p>
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.xml&quot;);
+ * MarcReader reader = new MarcXmlPullReader(input);
+ * while (reader.hasNext()) {
+ *     Record record = reader.next();
+ *     // Process record
+ * }
+ * </pre>
+ */
+public class MarcXmlPullReader implements MarcReader {
+
+    private static final String TAG_ATTR = "tag";
+
+    private static final String CODE_ATTR = "code";
+
+    private static final String IND_1_ATTR = "ind1";
+
+    private static final String IND_2_ATTR = "ind2";
+
+    private static final String TYPE_ATTR = "type";
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private final XMLStreamReader xml;
+
+    private final MarcFactory factory = MarcFactory.newInstance();
+
+    private Record nextRecord = null;
+
+    private boolean seenRecord = false;
+
+    private boolean endOfInput = false;
+
+    // the state of the record being built
+    private Record record = null;
+
+    private StringBuilder sb = null;
+
+    private ControlField controlField = null;
+
+    private DataField dataField = null;
+
+    private Subfield subfield = null;
+
+    private String tag = null;
+
+    private String prevTag = "n/a";
+
+    /**
+     * Constructs an instance with the specified input stream.
+     *
+     * @param input - the input stream
+     */
+    public MarcXmlPullReader(final InputStream input) {
+        try {
+            xml = INPUT_FACTORY.createXMLStreamReader(input);
+        } catch (final XMLStreamException e) {
+            throw new MarcException("Unable to parse input", e);
+        }
+    }
+
+    /**
+     * Constructs an instance with the specified character stream.
+     *
+     * @param input - the reader to read the XML from
+     */
+    public MarcXmlPullReader(final Reader input) {
+        try {
+            xml = INPUT_FACTORY.createXMLStreamReader(input);
+        } catch (final XMLStreamException e) {
+            throw new MarcException("Unable to parse input", e);
+        }
+    }
+
+    /**
+     * Constructs an instance that reads from the supplied stream reader. The
+     * stream reader must be namespace aware.
+     *
+     * @param xml - the StAX stream reader positioned before the records
+     */
+    public MarcXmlPullReader(final XMLStreamReader xml) {
+        this.xml = xml;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return inputFactory;
+    }
+
+    /**
+     * Returns true if the iteration has more records, false otherwise.
+     *
+     * @return boolean - true if the iteration has more records, false otherwise
+     */
+    @Override
+    public boolean hasNext() {
+        if (nextRecord == null && !endOfInput) {
+            try {
+                nextRecord = readRecord();
+            } catch (final XMLStreamException e) {
+                endOfInput = true;
+                throw new MarcException("Unable to parse input", e);
+            }
+        }
+        return nextRecord != null;
+    }
+
+    /**
+     * Returns the next record in the iteration.
+     *
+     * @return Record - the record object
+     */
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new MarcException("no more records available");
+        }
+        final Record record = nextRecord;
+        nextRecord = null;
+        return record;
+    }
+
+    /**
+     * Reads the events of the next record and builds it, returning
+     * <code>null</code> at the end of the input.
+     */
+    private Record readRecord() throws XMLStreamException {
+        while (xml.hasNext()) {
+            switch (xml.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(xml.getLocalName());
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (sb != null) {
+                        sb.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (record != null && endElement(xml.getLocalName())) {
+                        final Record complete = record;
+                        record = null;
+                        sb = null;
+                        return complete;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        endOfInput = true;
+        xml.close();
+        if (record != null) {
+            throw new MarcException("Unexpected end of input in record");
+        }
+        return null;
+    }
+
+    private void startElement(final String name) {
+        if (name.equals("collection")) {
+            return;
+        }
+        if (name.equals("record")) {
+            record = factory.newRecord();
+            final String typeAttr = getAttribute(TYPE_ATTR);
+            if (typeAttr != null && MarcXmlHandler.isRecordType(typeAttr)) {
+                record.setType(typeAttr);
+            }
+            seenRecord = true;
+            prevTag = "n/a";
+            return;
+        }
+        if (record == null) {
+            if (seenRecord && !isMarcElement(name)) {
+                // wrapper elements between records are passed over
+                return;
+            }
+            throw new MarcException("Unexpected XML element: " + name);
+        }
+
+        if (name.equals("leader")) {
+            sb = new StringBuilder();
+        } else if (name.equals("controlfield")) {
+            tag = getAttribute(TAG_ATTR);
+            if (tag == null) {
+                record.addError("n/a", "n/a", MarcError.MINOR_ERROR, "Missing tag element in ControlField after tag: " +
+                        prevTag);
+            } else {
+                controlField = factory.newControlField(tag);
+                sb = new StringBuilder();
+            }
+        } else if (name.equals("datafield")) {
+            tag = getAttribute(TAG_ATTR);
+            String ind1 = getAttribute(IND_1_ATTR);
+            String ind2 = getAttribute(IND_2_ATTR);
+            if (tag == null) {
+                record.addError("n/a", "n/a", MarcError.MINOR_ERROR, "Missing tag element in datafield after tag: " +
+                        prevTag);
+            } else if (ind1 == null) {
+                record.addError(tag, "n/a", MarcError.MINOR_ERROR, "DataField (" + tag + ") missing first indicator");
+            } else if (ind2 == null) {
+                record.addError(tag, "n/a", MarcError.MINOR_ERROR, "DataField (" + tag + ") missing second indicator");
+            } else {
+                if (ind1.length() == 0) {
+                    ind1 = " ";
+                }
+                if (ind2.length() == 0) {
+                    ind2 = " ";
+                }
+                dataField = factory.newDataField(tag, ind1.charAt(0), ind2.charAt(0));
+            }
+        } else if (name.equals("subfield")) {
+            String code = getAttribute(CODE_ATTR);
+            if (code == null) {
+                record.addError(tag, "n/a", MarcError.MINOR_ERROR, "Subfield (" + tag + ") missing code attribute");
+            } else {
+                if (code.length() == 0) {
+                    code = " ";
+                }
+                subfield = factory.newSubfield(code.charAt(0));
+                sb = new StringBuilder();
+            }
+        } else {
+            record.addError("n/a", "n/a", MarcError.MINOR_ERROR, "Unexpected XML element: " + name);
+            return;
+        }
+        prevTag = tag;
+    }
+
+    /**
+     * Handles the end of an element, returning true at the end of a record.
+     */
+    private boolean endElement(final String name) {
+        if (name.equals("record")) {
+            return true;
+        } else if (name.equals("leader")) {
+            record.setLeader(factory.newLeader(sb.toString()));
+        } else if (name.equals("controlfield")) {
+            if (controlField != null) {
+                controlField.setData(sb.toString());
+                record.addVariableField(controlField);
+                controlField = null;
+            }
+        } else if (name.equals("datafield")) {
+            if (dataField != null) {
+                record.addVariableField(dataField);
+                dataField = null;
+            }
+        } else if (name.equals("subfield")) {
+            if (dataField != null && subfield != null) {
+                subfield.setData(sb.toString());
+                dataField.addSubfield(subfield);
+                subfield = null;
+            }
+        }
+        return false;
+    }
+
+    private String getAttribute(final String name) {
+        return xml.getAttributeValue(null, name);
+    }
+
+    private static boolean isMarcElement(final String name) {
+        return name.equals("leader") || name.equals("controlfield") || name.equals("datafield") ||
+                name.equals("subfield");
+    }
+
+}
@@ -96,6 +96,21 @@ public class MarcXmlReader implements MarcReader {
         producer.start();
     }
 
+    /**
+     * Constructs an instance with the specified input stream, that has the
+     * parser thread hand the records over in batches of the given size, with
+     * at most the given number of batches waiting to be read.
+     *
+     * @param input the input stream
+     * @param batchSize the number of records handed over at a time
+     * @param maxBatches the number of batches the parser can read ahead
+     */
+    public MarcXmlReader(final InputStream input, final int batchSize, final int maxBatches) {
+        this.queue = new RecordStack(batchSize, maxBatches);
+        final MarcXmlParserThread producer = new MarcXmlParserThread(queue, new InputSource(input));
+        producer.start();
+    }
+
     /**
      * Constructs an instance with the specified input stream and stylesheet
      * location.
@@ -132,7 +147,8 @@ public class MarcXmlReader implements MarcReader {
      * 
      * The stylesheet is used to transform the source file and should produce
      * valid MARCXML records. The result is then used to create
-     * <code>Record</code> objects.
+     * <code>Record</code> objects. A stylesheet that is read from its system
+     * id is compiled once and kept in the {@link TemplatesCache}.
      * 
      * @param input the input source
      * @param stylesheet the stylesheet source
@@ -144,7 +160,7 @@ public class MarcXmlReader implements MarcReader {
         final SAXTransformerFactory stf = (SAXTransformerFactory) factory;
         TransformerHandler th = null;
         try {
-            th = stf.newTransformerHandler(stylesheet);
+            th = stf.newTransformerHandler(TemplatesCache.getTemplates(stylesheet));
         } catch (final TransformerConfigurationException e) {
             throw new MarcException("Error creating TransformerHandler", e);
         }
@@ -0,0 +1,251 @@
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Writes the SAX events of a {@link MarcXmlWriter} as XML text straight to a
+ * {@link Writer}, without going through a JAXP identity transform.
+ * <p>
+ * The output is the same as the output of the JDK's default serializer for
+ * the events <code>MarcXmlWriter</code> sends: the start tag of an element
+ * is kept open until its content starts, so elements without content are
+ * written as empty-element tags, and the same characters are written as
+ * character references. Namespace declarations are written on the element
+ * that follows their <code>startPrefixMapping</code> event.
+ * </p>
+ */
+class MarcXmlSerializer extends DefaultHandler {
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private final Writer writer;
+
+    private final StringBuilder namespaces = new StringBuilder();
+
+    private boolean startTagOpen = false;
+
+    /**
+     * Creates a serializer writing to the supplied writer.
+     *
+     * @param writer - the writer to write the XML to, should be buffered
+     */
+    MarcXmlSerializer(final Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        try {
+            writer.write(XML_DECLARATION);
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        try {
+            closeStartTag();
+            writer.flush();
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        namespaces.append(" xmlns");
+
+        if (prefix.length() > 0) {
+            namespaces.append(':').append(prefix);
+        }
+
+        namespaces.append("=\"").append(uri).append('"');
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes atts)
+            throws SAXException {
+        try {
+            closeStartTag();
+            writer.write('<');
+            writer.write(qName);
+
+            if (namespaces.length() > 0) {
+                writer.write(namespaces.toString());
+                namespaces.setLength(0);
+            }
+
+            for (int i = 0; i < atts.getLength(); i++) {
+                writer.write(' ');
+                writer.write(atts.getQName(i));
+                writer.write("=\"");
+                writeAttributeValue(atts.getValue(i));
+                writer.write('"');
+            }
+
+            startTagOpen = true;
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+        try {
+            if (startTagOpen) {
+                writer.write("/>");
+                startTagOpen = false;
+            } else {
+                writer.write("</");
+                writer.write(qName);
+                writer.write('>');
+            }
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) throws SAXException {
+        if (length == 0) {
+            return;
+        }
+
+        try {
+            closeStartTag();
+            writeText(ch, start, length);
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+        if (length == 0) {
+            return;
+        }
+
+        try {
+            closeStartTag();
+            writer.write(ch, start, length);
+        } catch (final IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private void closeStartTag() throws IOException {
+        if (startTagOpen) {
+            writer.write('>');
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * Writes character data, escaping markup characters, control characters
+     * other than tab and newline, and characters outside the Basic
+     * Multilingual Plane. Runs of characters that need no escaping are
+     * written in one call.
+     */
+    private void writeText(final char[] ch, final int start, final int length) throws IOException, SAXException {
+        final int end = start + length;
+        int run = start;
+
+        for (int i = start; i < end; i++) {
+            final char c = ch[i];
+            final String entity;
+
+            if (c == '&') {
+                entity = "&amp;";
+            } else if (c == '<') {
+                entity = "&lt;";
+            } else if (c == '>') {
+                entity = "&gt;";
+            } else if (c < 0x20 && c != '\t' && c != '\n' || c >= 0x7F && c <= 0x9F || Character.isSurrogate(c)) {
+                entity = null;
+            } else {
+                continue;
+            }
+
+            writer.write(ch, run, i - run);
+
+            if (entity != null) {
+                writer.write(entity);
+            } else {
+                i = writeCharacterReference(ch, i, end);
+            }
+
+            run = i + 1;
+        }
+
+        writer.write(ch, run, end - run);
+    }
+
+    /**
+     * Writes an attribute value, escaping markup characters, quotes, all
+     * control characters and characters outside the Basic Multilingual Plane.
+     */
+    private void writeAttributeValue(final String value) throws IOException, SAXException {
+        final char[] ch = value.toCharArray();
+        final int end = ch.length;
+        int run = 0;
+
+        for (int i = 0; i < end; i++) {
+            final char c = ch[i];
+            final String entity;
+
+            if (c == '&') {
+                entity = "&amp;";
+            } else if (c == '<') {
+                entity = "&lt;";
+            } else if (c == '>') {
+                entity = "&gt;";
+            } else if (c == '"') {
+                entity = "&quot;";
+            } else if (c < 0x20 || Character.isSurrogate(c)) {
+                entity = null;
+            } else {
+                continue;
+            }
+
+            writer.write(ch, run, i - run);
+
+            if (entity != null) {
+                writer.write(entity);
+            } else {
+                i = writeCharacterReference(ch, i, end);
+            }
+
+            run = i + 1;
+        }
+
+        writer.write(ch, run, end - run);
+    }
+
+    /**
+     * Writes the character at <code>index</code> as a decimal character
+     * reference, combining it with the next character if the two form a
+     * surrogate pair, and returns the index of the last character written.
+     */
+    private int writeCharacterReference(final char[] ch, final int index, final int end) throws IOException,
+            SAXException {
+        final char c = ch[index];
+
+        if (Character.isHighSurrogate(c)) {
+            if (index + 1 < end && Character.isLowSurrogate(ch[index + 1])) {
+                writer.write("&#" + Character.toCodePoint(c, ch[index + 1]) + ";");
+                return index + 1;
+            }
+
+            throw new SAXException("Invalid UTF-16 surrogate detected: " + Integer.toHexString(c));
+        }
+
+        writer.write("&#" + (int) c + ";");
+        return index;
+    }
+}
@@ -0,0 +1,402 @@
+package org.marc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cuts a MARCXML collection document into smaller documents that each hold a
+ * run of consecutive records, so the runs can be parsed independently.
+ * <p>
+ * The input is scanned as bytes, looking only at markup: comments, CDATA
+ * sections, processing instructions and declarations are passed over, and
+ * start and end tags are counted to know the depth of every element. The
+ * collection is cut right before the start tag of a <code>record</code>
+ * element that is a child of the root element, once the current run is at
+ * least the chunk size, so anything between two records stays with the
+ * record before it. Element names are compared without their namespace
+ * prefix, the way {@link MarcXmlHandler} compares them.
+ * </p>
+ * <p>
+ * Every chunk is a complete document: the prolog and the start tag of the
+ * root element, with its namespace declarations, followed by the records and
+ * the end tag of the root element. A chunk cut short by the end of the input
+ * is returned without the end tag, so parsing it fails the way parsing the
+ * whole document would.
+ * </p>
+ * <p>
+ * Scanning bytes only works for encodings in which markup is ASCII, so
+ * documents starting with a UTF-16 or UTF-32 byte order mark or without a
+ * <code>collection</code> root element can't be split, see
+ * {@link #isSplittable()}.
+ * </p>
+ */
+class MarcXmlSplitter {
+
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PI_END = "?>".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream input;
+
+    private final int chunkSize;
+
+    private byte[] buffer = new byte[2 * READ_SIZE];
+
+    // the end of the data read into the buffer
+    private int limit = 0;
+
+    // the position the scan has reached
+    private int pos = 0;
+
+    private boolean endOfInput = false;
+
+    private boolean splittable;
+
+    private boolean done = false;
+
+    private byte[] header;
+
+    private byte[] trailer;
+
+    // the depth of the element the scan is in, the root element is depth 1
+    private int depth = 0;
+
+    /**
+     * Creates a splitter that reads the collection from the supplied stream
+     * and cuts it into chunks of about the supplied size. The prolog and the
+     * root start tag are read right away.
+     *
+     * @param input - the stream to read the collection from
+     * @param chunkSize - the minimum size in bytes of a chunk
+     * @throws IOException if the input can not be read
+     */
+    MarcXmlSplitter(final InputStream input, final int chunkSize) throws IOException {
+        this.input = input;
+        this.chunkSize = chunkSize;
+        splittable = readRootStartTag();
+    }
+
+    /**
+     * Returns true if the input can be split, false if it has to be parsed as
+     * a whole from {@link #getInput()}.
+     *
+     * @return true if the input can be split
+     */
+    boolean isSplittable() {
+        return splittable;
+    }
+
+    /**
+     * Returns the whole input, including what the splitter has read of it.
+     *
+     * @return the input stream the splitter was created with
+     */
+    InputStream getInput() {
+        return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, limit), input);
+    }
+
+    /**
+     * Returns the next chunk as a complete document, or <code>null</code> when
+     * all records have been returned.
+     *
+     * @return the next chunk
+     * @throws IOException if the input can not be read
+     */
+    byte[] nextChunk() throws IOException {
+        if (done) {
+            return null;
+        }
+
+        compact();
+        final int start = pos;
+
+        while (true) {
+            final int lt = find('<', pos);
+
+            if (lt < 0) {
+                done = true;
+                return chunk(start, limit, false);
+            }
+
+            pos = lt;
+
+            if (startsWith(CDATA_START, lt)) {
+                skipPast(CDATA_END, lt + CDATA_START.length);
+            } else if (byteAt(lt + 1) == '!' && byteAt(lt + 2) == '-' && byteAt(lt + 3) == '-') {
+                skipPast(COMMENT_END, lt + 4);
+            } else if (byteAt(lt + 1) == '!') {
+                skipDeclaration(lt + 2);
+            } else if (byteAt(lt + 1) == '?') {
+                skipPast(PI_END, lt + 2);
+            } else if (byteAt(lt + 1) == '/') {
+                skipTag(nameEnd(lt + 2));
+
+                if (pos >= 0 && --depth == 0) {
+                    done = true;
+                    return chunk(start, lt, true);
+                }
+            } else {
+                final int nameEnd = nameEnd(lt + 1);
+
+                if (depth == 1 && lt - start >= chunkSize && isRecord(lt + 1, nameEnd)) {
+                    // leave the scan at the record, it starts the next chunk
+                    return chunk(start, lt, true);
+                }
+
+                if (!skipTag(nameEnd)) {
+                    depth++;
+                }
+            }
+
+            if (pos < 0) {
+                done = true;
+                return chunk(start, limit, false);
+            }
+        }
+    }
+
+    /**
+     * Reads the prolog and the start tag of the root element, keeping them as
+     * the header of every chunk. Returns false if the input can't be split.
+     */
+    private boolean readRootStartTag() throws IOException {
+        final int first = byteAt(0);
+        final int second = byteAt(1);
+
+        if (first == 0 || second == 0 || first == 0xFE || first == 0xFF) {
+            return false;
+        }
+
+        while (true) {
+            final int lt = find('<', pos);
+
+            if (lt < 0) {
+                return false;
+            }
+
+            pos = lt;
+
+            if (byteAt(lt + 1) == '!' && byteAt(lt + 2) == '-' && byteAt(lt + 3) == '-') {
+                skipPast(COMMENT_END, lt + 4);
+            } else if (byteAt(lt + 1) == '!') {
+                skipDeclaration(lt + 2);
+            } else if (byteAt(lt + 1) == '?') {
+                skipPast(PI_END, lt + 2);
+            } else {
+                final int nameEnd = nameEnd(lt + 1);
+                final String name = new String(buffer, lt + 1, nameEnd - lt - 1, StandardCharsets.ISO_8859_1);
+
+                if (!"collection".equals(MarcXmlHandler.stripNsPrefix(name)) || skipTag(nameEnd) || pos < 0) {
+                    return false;
+                }
+
+                header = new byte[pos];
+                System.arraycopy(buffer, 0, header, 0, pos);
+                trailer = ("</" + name + ">").getBytes(StandardCharsets.ISO_8859_1);
+                depth = 1;
+                return true;
+            }
+
+            if (pos < 0) {
+                return false;
+            }
+        }
+    }
+
+    private byte[] chunk(final int start, final int end, final boolean complete) {
+        final int length = end - start;
+        final byte[] chunk = new byte[header.length + length + (complete ? trailer.length : 0)];
+        System.arraycopy(header, 0, chunk, 0, header.length);
+        System.arraycopy(buffer, start, chunk, header.length, length);
+
+        if (complete) {
+            System.arraycopy(trailer, 0, chunk, header.length + length, trailer.length);
+        }
+
+        return chunk;
+    }
+
+    private boolean isRecord(final int nameStart, final int nameEnd) {
+        final String name = new String(buffer, nameStart, nameEnd - nameStart, StandardCharsets.ISO_8859_1);
+        return "record".equals(MarcXmlHandler.stripNsPrefix(name));
+    }
+
+    /**
+     * Returns the position right after the element name starting at the
+     * supplied position.
+     */
+    private int nameEnd(final int from) throws IOException {
+        int i = from;
+        int b = byteAt(i);
+
+        while (b != -1 && b != '>' && b != '/' && b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+            b = byteAt(++i);
+        }
+
+        return i;
+    }
+
+    /**
+     * Moves the scan past the end of the tag whose attributes start at the
+     * supplied position, and returns true if it is an empty-element tag. The
+     * scan position is set to -1 if the input ends within the tag.
+     */
+    private boolean skipTag(final int from) throws IOException {
+        int quote = 0;
+        int previous = 0;
+
+        for (int i = from;; i++) {
+            final int b = byteAt(i);
+
+            if (b == -1) {
+                pos = -1;
+                return false;
+            } else if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                pos = i + 1;
+                return previous == '/';
+            }
+
+            previous = b;
+        }
+    }
+
+    /**
+     * Moves the scan past the end of a declaration such as a document type
+     * declaration, which may have an internal subset in square brackets.
+     */
+    private void skipDeclaration(final int from) throws IOException {
+        int quote = 0;
+        int brackets = 0;
+
+        for (int i = from;; i++) {
+            final int b = byteAt(i);
+
+            if (b == -1) {
+                pos = -1;
+                return;
+            } else if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '[') {
+                brackets++;
+            } else if (b == ']') {
+                brackets--;
+            } else if (b == '>' && brackets <= 0) {
+                pos = i + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the scan past the next occurrence of the supplied bytes.
+     */
+    private void skipPast(final byte[] end, final int from) throws IOException {
+        for (int i = find(end[0], from); i >= 0; i = find(end[0], i + 1)) {
+            if (startsWith(end, i)) {
+                pos = i + end.length;
+                return;
+            }
+        }
+
+        pos = -1;
+    }
+
+    private boolean startsWith(final byte[] bytes, final int at) throws IOException {
+        for (int i = 0; i < bytes.length; i++) {
+            if (byteAt(at + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the position of the next occurrence of the supplied byte, or -1
+     * if the input ends first.
+     */
+    private int find(final int b, final int from) throws IOException {
+        int i = from;
+
+        while (true) {
+            for (; i < limit; i++) {
+                if (buffer[i] == b) {
+                    return i;
+                }
+            }
+
+            if (!read()) {
+                return -1;
+            }
+        }
+    }
+
+    private int byteAt(final int i) throws IOException {
+        while (i >= limit) {
+            if (!read()) {
+                return -1;
+            }
+        }
+
+        return buffer[i] & 0xFF;
+    }
+
+    /**
+     * Reads more of the input into the buffer, growing it when it is full.
+     * Returns false at the end of the input.
+     */
+    private boolean read() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+
+        if (buffer.length - limit < READ_SIZE) {
+            final byte[] grown = new byte[Math.max(buffer.length * 2, limit + READ_SIZE)];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+
+        final int read = input.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Drops the bytes before the scan position, which belong to chunks that
+     * have already been returned.
+     */
+    private void compact() {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcFactory;
+
+/**
+ * Converts MARCXML to MARC records in ISO 2709 format without building
+ * {@link org.marc4j.marc.Record} objects.
+ * <p>
+ * The XML is read with a StAX {@link XMLStreamReader} and every field is
+ * encoded by a {@link MarcBinaryEncoder} as soon as it has been read, so only
+ * the encoded bytes of the current record are kept. The output is the same as
+ * reading the records with {@link MarcXmlReader} and writing them with a
+ * {@link MarcStreamWriter} with the same encoding and converter: fields that
+ * {@link MarcXmlHandler} would leave out of a record, like a data field
+ * without indicators, are left out here as well. When the encoding is chosen
+ * per record, from the character coding scheme in the leader, the leader
+ * element has to come before the fields, as the MARCXML schema requires.
+ * </p>
+ *
+ * <pre>
+ * InputStream input = new FileInputStream(&quot;file.xml&quot;);
+ * OutputStream output = new BufferedOutputStream(new FileOutputStream(&quot;file.mrc&quot;));
+ * MarcXmlTranscoder transcoder = new MarcXmlTranscoder(output, &quot;UTF-8&quot;, false);
+ * transcoder.transcode(input);
+ * transcoder.close();
+ * </pre>
+ */
+public class MarcXmlTranscoder {
+
+    private static final String DEFAULT_LEADER = "00000nam a2200000 a 4500";
+
+    private static final String TAG_ATTR = "tag";
+
+    private static final String CODE_ATTR = "code";
+
+    private static final String IND_1_ATTR = "ind1";
+
+    private static final String IND_2_ATTR = "ind2";
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private final OutputStream out;
+
+    private final MarcBinaryEncoder encoder;
+
+    private final Leader leader = MarcFactory.newInstance().newLeader(DEFAULT_LEADER);
+
+    private final StringBuilder sb = new StringBuilder();
+
+    private boolean capturing = false;
+
+    private boolean inRecord = false;
+
+    private boolean started = false;
+
+    private boolean seenRecord = false;
+
+    private String controlFieldTag = null;
+
+    private String dataFieldTag = null;
+
+    private int subfieldCode = -1;
+
+    /**
+     * Constructs an instance that writes records encoded in ISO 8859-1 to the
+     * supplied stream.
+     *
+     * @param out - the OutputStream to write the records to
+     */
+    public MarcXmlTranscoder(final OutputStream out) {
+        this(out, "ISO8859_1", false);
+    }
+
+    /**
+     * Constructs an instance that writes records with the given encoding to
+     * the supplied stream.
+     *
+     * @param out - the OutputStream to write the records to
+     * @param encoding - the encoding of the data, see
+     *        {@link MarcBinaryEncoder#MarcBinaryEncoder(String, boolean)}
+     * @param allowOversizeRecord - true to allow oversized records to be written
+     */
+    public MarcXmlTranscoder(final OutputStream out, final String encoding, final boolean allowOversizeRecord) {
+        this.out = out;
+        encoder = new MarcBinaryEncoder(encoding, allowOversizeRecord);
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return inputFactory;
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    public CharConverter getConverter() {
+        return encoder.getConverter();
+    }
+
+    /**
+     * Sets the character converter applied to the data of every field.
+     *
+     * @param converter - the character converter
+     */
+    public void setConverter(final CharConverter converter) {
+        encoder.setConverter(converter);
+    }
+
+    /**
+     * Converts all the records in the supplied MARCXML document.
+     *
+     * @param input - the stream to read the MARCXML from
+     * @return the number of records written
+     * @throws MarcException if the XML can't be parsed or a record can't be written
+     */
+    public int transcode(final InputStream input) {
+        try {
+            return transcode(INPUT_FACTORY.createXMLStreamReader(input));
+        } catch (final XMLStreamException e) {
+            throw new MarcException("Unable to parse input", e);
+        }
+    }
+
+    /**
+     * Converts all the records read from the supplied stream reader, which
+     * must be namespace aware.
+     *
+     * @param xml - the StAX stream reader positioned before the records
+     * @return the number of records written
+     * @throws MarcException if the XML can't be parsed or a record can't be written
+     */
+    public int transcode(final XMLStreamReader xml) {
+        int count = 0;
+        try {
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(xml);
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (capturing) {
+                            sb.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (inRecord && endElement(xml.getLocalName())) {
+                            count++;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            xml.close();
+        } catch (final XMLStreamException e) {
+            throw new MarcException("Unable to parse input", e);
+        }
+        if (inRecord) {
+            throw new MarcException("Unexpected end of input in record");
+        }
+        return count;
+    }
+
+    /**
+     * Closes the output stream.
+     */
+    public void close() {
+        try {
+            out.close();
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while closing the output", e);
+        }
+    }
+
+    private void startElement(final XMLStreamReader xml) {
+        final String name = xml.getLocalName();
+
+        if (name.equals("collection")) {
+            return;
+        }
+        if (name.equals("record")) {
+            leader.unmarshal(DEFAULT_LEADER);
+            inRecord = true;
+            started = false;
+            seenRecord = true;
+            capturing = false;
+            controlFieldTag = null;
+            dataFieldTag = null;
+            subfieldCode = -1;
+            return;
+        }
+        if (!inRecord) {
+            if (seenRecord && !isMarcElement(name)) {
+                // wrapper elements between records are passed over
+                return;
+            }
+            throw new MarcException("Unexpected XML element: " + name);
+        }
+
+        if (name.equals("leader")) {
+            startCapture();
+        } else if (name.equals("controlfield")) {
+            controlFieldTag = xml.getAttributeValue(null, TAG_ATTR);
+            if (controlFieldTag != null) {
+                startCapture();
+            }
+        } else if (name.equals("datafield")) {
+            final String tag = xml.getAttributeValue(null, TAG_ATTR);
+            final String ind1 = xml.getAttributeValue(null, IND_1_ATTR);
+            final String ind2 = xml.getAttributeValue(null, IND_2_ATTR);
+            if (tag != null && ind1 != null && ind2 != null) {
+                if (dataFieldTag != null) {
+                    throw new MarcException("Unexpected datafield in datafield " + dataFieldTag);
+                }
+                startRecord();
+                encoder.startDataField(tag, ind1.length() == 0 ? ' ' : ind1.charAt(0), ind2.length() == 0 ? ' '
+                        : ind2.charAt(0));
+                dataFieldTag = tag;
+            }
+        } else if (name.equals("subfield")) {
+            final String code = xml.getAttributeValue(null, CODE_ATTR);
+            if (code != null) {
+                subfieldCode = code.length() == 0 ? ' ' : code.charAt(0);
+                startCapture();
+            }
+        }
+    }
+
+    /**
+     * Handles the end of an element, returning true at the end of a record.
+     */
+    private boolean endElement(final String name) {
+        if (name.equals("record")) {
+            startRecord();
+            encoder.endRecord();
+            try {
+                encoder.writeTo(out);
+            } catch (final IOException e) {
+                throw new MarcException("IO Error occured while writing record", e);
+            }
+            inRecord = false;
+            return true;
+        } else if (name.equals("leader")) {
+            leader.unmarshal(sb.toString());
+        } else if (name.equals("controlfield")) {
+            if (controlFieldTag != null) {
+                if (dataFieldTag != null) {
+                    throw new MarcException("Unexpected controlfield in datafield " + dataFieldTag);
+                }
+                startRecord();
+                encoder.addControlField(controlFieldTag, sb);
+                controlFieldTag = null;
+            }
+        } else if (name.equals("datafield")) {
+            if (dataFieldTag != null) {
+                encoder.endDataField();
+                dataFieldTag = null;
+            }
+        } else if (name.equals("subfield")) {
+            if (dataFieldTag != null && subfieldCode != -1) {
+                encoder.addSubfield((char) subfieldCode, sb);
+            }
+            subfieldCode = -1;
+        }
+        return false;
+    }
+
+    private void startCapture() {
+        sb.setLength(0);
+        capturing = true;
+    }
+
+    /**
+     * Starts encoding the current record, once its first field is added. The
+     * leader element normally comes first, and sets the encoding.
+     */
+    private void startRecord() {
+        if (!started) {
+            encoder.startRecord(leader);
+            started = true;
+        }
+    }
+
+    private static boolean isMarcElement(final String name) {
+        return name.equals("leader") || name.equals("controlfield") || name.equals("datafield") ||
+                name.equals("subfield");
+    }
+
+}
@@ -32,10 +32,10 @@ import java.util.regex.Pattern;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.marc4j.converter.CharConverter;
@@ -46,6 +46,7 @@ import org.marc4j.marc.Leader;
 import org.marc4j.marc.MarcFactory;
 import org.marc4j.marc.Record;
 import org.marc4j.marc.Subfield;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
@@ -55,6 +56,11 @@ import org.xml.sax.helpers.AttributesImpl;
  * pipeline to post-process the result. By default this class uses a null transform. It is strongly recommended to use
  * a dedicated XML serializer.
  * <p>
+ * When writing to an <code>OutputStream</code> the events are serialized directly to a buffered writer, without a
+ * transform, giving the same output the null transform gives. A <code>Result</code> is always written through a JAXP
+ * transform, with the stylesheet if one is given.
+ * </p>
+ * <p>
  * This class requires a JAXP compliant XML parser and XSLT processor. The underlying SAX2 parser should be namespace
  * aware.
  * </p>
@@ -181,7 +187,7 @@ public class MarcXmlWriter implements MarcWriter {
 
     private boolean indent = false;
 
-    private TransformerHandler handler = null;
+    private ContentHandler handler = null;
 
     private Writer writer = null;
 
@@ -256,7 +262,7 @@ public class MarcXmlWriter implements MarcWriter {
             writer = new OutputStreamWriter(out, encoding);
             writer = new BufferedWriter(writer);
 
-            setHandler(new StreamResult(writer), null);
+            handler = new MarcXmlSerializer(writer);
         } catch (final UnsupportedEncodingException details) {
             throw new MarcException(details.getMessage(), details);
         }
@@ -289,7 +295,8 @@ public class MarcXmlWriter implements MarcWriter {
     }
 
     /**
-     * Constructs an instance with the specified stylesheet source and result.
+     * Constructs an instance with the specified stylesheet source and result. A stylesheet that is read from its
+     * system id is compiled once and kept in the {@link TemplatesCache}.
      *
      * @param result - write to a Result object rather than a OutputStream
      * @param stylesheet - the Source of a XSLT stylesheet to use to transform the output
@@ -307,6 +314,40 @@ public class MarcXmlWriter implements MarcWriter {
         writeStartDocument();
     }
 
+    /**
+     * Constructs an instance with the specified compiled stylesheet and result. Every writer gets a transformer of
+     * its own from the templates, so writers sharing the templates can be used on different threads.
+     *
+     * @param result - write to a Result object rather than a OutputStream
+     * @param templates - the compiled XSLT stylesheet to use to transform the output, see {@link TemplatesCache}
+     */
+    public MarcXmlWriter(final Result result, final Templates templates) {
+        if (templates == null) {
+            throw new NullPointerException("null Templates");
+        }
+
+        if (result == null) {
+            throw new NullPointerException("null Result");
+        }
+
+        setTemplatesHandler(result, templates);
+        writeStartDocument();
+    }
+
+    /**
+     * Creates a writer that writes the record elements only, without the XML declaration and the collection element,
+     * for callers that write those themselves. The writer must not be closed.
+     *
+     * @param out - the Writer to write the record elements to
+     * @return the writer
+     */
+    static MarcXmlWriter createFragmentWriter(final Writer out) {
+        final MarcXmlWriter writer = new MarcXmlWriter();
+
+        writer.handler = new MarcXmlSerializer(out);
+        return writer;
+    }
+
     /**
      * Closes the writer.
      */
@@ -386,6 +427,10 @@ public class MarcXmlWriter implements MarcWriter {
     }
 
     protected void setHandler(final Result result, final Source stylesheet) throws MarcException {
+        setTemplatesHandler(result, stylesheet == null ? null : TemplatesCache.getTemplates(stylesheet));
+    }
+
+    private void setTemplatesHandler(final Result result, final Templates templates) throws MarcException {
         try {
             final TransformerFactory factory = TransformerFactory.newInstance();
 
@@ -395,14 +440,17 @@ public class MarcXmlWriter implements MarcWriter {
 
             final SAXTransformerFactory saxFactory = (SAXTransformerFactory) factory;
 
-            if (stylesheet == null) {
-                handler = saxFactory.newTransformerHandler();
+            final TransformerHandler transformerHandler;
+
+            if (templates == null) {
+                transformerHandler = saxFactory.newTransformerHandler();
             } else {
-                handler = saxFactory.newTransformerHandler(stylesheet);
+                transformerHandler = saxFactory.newTransformerHandler(templates);
             }
 
-            handler.getTransformer().setOutputProperty(OutputKeys.METHOD, "xml");
-            handler.setResult(result);
+            transformerHandler.getTransformer().setOutputProperty(OutputKeys.METHOD, "xml");
+            transformerHandler.setResult(result);
+            handler = transformerHandler;
 
         } catch (final Exception details) {
             throw new MarcException(details.getMessage(), details);
@@ -507,7 +555,7 @@ public class MarcXmlWriter implements MarcWriter {
 
             writer.setIndent(indent);
             writer.setUnicodeNormalization(true);
-            writer.setHandler(new StreamResult(out), null);
+            writer.handler = new MarcXmlSerializer(out);
             writer.handler.startDocument();
             writer.handler.startPrefixMapping(Constants.MARCXML_NS_PREFIX, Constants.MARCXML_NS_URI);
             writer.toXml(record);
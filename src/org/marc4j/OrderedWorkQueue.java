@@ -0,0 +1,266 @@
+package org.marc4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the decoding work of a reader on a pool of threads and hands out the
+ * results in input order.
+ * <p>
+ * The thread calling {@link #hasNext()} and {@link #next()} reads the input
+ * through a {@link Source}, which returns a {@link Task} for every piece of
+ * input it reads, such as a raw record or a chunk of records. The tasks run on
+ * the worker threads and the items they produce are returned in the order the
+ * tasks were read. At most a fixed number of tasks per worker is read ahead,
+ * so memory use stays bounded however fast the workers are.
+ * </p>
+ * <p>
+ * An exception thrown by a task is thrown by {@link #next()} after the items
+ * the task produced before it. An exception thrown by the source ends
+ * the input, and is thrown after the items of the tasks read before it.
+ * </p>
+ *
+ * @param <T> the type of the items produced
+ */
+final class OrderedWorkQueue<T> {
+
+    /**
+     * Reads the input on the thread calling {@link OrderedWorkQueue#hasNext()}.
+     *
+     * @param <T> the type of the items produced
+     */
+    interface Source<T> {
+
+        /**
+         * Reads the next piece of input and returns the task that decodes it.
+         *
+         * @return the task, or <code>null</code> at the end of the input
+         */
+        Task<T> next();
+    }
+
+    /**
+     * Decodes a piece of input on a worker thread.
+     *
+     * @param <T> the type of the items produced
+     */
+    interface Task<T> {
+
+        /**
+         * Decodes the piece of input, adding the items to the supplied list.
+         *
+         * @param items - the list to add the items to
+         */
+        void run(List<T> items);
+    }
+
+    private final Source<T> source;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final boolean stopOnError;
+
+    private final ArrayDeque<Future<Result<T>>> pending = new ArrayDeque<Future<Result<T>>>();
+
+    private Iterator<T> current = new ArrayList<T>().iterator();
+
+    private RuntimeException error = null;
+
+    private boolean endOfInput = false;
+
+    /**
+     * Creates a queue that runs the tasks of the source on the given number
+     * of daemon threads. With no threads, every task is run on the calling
+     * thread as soon as it is read.
+     *
+     * @param source - the source of the tasks
+     * @param threads - the number of worker threads
+     * @param tasksPerThread - the number of tasks read ahead for every thread
+     * @param threadName - the name of the worker threads
+     * @param stopOnError - true to end the iteration after an exception thrown by a task
+     */
+    OrderedWorkQueue(final Source<T> source, final int threads, final int tasksPerThread, final String threadName,
+            final boolean stopOnError) {
+        this.source = source;
+        this.stopOnError = stopOnError;
+        if (threads > 0) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maxPending = threads * tasksPerThread;
+        } else {
+            executor = null;
+            maxPending = 1;
+        }
+    }
+
+    /**
+     * Returns true if there are more items, false otherwise.
+     *
+     * @return true if there are more items
+     */
+    boolean hasNext() {
+        while (!current.hasNext()) {
+            if (error != null) {
+                return true;
+            }
+            fill();
+            final Future<Result<T>> head = pending.poll();
+            if (head == null) {
+                return false;
+            }
+            // keep the workers busy while the caller waits for this task
+            fill();
+            final Result<T> result = getResult(head);
+            current = result.items.iterator();
+            error = result.error;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next item, or throws the exception that ended a task once
+     * the items the task produced before it have been returned.
+     *
+     * @return the next item
+     */
+    T next() {
+        if (!hasNext()) {
+            throw new MarcException("no more records available");
+        }
+        if (!current.hasNext()) {
+            final RuntimeException e = error;
+            error = null;
+            if (stopOnError) {
+                close();
+            }
+            throw e;
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops the worker threads. Items that were not returned yet are
+     * discarded.
+     */
+    void close() {
+        endOfInput = true;
+        pending.clear();
+        current = new ArrayList<T>().iterator();
+        error = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result<T> getResult(final Future<Result<T>> result) {
+        try {
+            return result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarcException("interrupted while waiting for a record", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MarcException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Reads tasks and hands them to the workers until enough tasks are in
+     * progress or the input is exhausted.
+     */
+    private void fill() {
+        while (!endOfInput && pending.size() < maxPending) {
+            Task<T> task;
+            try {
+                task = source.next();
+            } catch (final RuntimeException e) {
+                // the error is thrown after the items read before it
+                final Result<T> failed = new Result<T>();
+                failed.error = e;
+                final FutureTask<Result<T>> done = new FutureTask<Result<T>>(new Callable<Result<T>>() {
+
+                    @Override
+                    public Result<T> call() {
+                        return failed;
+                    }
+                });
+                done.run();
+                pending.add(done);
+                endOfInput = true;
+                break;
+            }
+            if (task == null) {
+                endOfInput = true;
+                break;
+            }
+            final FutureTask<Result<T>> future = new FutureTask<Result<T>>(new Run<T>(task));
+            if (executor != null) {
+                executor.execute(future);
+            } else {
+                future.run();
+            }
+            pending.add(future);
+        }
+        if (endOfInput && executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs a task, keeping the items it produced before an exception.
+     */
+    private static final class Run<T> implements Callable<Result<T>> {
+
+        private final Task<T> task;
+
+        Run(final Task<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public Result<T> call() {
+            final Result<T> result = new Result<T>();
+            try {
+                task.run(result.items);
+            } catch (final RuntimeException e) {
+                result.error = e;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The items produced by a task, and the exception that ended it, if any.
+     */
+    private static final class Result<T> {
+
+        private final List<T> items = new ArrayList<T>();
+
+        private RuntimeException error = null;
+    }
+
+}
@@ -0,0 +1,333 @@
+package org.marc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An OutputStream that compresses the data written to it in gzip format on a
+ * pool of worker threads. The data is cut into blocks that are compressed
+ * independently of each other, and every block becomes a member of the gzip
+ * file. A file with several members is a standard gzip file; gunzip,
+ * {@link java.util.zip.GZIPInputStream} and the {@link MarcReaderFactory}
+ * read it back as a single stream.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * OutputStream out = new ParallelGZIPOutputStream(new FileOutputStream(&quot;output.mrc.gz&quot;), 4);
+ * MarcWriter writer = new MarcStreamWriter(out, &quot;UTF-8&quot;);
+ * while (reader.hasNext()) {
+ *     writer.write(reader.next());
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * <p>
+ * As the blocks don't share a dictionary, the output is a little larger than
+ * that of {@link java.util.zip.GZIPOutputStream}. At most a fixed number of
+ * blocks per thread are being compressed or waiting to be written at any
+ * time.
+ * </p>
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+    /**
+     * The default number of bytes compressed in one block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    // number of blocks queued per worker thread
+    private static final int BLOCKS_PER_THREAD = 2;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final OutputStream out;
+
+    private final int threads;
+
+    private final int blockSize;
+
+    private final int level;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    // blocks whose data has been compressed, ready to be filled again
+    private final ArrayDeque<byte[]> freeBlocks = new ArrayDeque<byte[]>();
+
+    // deflaters not in use by a worker, all ended when the stream is closed
+    private final ArrayDeque<Deflater> freeDeflaters = new ArrayDeque<Deflater>();
+
+    private boolean deflatersEnded = false;
+
+    private ExecutorService executor = null;
+
+    private byte[] block = null;
+
+    private int blockLength = 0;
+
+    private boolean empty = true;
+
+    private boolean closed = false;
+
+    /**
+     * Constructs an instance that compresses on as many threads as there are
+     * processors.
+     *
+     * @param out - the OutputStream to write the gzip data to
+     */
+    public ParallelGZIPOutputStream(final OutputStream out) {
+        this(out, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an instance that compresses on the given number of threads.
+     *
+     * @param out - the OutputStream to write the gzip data to
+     * @param threads - the number of threads compressing the data
+     */
+    public ParallelGZIPOutputStream(final OutputStream out, final int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs an instance that compresses blocks of the given size on the
+     * given number of threads, with the given compression level.
+     *
+     * @param out - the OutputStream to write the gzip data to
+     * @param threads - the number of threads compressing the data
+     * @param blockSize - the number of bytes compressed in one block
+     * @param level - the compression level, from 0 to 9, or -1 for the default
+     */
+    public ParallelGZIPOutputStream(final OutputStream out, final int threads, final int blockSize,
+            final int level) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one compressing thread is needed");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        this.out = out;
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream has been closed");
+        }
+        while (len > 0) {
+            if (block == null) {
+                synchronized (freeBlocks) {
+                    block = freeBlocks.isEmpty() ? new byte[blockSize] : freeBlocks.pop();
+                }
+                blockLength = 0;
+            }
+            final int count = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that have been compressed to the underlying stream
+     * and flushes that. Like {@link java.util.zip.GZIPOutputStream}, this
+     * does not end the current block, so writers that flush after every
+     * record don't cut the data into small blocks.
+     *
+     * @throws IOException if the data can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses and writes the remaining data and closes the underlying
+     * stream.
+     *
+     * @throws IOException if the data can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (block != null && blockLength > 0) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            if (empty) {
+                // a gzip file holds at least one member
+                final Deflater deflater = new Deflater(level, true);
+                try {
+                    out.write(compress(new byte[0], 0, deflater));
+                } finally {
+                    deflater.end();
+                }
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            try {
+                if (executor != null) {
+                    executor.shutdownNow();
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                endDeflaters();
+                out.close();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (executor == null) {
+            start();
+        }
+        while (pending.size() >= threads * BLOCKS_PER_THREAD || !pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        final byte[] data = block;
+        final int length = blockLength;
+        block = null;
+        empty = false;
+        pending.add(executor.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+                final Deflater deflater = takeDeflater();
+                try {
+                    final byte[] member = compress(data, length, deflater);
+                    synchronized (freeBlocks) {
+                        freeBlocks.push(data);
+                    }
+                    return member;
+                } finally {
+                    returnDeflater(deflater);
+                }
+            }
+        }));
+    }
+
+    private Deflater takeDeflater() {
+        synchronized (freeDeflaters) {
+            return freeDeflaters.isEmpty() ? new Deflater(level, true) : freeDeflaters.pop();
+        }
+    }
+
+    private void returnDeflater(final Deflater deflater) {
+        synchronized (freeDeflaters) {
+            if (deflatersEnded) {
+                // the stream was closed while this block was compressed
+                deflater.end();
+            } else {
+                freeDeflaters.push(deflater);
+            }
+        }
+    }
+
+    /**
+     * Frees the native memory held by the deflaters.
+     */
+    private void endDeflaters() {
+        synchronized (freeDeflaters) {
+            deflatersEnded = true;
+            for (final Deflater deflater : freeDeflaters) {
+                deflater.end();
+            }
+            freeDeflaters.clear();
+        }
+    }
+
+    private void start() {
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "marc4j-gzip");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Waits for the oldest block in progress and writes it out.
+     */
+    private void writeNext() throws IOException {
+        final Future<byte[]> head = pending.poll();
+        try {
+            out.write(head.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compressing");
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Compresses a block of data into a complete gzip member.
+     */
+    private static byte[] compress(final byte[] data, final int length, final Deflater deflater) {
+        final ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        member.write(HEADER, 0, HEADER.length);
+
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        final byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            member.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(member, (int) crc.getValue());
+        writeInt(member, length);
+        return member.toByteArray();
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+}
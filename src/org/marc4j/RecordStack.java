@@ -19,9 +19,13 @@
  *
  */
 
+
 package org.marc4j;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.marc4j.marc.Record;
@@ -29,115 +33,190 @@ import org.marc4j.marc.Record;
 /**
  * Provides <code>push</code> and <code>pop</code> operations for
  * <code>Record</code> objects created by <code>MarcXmlParser</code>.
- * 
+ * <p>
+ * The producer collects the records it pushes into batches, and hands a batch
+ * over once it is full or the input has ended. The consumer takes a whole
+ * batch at a time, so the two threads only wait for each other at batch
+ * boundaries, and the producer can work ahead while the consumer handles
+ * earlier records. At most a fixed number of full batches are waiting at any
+ * time, after that <code>push</code> blocks until the consumer catches up.
+ * </p>
+ * <p>
+ * An exception passed with {@link #passException(RuntimeException)} is thrown
+ * to the consumer after the records pushed before it. A thread interrupted
+ * while waiting gets a {@link MarcException}, with its interrupt status set.
+ * </p>
+ *
  * @author Bas Peters
  */
 public class RecordStack {
 
-    private final List<Record> list;
+    /**
+     * The default number of records handed over at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The default number of full batches that can be waiting.
+     */
+    public static final int DEFAULT_MAX_BATCHES = 4;
+
+    private final int batchSize;
+
+    private final int maxBatches;
+
+    // batches handed over by the producer, guarded by this
+    private final ArrayDeque<List<Record>> batches = new ArrayDeque<List<Record>>();
 
     private RuntimeException re = null;
 
     private boolean eof = false;
 
+    // only used by the producer
+    private List<Record> filling;
+
+    // only used by the consumer
+    private Iterator<Record> draining = Collections.<Record> emptyList().iterator();
+
     /**
-     * Default constuctor.
+     * Creates a queue with the default batch size and number of batches.
      */
     public RecordStack() {
-        list = new ArrayList<Record>();
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES);
     }
 
     /**
-     * Pushes a <code>Record</code> object on the stack.
-     * 
-     * @param record the record object
+     * Creates a queue that hands over the given number of records at a time,
+     * with at most the given number of full batches waiting.
+     *
+     * @param batchSize - the number of records in a batch
+     * @param maxBatches - the number of batches that can be waiting
      */
-    public synchronized void push(final Record record) {
-        while (list.size() > 0) {
-            try {
-                wait();
-            } catch (final Exception e) {
-            }
+    public RecordStack(final int batchSize, final int maxBatches) {
+        if (batchSize < 1 || maxBatches < 1) {
+            throw new IllegalArgumentException("batch size and number of batches must be positive");
         }
-        list.add(record);
-        notifyAll();
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        filling = new ArrayList<Record>(batchSize);
     }
 
     /**
-     * Removes the <code>Record</code> object from the stack and returns that
-     * object.
-     * 
-     * @return Record - the record object
+     * Adds a record to the current batch, and hands the batch over to the
+     * consumer once it is full. Called by the producer.
+     *
+     * @param record - the record to add
      */
-    public synchronized Record pop() {
-        while (list.size() <= 0 && eof != true) {
-            try {
-                wait();
-            } catch (final Exception e) {
-            }
-        }
-        if (re != null) {
-            throw (re);
-        }
-        Record record = null;
-        if (list.size() > 0) {
-            record = list.remove(0);
+    public void push(final Record record) {
+        filling.add(record);
+        if (filling.size() >= batchSize) {
+            handOver();
         }
-        notifyAll();
-        return record;
-
     }
 
     /**
-     * Returns true if there are more <code>Record</code> objects to expect,
-     * false otherwise.
-     * 
-     * @return boolean
+     * Returns the next record, or <code>null</code> if there are no more
+     * records. Called by the consumer.
+     *
+     * @return the next record
      */
-    public synchronized boolean hasNext() {
-        while (list.size() <= 0 && eof != true) {
-            try {
-                wait();
-            } catch (final Exception e) {
-            }
-        }
-        if (re != null) {
-            throw (re);
+    public Record pop() {
+        if (!hasNext()) {
+            return null;
         }
-        if (!isEmpty() || !eof) {
+        return draining.next();
+    }
+
+    /**
+     * Returns true if there are more records, waiting for the producer if
+     * needed. Called by the consumer.
+     *
+     * @return true if there are more records
+     */
+    public boolean hasNext() {
+        if (draining.hasNext()) {
             return true;
         }
-        return false;
+        final List<Record> batch = take();
+        if (batch == null) {
+            return false;
+        }
+        draining = batch.iterator();
+        return true;
     }
 
     /**
-     * Passes the exception to the thread where the MarcXMLReader is running, so
-     * that the next() call that is blocked waiting for this thread, will
-     * receive the exception.
+     * Passes an exception on to the consumer, after the records pushed so far,
+     * and ends the input. Called by the producer.
      *
-     * @param e - a RuntimeException thrown here that needs to be passed to the calling thread
+     * @param e - the exception to throw to the consumer
      */
-    public synchronized void passException(final RuntimeException e) {
-        re = e;
-        eof = true;
-        notifyAll();
+    public void passException(final RuntimeException e) {
+        synchronized (this) {
+            re = e;
+        }
+        end();
     }
 
     /**
-     * Called when the end of the document is reached.
+     * Hands over the records pushed so far and ends the input. Called by the
+     * producer.
      */
-    public synchronized void end() {
-        eof = true;
+    public void end() {
+        synchronized (this) {
+            if (eof) {
+                return;
+            }
+            // the last batch is handed over even if the queue is full, so
+            // that ending the input never blocks
+            if (!filling.isEmpty()) {
+                batches.add(filling);
+                filling = new ArrayList<Record>(0);
+            }
+            eof = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands the current batch over, waiting while the queue is full.
+     */
+    private synchronized void handOver() {
+        while (batches.size() >= maxBatches) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MarcException("interrupted while passing on records", e);
+            }
+        }
+        batches.add(filling);
+        filling = new ArrayList<Record>(batchSize);
         notifyAll();
     }
 
     /**
-     * Returns true if the queue is empty, false otherwise.
-     * 
-     * @return boolean
+     * Takes the next batch, waiting for the producer if needed. Returns
+     * <code>null</code> at the end of the input.
      */
-    private synchronized boolean isEmpty() {
-        return (list.size() == 0);
+    private synchronized List<Record> take() {
+        while (batches.isEmpty() && !eof) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MarcException("interrupted while waiting for a record", e);
+            }
+        }
+        if (!batches.isEmpty()) {
+            final List<Record> batch = batches.poll();
+            notifyAll();
+            return batch;
+        }
+        if (re != null) {
+            throw re;
+        }
+        return null;
     }
 
 }
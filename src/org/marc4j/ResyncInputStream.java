@@ -0,0 +1,136 @@
+package org.marc4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that lets a reader push back bytes it has read too far, and
+ * that keeps track of the offset of the next byte in the stream. The
+ * {@link MarcPermissiveStreamReader} uses it to resynchronise on record
+ * terminators without marking and resetting the underlying stream.
+ */
+class ResyncInputStream extends FilterInputStream {
+
+    private byte[] pushback = new byte[0];
+
+    // the pushed back bytes are pushback[pushbackPos..pushback.length)
+    private int pushbackPos = 0;
+
+    private long position = 0;
+
+    ResyncInputStream(final InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the offset in the stream of the next byte that will be read.
+     *
+     * @return the number of bytes consumed so far
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Pushes back bytes so they are returned by the following reads, before
+     * any bytes that have not been read yet.
+     *
+     * @param b - the buffer holding the bytes
+     * @param off - the position of the bytes in the buffer
+     * @param len - the number of bytes to push back
+     */
+    void unread(final byte[] b, final int off, final int len) {
+        if (len == 0) {
+            return;
+        }
+        final int remaining = pushback.length - pushbackPos;
+        final byte[] newPushback = new byte[len + remaining];
+        System.arraycopy(b, off, newPushback, 0, len);
+        System.arraycopy(pushback, pushbackPos, newPushback, len, remaining);
+        pushback = newPushback;
+        pushbackPos = 0;
+        position -= len;
+    }
+
+    /**
+     * Pushes back a single byte.
+     *
+     * @param b - the byte to push back
+     */
+    void unread(final int b) {
+        if (pushbackPos > 0) {
+            pushback[--pushbackPos] = (byte) b;
+            position--;
+        } else {
+            unread(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b;
+        if (pushbackPos < pushback.length) {
+            b = pushback[pushbackPos++] & 0xFF;
+        } else {
+            b = in.read();
+        }
+        if (b != -1) {
+            position++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final int n;
+        if (pushbackPos < pushback.length) {
+            n = Math.min(len, pushback.length - pushbackPos);
+            System.arraycopy(pushback, pushbackPos, b, off, n);
+            pushbackPos += n;
+        } else {
+            n = in.read(b, off, len);
+        }
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0;
+        if (pushbackPos < pushback.length) {
+            skipped = Math.min(n, pushback.length - pushbackPos);
+            pushbackPos += (int) skipped;
+        }
+        if (skipped < n) {
+            skipped += in.skip(n - skipped);
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pushback.length - pushbackPos + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+}
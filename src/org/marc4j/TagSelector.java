@@ -0,0 +1,146 @@
+package org.marc4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the fields of a record by their tag. Binary MARC readers that are
+ * given a selector only decode the fields it selects, the other fields are
+ * skipped over using the lengths in the directory without being decoded, so
+ * the records returned only hold the selected fields.
+ * <p>
+ * A selector is specified either as a list of tags separated by colons, such
+ * as <code>001:020:035:245</code>, or as a regular expression that must match
+ * the whole tag, such as <code>00[1-8]|245|6..</code>. The leader is always
+ * kept.
+ * </p>
+ */
+public final class TagSelector {
+
+    private final String spec;
+
+    // whether each numeric tag, 000 to 999, is selected
+    private final boolean[] numericTags = new boolean[1000];
+
+    private final Set<String> otherTags;
+
+    private final Pattern pattern;
+
+    /**
+     * Creates a selector for the supplied tags.
+     *
+     * @param tags - the tags of the fields to select
+     */
+    public TagSelector(final Collection<String> tags) {
+        final StringBuilder sb = new StringBuilder();
+        otherTags = new HashSet<String>();
+        pattern = null;
+        for (final String tag : tags) {
+            final int numeric = numericValue(tag);
+            if (numeric >= 0) {
+                numericTags[numeric] = true;
+            } else {
+                otherTags.add(tag);
+            }
+            sb.append(sb.length() > 0 ? ":" : "").append(tag);
+        }
+        spec = sb.toString();
+    }
+
+    /**
+     * Creates a selector for the tags that match the supplied pattern.
+     *
+     * @param pattern - the pattern the tags of the fields to select must match
+     */
+    public TagSelector(final Pattern pattern) {
+        this.pattern = pattern;
+        this.otherTags = null;
+        this.spec = pattern.pattern();
+        for (int i = 0; i < numericTags.length; i++) {
+            numericTags[i] = pattern.matcher(String.format("%03d", i)).matches();
+        }
+    }
+
+    /**
+     * Parses a selector specification, either a list of tags separated by
+     * colons or a regular expression. Returns <code>null</code> for a null or
+     * empty specification, meaning all fields are kept.
+     *
+     * @param spec - the selector specification
+     * @return the selector, or null to select every field
+     */
+    public static TagSelector parse(final String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        final String trimmed = spec.trim();
+        if (trimmed.matches("[0-9A-Za-z]{3}(:[0-9A-Za-z]{3})*")) {
+            final Set<String> tags = new HashSet<String>();
+            for (final String tag : trimmed.split(":")) {
+                tags.add(tag);
+            }
+            return new TagSelector(tags);
+        }
+        return new TagSelector(Pattern.compile(trimmed));
+    }
+
+    /**
+     * Returns true if fields with the supplied tag are selected.
+     *
+     * @param tag - the tag of the field
+     * @return true if the field should be kept
+     */
+    public boolean selects(final String tag) {
+        final int numeric = numericValue(tag);
+        if (numeric >= 0) {
+            return numericTags[numeric];
+        }
+        return pattern != null ? pattern.matcher(tag).matches() : otherTags.contains(tag);
+    }
+
+    /**
+     * Returns true if fields with the three byte tag stored in the buffer at
+     * the supplied offset are selected. Numeric tags are looked up without
+     * creating a String.
+     *
+     * @param buf - the buffer holding the tag, usually a record directory
+     * @param offset - the position of the tag in the buffer
+     * @return true if the field should be kept
+     */
+    public boolean selects(final byte[] buf, final int offset) {
+        final int d0 = buf[offset] - '0';
+        final int d1 = buf[offset + 1] - '0';
+        final int d2 = buf[offset + 2] - '0';
+        if (d0 >= 0 && d0 <= 9 && d1 >= 0 && d1 <= 9 && d2 >= 0 && d2 <= 9) {
+            return numericTags[d0 * 100 + d1 * 10 + d2];
+        }
+        return selects(new String(buf, offset, 3, StandardCharsets.ISO_8859_1));
+    }
+
+    private static int numericValue(final String tag) {
+        if (tag.length() != 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 3; i++) {
+            final char c = tag.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Returns the specification of this selector.
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+}
@@ -0,0 +1,174 @@
+package org.marc4j;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * A shared cache of compiled XSLT stylesheets.
+ * <p>
+ * Compiling a stylesheet like the MARC to MODS stylesheet of The Library of
+ * Congress takes far longer than transforming a record with it, so the
+ * writers and readers that take a stylesheet location get the compiled
+ * {@link Templates} from this cache. Stylesheets are cached by their URI. A
+ * stylesheet in a local file is compiled again when the file's modification
+ * time changes; other stylesheets stay cached until {@link #clear()} is
+ * called.
+ * </p>
+ * <p>
+ * The cache can be used from several threads at once. A
+ * <code>Templates</code> object is thread-safe, but the
+ * <code>Transformer</code> objects it creates are not, so every thread needs
+ * its own:
+ * </p>
+ *
+ * <pre>
+ * Templates templates = TemplatesCache.getTemplates(&quot;http://www.loc.gov/standards/mods/v3/MARC21slim2MODS3.xsl&quot;);
+ * // on each worker thread
+ * MarcXmlWriter writer = new MarcXmlWriter(new StreamResult(out), templates);
+ * </pre>
+ */
+public class TemplatesCache {
+
+    private static final TransformerFactory FACTORY = TransformerFactory.newInstance();
+
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+
+    private TemplatesCache() {
+    }
+
+    /**
+     * Returns the compiled stylesheet at the supplied location, which is a URI
+     * or a file name.
+     *
+     * @param stylesheetUrl - the location of the stylesheet
+     * @return the compiled stylesheet
+     * @throws MarcException - if the stylesheet can not be compiled
+     */
+    public static Templates getTemplates(final String stylesheetUrl) {
+        final String uri = toUri(stylesheetUrl);
+        final long timestamp = getTimestamp(uri);
+        Entry entry = CACHE.get(uri);
+
+        if (entry == null || entry.timestamp != timestamp) {
+            synchronized (CACHE) {
+                entry = CACHE.get(uri);
+
+                if (entry == null || entry.timestamp != timestamp) {
+                    entry = new Entry(compile(new StreamSource(uri)), timestamp);
+                    CACHE.put(uri, entry);
+                }
+            }
+        }
+
+        return entry.templates;
+    }
+
+    /**
+     * Returns the compiled form of the supplied stylesheet. A stream source
+     * that only has a system id is looked up in the cache by that id, any
+     * other source is compiled every time.
+     *
+     * @param stylesheet - the stylesheet
+     * @return the compiled stylesheet
+     * @throws MarcException - if the stylesheet can not be compiled
+     */
+    public static Templates getTemplates(final Source stylesheet) {
+        if (isCacheable(stylesheet)) {
+            return getTemplates(stylesheet.getSystemId());
+        }
+
+        synchronized (CACHE) {
+            return compile(stylesheet);
+        }
+    }
+
+    /**
+     * Removes all compiled stylesheets from the cache.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * Returns true if the supplied source is read from its system id alone,
+     * so the stylesheet it holds is known by that id.
+     */
+    private static boolean isCacheable(final Source stylesheet) {
+        if (!(stylesheet instanceof StreamSource) || stylesheet.getSystemId() == null) {
+            return false;
+        }
+
+        final StreamSource source = (StreamSource) stylesheet;
+        return source.getInputStream() == null && source.getReader() == null;
+    }
+
+    /**
+     * Compiles the stylesheet. Callers synchronize on the cache, since a
+     * transformer factory is not thread-safe.
+     */
+    private static Templates compile(final Source stylesheet) {
+        try {
+            return FACTORY.newTemplates(stylesheet);
+        } catch (final TransformerConfigurationException e) {
+            throw new MarcException("Error compiling stylesheet " + stylesheet.getSystemId(), e);
+        }
+    }
+
+    /**
+     * Returns the supplied location as an absolute URI, taking locations
+     * without a scheme to be file names.
+     */
+    private static String toUri(final String location) {
+        try {
+            final URI uri = new URI(location);
+
+            // a single letter is a Windows drive rather than a scheme
+            if (uri.isAbsolute() && uri.getScheme().length() > 1) {
+                return location;
+            }
+        } catch (final URISyntaxException e) {
+            // a file name that isn't a valid URI
+        }
+
+        return new File(location).getAbsoluteFile().toURI().toString();
+    }
+
+    /**
+     * Returns the modification time of a stylesheet in a local file, or 0 for
+     * stylesheets that are elsewhere.
+     */
+    private static long getTimestamp(final String uri) {
+        if (!uri.startsWith("file:")) {
+            return 0;
+        }
+
+        try {
+            return new File(new URI(uri)).lastModified();
+        } catch (final URISyntaxException e) {
+            return 0;
+        } catch (final IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private static class Entry {
+
+        private final Templates templates;
+
+        private final long timestamp;
+
+        private Entry(final Templates templates, final long timestamp) {
+            this.templates = templates;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -48,9 +48,23 @@ public abstract class CharConverter {
      * @return String the conversion result
      */
     final public String convert(final byte[] dataElement) {
-        final char cData[] = new char[dataElement.length];
-        for (int i = 0; i < dataElement.length; i++) {
-            final byte b = dataElement[i];
+        return convert(dataElement, 0, dataElement.length);
+    }
+
+    /**
+     * Alternate method for performing a character conversion on a range of a
+     * byte array. Converts the bytes to characters, and calls the above convert
+     * method which must be implemented in the subclass.
+     * 
+     * @param data the buffer holding the data to convert
+     * @param offset the position of the first byte to convert
+     * @param length the number of bytes to convert
+     * @return String the conversion result
+     */
+    final public String convert(final byte[] data, final int offset, final int length) {
+        final char cData[] = new char[length];
+        for (int i = 0; i < length; i++) {
+            final byte b = data[offset + i];
             cData[i] = (char) (b >= 0 ? b : 256 + b);
         }
         return convert(cData);
@@ -0,0 +1,49 @@
+package org.marc4j.marc.impl;
+
+/**
+ * A control field of a {@link LazyRecordImpl} whose data is decoded on first
+ * access.
+ */
+class LazyControlFieldImpl extends ControlFieldImpl {
+
+    /**
+     * A <code>serialVersionUID</code> for the class.
+     */
+    private static final long serialVersionUID = -3425307624744542561L;
+
+    private transient LazyRecordImpl record;
+
+    private transient int offset;
+
+    private transient int length;
+
+    LazyControlFieldImpl(final String tag, final LazyRecordImpl record, final int offset, final int length) {
+        super(tag);
+        this.record = record;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public void setData(final String data) {
+        record = null;
+        super.setData(data);
+    }
+
+    @Override
+    public String getData() {
+        if (record != null) {
+            setData(record.decodeData(offset, length));
+        }
+        return super.getData();
+    }
+
+    /**
+     * Decodes the data before the field is serialized.
+     */
+    private Object writeReplace() {
+        getData();
+        return this;
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.marc4j.marc.impl;
+
+import java.util.List;
+
+import org.marc4j.marc.Subfield;
+
+/**
+ * A data field of a {@link LazyRecordImpl} whose subfields are decoded on
+ * first access.
+ */
+class LazyDataFieldImpl extends DataFieldImpl {
+
+    /**
+     * A <code>serialVersionUID</code> for the class.
+     */
+    private static final long serialVersionUID = 6236394460328520768L;
+
+    private transient LazyRecordImpl record;
+
+    private transient int offset;
+
+    private transient int length;
+
+    // true while the subfields are being added by the decoder
+    private transient boolean decoding = false;
+
+    LazyDataFieldImpl(final String tag, final char ind1, final char ind2, final LazyRecordImpl record,
+            final int offset, final int length) {
+        super(tag, ind1, ind2);
+        this.record = record;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Decodes the subfields if that has not been done yet. When decoding
+     * fails the field is left undecoded, so the error is reported again on
+     * the next access.
+     */
+    private void decode() {
+        if (record != null && !decoding) {
+            decoding = true;
+            try {
+                record.decodeSubfields(this, offset, length);
+                record = null;
+            } catch (final RuntimeException e) {
+                // drop the subfields decoded before the error
+                super.getSubfields().clear();
+                throw e;
+            } finally {
+                decoding = false;
+            }
+        }
+    }
+
+    @Override
+    public void addSubfield(final Subfield subfield) {
+        decode();
+        super.addSubfield(subfield);
+    }
+
+    @Override
+    public void addSubfield(final int index, final Subfield subfield) {
+        decode();
+        super.addSubfield(index, subfield);
+    }
+
+    @Override
+    public void removeSubfield(final Subfield subfield) {
+        decode();
+        super.removeSubfield(subfield);
+    }
+
+    @Override
+    public List<Subfield> getSubfields() {
+        decode();
+        return super.getSubfields();
+    }
+
+    @Override
+    public List<Subfield> getSubfields(final char code) {
+        decode();
+        return super.getSubfields(code);
+    }
+
+    @Override
+    public Subfield getSubfield(final char code) {
+        decode();
+        return super.getSubfield(code);
+    }
+
+    @Override
+    public boolean find(final String pattern) {
+        decode();
+        return super.find(pattern);
+    }
+
+    @Override
+    public String toString() {
+        decode();
+        return super.toString();
+    }
+
+    /**
+     * Decodes the subfields before the field is serialized.
+     */
+    private Object writeReplace() {
+        decode();
+        return this;
+    }
+
+}
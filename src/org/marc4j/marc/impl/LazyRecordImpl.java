@@ -0,0 +1,116 @@
+package org.marc4j.marc.impl;
+
+import java.io.IOException;
+
+import org.marc4j.MarcBinaryParser;
+import org.marc4j.MarcException;
+import org.marc4j.marc.DataField;
+
+/**
+ * Represents a MARC record that is decoded on demand.
+ * <p>
+ * The record keeps the raw ISO 2709 bytes it was parsed from. Its fields are
+ * created from the directory when the record is parsed, but the field data is
+ * only decoded, and run through the character conversion, when a field's data
+ * or subfields are first accessed. Jobs that only look at a few fields of
+ * every record therefore skip the conversion of all the other fields.
+ * </p>
+ * <p>
+ * Since the data is decoded on demand, errors in the structure of a data field
+ * are reported when the field is accessed rather than when the record is read.
+ * Records are created by a {@link MarcBinaryParser} with lazy decoding enabled.
+ * </p>
+ * <p>
+ * Fields are decoded through the parser that created the record, which keeps
+ * its MARC-8 converter behind a lock, so a record may be handed to another
+ * thread while the reader goes on with later records. Like the other record
+ * implementations, a single record must not be used by several threads at the
+ * same time.
+ * </p>
+ */
+public class LazyRecordImpl extends RecordImpl {
+
+    /**
+     * A <code>serialVersionUID</code> for the class.
+     */
+    private static final long serialVersionUID = 2883046529128573513L;
+
+    private transient byte[] data;
+
+    private transient String encoding;
+
+    private transient MarcBinaryParser parser;
+
+    /**
+     * Creates a new record backed by the supplied raw record.
+     *
+     * @param data - the raw ISO 2709 record, leader included
+     * @param encoding - the encoding of the field data
+     * @param parser - the parser used to decode the field data
+     */
+    public LazyRecordImpl(final byte[] data, final String encoding, final MarcBinaryParser parser) {
+        this.data = data;
+        this.encoding = encoding;
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the raw ISO 2709 record this record was parsed from. Changes
+     * made to the record are not reflected in the raw record.
+     *
+     * @return the raw record
+     */
+    public byte[] getRawData() {
+        return data;
+    }
+
+    /**
+     * Returns the encoding of the raw field data.
+     *
+     * @return the encoding of the field data
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Adds a control field whose data is decoded on first access.
+     *
+     * @param tag - the tag of the field
+     * @param offset - the position of the field data in the raw record
+     * @param length - the length of the field data, without the field
+     *        terminator
+     */
+    public void addLazyControlField(final String tag, final int offset, final int length) {
+        addVariableField(new LazyControlFieldImpl(tag, this, offset, length));
+    }
+
+    /**
+     * Adds a data field whose subfields are decoded on first access. The
+     * indicators are read straight away.
+     *
+     * @param tag - the tag of the field
+     * @param offset - the position of the first indicator in the raw record
+     * @param length - the length of the field, field terminator included
+     */
+    public void addLazyDataField(final String tag, final int offset, final int length) {
+        final char ind1 = length > 0 ? (char) (data[offset] & 0xFF) : (char) -1;
+        final char ind2 = length > 1 ? (char) (data[offset + 1] & 0xFF) : (char) -1;
+        final int start = Math.min(length, 2);
+        addVariableField(new LazyDataFieldImpl(tag, ind1, ind2, this, offset + start, length - start));
+    }
+
+    String decodeData(final int offset, final int length) {
+        return parser.getDataAsString(data, offset, length, encoding);
+    }
+
+    void decodeSubfields(final DataField field, final int offset, final int length) {
+        try {
+            parser.parseSubfields(field, data, offset, length, encoding);
+        } catch (final IOException e) {
+            throw new MarcException("error parsing data field for tag: " + field.getTag() + " with data: " +
+                    new String(data, offset, length), e);
+        }
+    }
+
+}
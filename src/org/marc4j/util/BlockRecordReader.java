@@ -0,0 +1,391 @@
+package org.marc4j.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Fetches records by their record id from a block compressed file of binary
+ * MARC records, written by a {@link BlockRecordWriter}.
+ * <p>
+ * A block compressed file is a series of gzip members, each holding a block
+ * of whole records, so gunzip and the
+ * {@link org.marc4j.MarcReaderFactory} read it as a plain file of binary
+ * records. The header of every member has an extra field with the subfield
+ * id <code>MB</code>, holding the total size of the member as a four byte
+ * little endian number, so the blocks can be found without decompressing
+ * them. A block holds at most {@link BlockRecordWriter#BLOCK_SIZE} bytes of
+ * records, unless a single record, or a run of consecutive records with the
+ * same id, is larger than that. Such a run is never split over two blocks.
+ * The file ends with an empty block.
+ * </p>
+ * <p>
+ * A record is located by a virtual offset, which holds the offset of its
+ * block in the file in the upper 48 bits and the offset of the record in the
+ * uncompressed data of the block in the lower 16 bits. The sidecar
+ * {@link RawRecordIndex} of the file maps record ids to virtual offsets, so a
+ * record is fetched by reading and decompressing a single block.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * BlockRecordReader reader = new BlockRecordReader(new File(&quot;file.mrc.gz&quot;));
+ * RawRecord record = reader.getRawRecord(&quot;u12345&quot;);
+ * if (record != null) {
+ *     Record marc = record.getAsRecord(true, false, &quot;999&quot;, &quot;MARC8&quot;);
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class BlockRecordReader {
+
+    static final int HEADER_SIZE = 12;
+
+    static final int EXTRA_SIZE = 8;
+
+    private final File marcFile;
+
+    private final RawRecordIndex index;
+
+    private FileChannel channel;
+
+    // the last block read, as records are often fetched from the same block
+    private long cachedOffset = -1;
+
+    private byte[] cachedBlock = null;
+
+    /**
+     * Creates a reader for the supplied file, using its sidecar index. The
+     * index is built and written next to the file when it is missing or no
+     * longer matches the file.
+     *
+     * @param marcFile - the block compressed file of binary MARC records
+     * @throws IOException if the file or its index can not be read
+     */
+    public BlockRecordReader(final File marcFile) throws IOException {
+        this(marcFile, loadIndex(marcFile));
+    }
+
+    /**
+     * Creates a reader for the supplied file, using the supplied index.
+     *
+     * @param marcFile - the block compressed file of binary MARC records
+     * @param index - the index of the records in the file
+     * @throws IOException if the file can not be opened
+     */
+    public BlockRecordReader(final File marcFile, final RawRecordIndex index) throws IOException {
+        this.marcFile = marcFile;
+        this.index = index;
+        channel = new RandomAccessFile(marcFile, "r").getChannel();
+    }
+
+    /**
+     * Returns the sidecar index of the supplied file, building it first if it
+     * is missing, stale or can not be read.
+     *
+     * @param marcFile - the block compressed file of binary MARC records
+     * @return the index of the records in the file
+     * @throws IOException if the file or its index can not be read
+     */
+    public static RawRecordIndex loadIndex(final File marcFile) throws IOException {
+        final File indexFile = RawRecordIndex.getIndexFile(marcFile);
+        if (indexFile.exists()) {
+            try {
+                final RawRecordIndex index = RawRecordIndex.read(indexFile);
+                if (index.isCurrent(marcFile)) {
+                    return index;
+                }
+            } catch (final IOException e) {
+                // an unreadable index is rebuilt just like a stale one
+            }
+        }
+        final RawRecordIndex index = buildIndex(marcFile);
+        try {
+            index.write(indexFile);
+        } catch (final IOException e) {
+            // the index can still be used, it just won't be kept for next time
+        }
+        return index;
+    }
+
+    /**
+     * Scans the supplied block compressed file and builds an index of its
+     * records. Consecutive records with the same id are indexed as one entry,
+     * as they are always written to the same block.
+     *
+     * @param marcFile - the block compressed file of binary MARC records
+     * @return the index of the records in the file
+     * @throws IOException if the file can not be read
+     */
+    public static RawRecordIndex buildIndex(final File marcFile) throws IOException {
+        final long fileSize = marcFile.length();
+        final long fileModified = marcFile.lastModified();
+        final List<RawRecordIndex.Entry> entries = new ArrayList<RawRecordIndex.Entry>();
+
+        final RandomAccessFile file = new RandomAccessFile(marcFile, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            long blockOffset = 0;
+            while (blockOffset < fileSize) {
+                final byte[] block = readBlock(channel, blockOffset);
+                final byte[] data = inflateBlock(block);
+                final RawRecordReader reader = new RawRecordReader(new ByteArrayInputStream(data));
+                int offset = 0;
+
+                while (reader.hasNext()) {
+                    final RawRecord record = reader.next();
+                    final int length = record.getRecordBytes().length;
+                    if (record.getRecordId() != null) {
+                        entries.add(new RawRecordIndex.Entry(record.getRecordId(),
+                                getVirtualOffset(blockOffset, offset), length));
+                    }
+                    offset += length;
+                }
+                blockOffset += block.length;
+            }
+        } finally {
+            file.close();
+        }
+        return RawRecordIndex.build(entries, fileSize, fileModified);
+    }
+
+    /**
+     * Returns the index used by this reader.
+     *
+     * @return the index of the records in the file
+     */
+    public RawRecordIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the record with the supplied id, or <code>null</code> if the
+     * file holds no such record.
+     *
+     * @param id - the id of the record to fetch
+     * @return the record
+     * @throws IOException if the record can not be read
+     */
+    public RawRecord getRawRecord(final String id) throws IOException {
+        final long offset = index.getOffset(id);
+        if (offset < 0) {
+            return null;
+        }
+        return getRawRecord(offset, index.getLength(id));
+    }
+
+    /**
+     * Returns all the records with the supplied id, in the order they occur
+     * in the file.
+     *
+     * @param id - the id of the records to fetch
+     * @return the records, empty if there are none
+     * @throws IOException if the records can not be read
+     */
+    public List<RawRecord> getRawRecords(final String id) throws IOException {
+        final List<RawRecord> records = new ArrayList<RawRecord>();
+        for (final long[] location : index.getLocations(id)) {
+            records.add(getRawRecord(location[0], (int) location[1]));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the record stored at the supplied virtual offset.
+     *
+     * @param virtualOffset - the virtual offset of the record
+     * @param length - the length in bytes of the record
+     * @return the record
+     * @throws IOException if the record can not be read
+     */
+    public RawRecord getRawRecord(final long virtualOffset, final int length) throws IOException {
+        if (channel == null) {
+            throw new IOException("reader has been closed: " + marcFile);
+        }
+        final long blockOffset = getBlockOffset(virtualOffset);
+        if (blockOffset != cachedOffset) {
+            cachedBlock = inflateBlock(readBlock(channel, blockOffset));
+            cachedOffset = blockOffset;
+        }
+        final int offset = getOffsetInBlock(virtualOffset);
+        if (offset + length > cachedBlock.length) {
+            throw new EOFException("index is out of date for " + marcFile);
+        }
+        final byte[] recordBytes = new byte[length];
+        System.arraycopy(cachedBlock, offset, recordBytes, 0, length);
+        return new RawRecord(recordBytes);
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            cachedBlock = null;
+        }
+    }
+
+    /**
+     * Returns the virtual offset of a record.
+     *
+     * @param blockOffset - the offset of the block in the file
+     * @param offsetInBlock - the offset of the record in the uncompressed block
+     * @return the virtual offset
+     */
+    public static long getVirtualOffset(final long blockOffset, final int offsetInBlock) {
+        return blockOffset << 16 | offsetInBlock;
+    }
+
+    /**
+     * Returns the offset in the file of the block a virtual offset points to.
+     *
+     * @param virtualOffset - the virtual offset of a record
+     * @return the offset of the block
+     */
+    public static long getBlockOffset(final long virtualOffset) {
+        return virtualOffset >>> 16;
+    }
+
+    /**
+     * Returns the offset in the uncompressed block a virtual offset points to.
+     *
+     * @param virtualOffset - the virtual offset of a record
+     * @return the offset of the record in the block
+     */
+    public static int getOffsetInBlock(final long virtualOffset) {
+        return (int) (virtualOffset & 0xFFFF);
+    }
+
+    /**
+     * Reads the next block, as it is stored in the file, from the supplied
+     * stream.
+     *
+     * @param input - the stream to read from
+     * @return the compressed block, or <code>null</code> at the end of the stream
+     * @throws IOException if the block can not be read
+     */
+    public static byte[] readBlock(final InputStream input) throws IOException {
+        final byte[] header = new byte[HEADER_SIZE + EXTRA_SIZE];
+        int read = 0;
+        while (read < header.length) {
+            final int count = input.read(header, read, header.length - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return null;
+                }
+                throw new EOFException("truncated block header");
+            }
+            read += count;
+        }
+        final byte[] block = new byte[getBlockSize(header)];
+        System.arraycopy(header, 0, block, 0, header.length);
+        while (read < block.length) {
+            final int count = input.read(block, read, block.length - read);
+            if (count < 0) {
+                throw new EOFException("truncated block");
+            }
+            read += count;
+        }
+        return block;
+    }
+
+    /**
+     * Reads the block stored at the supplied offset in the file.
+     */
+    private static byte[] readBlock(final FileChannel channel, final long blockOffset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + EXTRA_SIZE);
+        readFully(channel, header, blockOffset);
+        final ByteBuffer block = ByteBuffer.allocate(getBlockSize(header.array()));
+        readFully(channel, block, blockOffset);
+        return block.array();
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long offset)
+            throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("truncated block at offset " + offset);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Returns the total size of a block from its header.
+     */
+    private static int getBlockSize(final byte[] header) throws IOException {
+        if ((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || (header[3] & 0x04) == 0 ||
+                getShort(header, 10) != EXTRA_SIZE || header[12] != 'M' || header[13] != 'B' ||
+                getShort(header, 14) != 4) {
+            throw new IOException("not a block of a block compressed MARC file");
+        }
+        final int size = getInt(header, 16);
+        if (size < HEADER_SIZE + EXTRA_SIZE + 8) {
+            throw new IOException("invalid block size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Decompresses a block, as returned by {@link #readBlock(InputStream)}.
+     *
+     * @param block - the compressed block
+     * @return the records held in the block
+     * @throws IOException if the block is corrupt
+     */
+    public static byte[] inflateBlock(final byte[] block) throws IOException {
+        final int start = HEADER_SIZE + EXTRA_SIZE;
+        final int crc = getInt(block, block.length - 8);
+        final byte[] data = new byte[getInt(block, block.length - 4)];
+
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, start, block.length - start - 8);
+            int length = 0;
+            while (length < data.length) {
+                final int count = inflater.inflate(data, length, data.length - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("block is shorter than its stated size");
+                }
+                length += count;
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("corrupt block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        final CRC32 check = new CRC32();
+        check.update(data, 0, data.length);
+        if ((int) check.getValue() != crc) {
+            throw new IOException("checksum of block does not match");
+        }
+        return data;
+    }
+
+    private static int getShort(final byte[] buf, final int offset) {
+        return buf[offset] & 0xFF | (buf[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt(final byte[] buf, final int offset) {
+        return getShort(buf, offset) | getShort(buf, offset + 2) << 16;
+    }
+
+}
@@ -0,0 +1,278 @@
+package org.marc4j.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.marc4j.MarcBinaryEncoder;
+import org.marc4j.MarcException;
+import org.marc4j.MarcWriter;
+import org.marc4j.converter.CharConverter;
+import org.marc4j.marc.Record;
+
+/**
+ * Writes binary MARC records to a block compressed file, along with a
+ * sidecar index of their record ids. The format of the file is described
+ * with {@link BlockRecordReader}, which fetches records from it by id.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * BlockRecordWriter writer = new BlockRecordWriter(new File(&quot;file.mrc.gz&quot;));
+ * RawRecordReader reader = new RawRecordReader(new FileInputStream(&quot;file.mrc&quot;));
+ * while (reader.hasNext()) {
+ *     writer.writeRaw(reader.next().getRecordBytes());
+ * }
+ * writer.close();
+ * </pre>
+ */
+public class BlockRecordWriter implements MarcWriter {
+
+    /**
+     * The number of bytes of records a block holds at most, unless it holds a
+     * single larger record or a larger run of records with the same id.
+     */
+    public static final int BLOCK_SIZE = 65536;
+
+    private final File marcFile;
+
+    private OutputStream out;
+
+    private final MarcBinaryEncoder encoder;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    private int blockLength = 0;
+
+    private byte[] compressed = new byte[BLOCK_SIZE];
+
+    private long blockOffset = 0;
+
+    private boolean writeIndex = true;
+
+    private final List<RawRecordIndex.Entry> entries = new ArrayList<RawRecordIndex.Entry>();
+
+    // the index entry of the last record written to the current block
+    private RawRecordIndex.Entry lastEntry = null;
+
+    /**
+     * Constructs an instance that writes to the supplied file, encoding
+     * <code>Record</code> objects in ISO 8859-1.
+     *
+     * @param marcFile - the file to write to
+     * @throws IOException if the file can not be opened
+     */
+    public BlockRecordWriter(final File marcFile) throws IOException {
+        this(marcFile, "ISO8859_1", Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs an instance that writes to the supplied file, encoding
+     * <code>Record</code> objects in the supplied character encoding and
+     * compressing at the given level.
+     *
+     * @param marcFile - the file to write to
+     * @param encoding - the encoding to use when writing out the records
+     * @param level - the compression level, from 0 to 9, or -1 for the default
+     * @throws IOException if the file can not be opened
+     */
+    public BlockRecordWriter(final File marcFile, final String encoding, final int level) throws IOException {
+        this.marcFile = marcFile;
+        out = new BufferedOutputStream(new FileOutputStream(marcFile), 4 * BLOCK_SIZE);
+        encoder = new MarcBinaryEncoder(encoding, false);
+        deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Returns the character converter.
+     *
+     * @return the character converter
+     */
+    @Override
+    public CharConverter getConverter() {
+        return encoder.getConverter();
+    }
+
+    /**
+     * Sets the character converter used for <code>Record</code> objects.
+     *
+     * @param converter - the character converter
+     */
+    @Override
+    public void setConverter(final CharConverter converter) {
+        encoder.setConverter(converter);
+    }
+
+    /**
+     * Sets whether the sidecar index is written when the writer is closed.
+     * The default is true.
+     *
+     * @param writeIndex - false to leave out the index
+     */
+    public void setWriteIndex(final boolean writeIndex) {
+        this.writeIndex = writeIndex;
+    }
+
+    /**
+     * Writes a <code>Record</code> object to the writer.
+     *
+     * @param record - the <code>Record</code> object
+     */
+    @Override
+    public void write(final Record record) {
+        encoder.encode(record);
+        writeRaw(encoder.getBuffer(), encoder.getLength());
+    }
+
+    /**
+     * Writes a record that is already in ISO 2709 format, such as the bytes
+     * of a {@link RawRecord}. Consecutive records with the same id are kept
+     * in the same block, so they are fetched together by
+     * {@link BlockRecordReader#getRawRecord(String)}.
+     *
+     * @param recordBytes - the bytes of the record
+     */
+    public void writeRaw(final byte[] recordBytes) {
+        writeRaw(recordBytes, recordBytes.length);
+    }
+
+    private void writeRaw(final byte[] recordBytes, final int length) {
+        if (out == null) {
+            throw new MarcException("writer has been closed");
+        }
+        try {
+            final String id = new RawRecord(recordBytes).getRecordId();
+            final boolean sameId = id != null && lastEntry != null && id.equals(lastEntry.id);
+            // a block is only ended between records with different ids
+            if (!sameId && blockLength > 0 && blockLength + length > BLOCK_SIZE) {
+                writeBlock();
+            }
+            addEntry(id, length);
+            if (block.length < blockLength + length) {
+                block = Arrays.copyOf(block, Math.max(blockLength + length, 2 * block.length));
+            }
+            System.arraycopy(recordBytes, 0, block, blockLength, length);
+            blockLength += length;
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured while writing record", e);
+        }
+    }
+
+    /**
+     * Adds the index entry of a record, merging it with the record before it
+     * if that has the same id, just like {@link RawRecordReader} does.
+     */
+    private void addEntry(final String id, final int length) {
+        if (id == null) {
+            lastEntry = null;
+        } else if (lastEntry != null && id.equals(lastEntry.id)) {
+            lastEntry.length += length;
+        } else {
+            lastEntry = new RawRecordIndex.Entry(id, BlockRecordReader.getVirtualOffset(blockOffset, blockLength),
+                    length);
+            entries.add(lastEntry);
+        }
+    }
+
+    /**
+     * Writes the remaining records, ends the file and writes its index.
+     */
+    @Override
+    public void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (blockLength > 0) {
+                writeBlock();
+            }
+            // the empty block marks the end of the file
+            writeBlock();
+            out.close();
+            out = null;
+            if (writeIndex) {
+                RawRecordIndex.build(entries, marcFile.length(), marcFile.lastModified()).write(RawRecordIndex
+                        .getIndexFile(marcFile));
+            }
+        } catch (final IOException e) {
+            throw new MarcException("IO Error occured on close", e);
+        } finally {
+            deflater.end();
+            out = null;
+        }
+    }
+
+    /**
+     * Compresses the current block into a gzip member and writes it out.
+     */
+    private void writeBlock() throws IOException {
+        final int start = BlockRecordReader.HEADER_SIZE + BlockRecordReader.EXTRA_SIZE;
+        if (compressed.length < blockLength + blockLength / 16 + start + 64) {
+            compressed = new byte[blockLength + blockLength / 16 + start + 64];
+        }
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        int length = start;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                final byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, length);
+                compressed = larger;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        crc.reset();
+        crc.update(block, 0, blockLength);
+
+        // the header, with the total size of the member in its extra field
+        final int size = length + 8;
+        compressed[0] = 0x1f;
+        compressed[1] = (byte) 0x8b;
+        compressed[2] = Deflater.DEFLATED;
+        compressed[3] = 0x04;
+        putInt(compressed, 4, 0);
+        compressed[8] = 0;
+        compressed[9] = (byte) 0xff;
+        putShort(compressed, 10, BlockRecordReader.EXTRA_SIZE);
+        compressed[12] = 'M';
+        compressed[13] = 'B';
+        putShort(compressed, 14, 4);
+        putInt(compressed, 16, size);
+
+        out.write(compressed, 0, length);
+        final byte[] trailer = new byte[8];
+        putInt(trailer, 0, (int) crc.getValue());
+        putInt(trailer, 4, blockLength);
+        out.write(trailer);
+
+        blockOffset += size;
+        blockLength = 0;
+        lastEntry = null;
+        if (block.length > BLOCK_SIZE) {
+            block = new byte[BLOCK_SIZE];
+        }
+    }
+
+    private static void putShort(final byte[] buf, final int offset, final int value) {
+        buf[offset] = (byte) value;
+        buf[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(final byte[] buf, final int offset, final int value) {
+        putShort(buf, offset, value);
+        putShort(buf, offset + 2, value >>> 16);
+    }
+
+}
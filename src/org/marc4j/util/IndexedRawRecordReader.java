@@ -0,0 +1,176 @@
+package org.marc4j.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches records from a file of binary MARC records by their record id,
+ * using a {@link RawRecordIndex} to seek directly to each record instead of
+ * scanning the file.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * IndexedRawRecordReader reader = new IndexedRawRecordReader(new File(&quot;file.mrc&quot;));
+ * RawRecord record = reader.getRawRecord(&quot;u12345&quot;);
+ * if (record != null) {
+ *     Record marc = record.getAsRecord(true, false, &quot;999&quot;, &quot;MARC8&quot;);
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class IndexedRawRecordReader {
+
+    private final File marcFile;
+
+    private final RawRecordIndex index;
+
+    private FileChannel channel;
+
+    /**
+     * Creates a reader for the supplied file, using its sidecar index. The
+     * index is built and written next to the file when it is missing or no
+     * longer matches the file.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @throws IOException if the file or its index can not be read
+     */
+    public IndexedRawRecordReader(final File marcFile) throws IOException {
+        this(marcFile, loadIndex(marcFile));
+    }
+
+    /**
+     * Creates a reader for the supplied file, using the supplied index.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @param index - the index of the records in the file
+     * @throws IOException if the file can not be opened
+     */
+    public IndexedRawRecordReader(final File marcFile, final RawRecordIndex index) throws IOException {
+        this.marcFile = marcFile;
+        this.index = index;
+        channel = new RandomAccessFile(marcFile, "r").getChannel();
+    }
+
+    /**
+     * Returns the sidecar index of the supplied file, building it first if it
+     * is missing, stale or can not be read.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @return the index of the records in the file
+     * @throws IOException if the file or its index can not be read
+     */
+    public static RawRecordIndex loadIndex(final File marcFile) throws IOException {
+        final File indexFile = RawRecordIndex.getIndexFile(marcFile);
+        if (indexFile.exists()) {
+            try {
+                final RawRecordIndex index = RawRecordIndex.read(indexFile);
+                if (index.isCurrent(marcFile)) {
+                    return index;
+                }
+            } catch (final IOException e) {
+                // an unreadable index is rebuilt just like a stale one
+            }
+        }
+        final RawRecordIndex index = RawRecordIndex.build(marcFile);
+        try {
+            index.write(indexFile);
+        } catch (final IOException e) {
+            // the index can still be used, it just won't be kept for next time
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index used by this reader.
+     *
+     * @return the index of the records in the file
+     */
+    public RawRecordIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the record with the supplied id, or <code>null</code> if the
+     * file holds no such record.
+     *
+     * @param id - the id of the record to fetch
+     * @return the record
+     * @throws IOException if the record can not be read
+     */
+    public RawRecord getRawRecord(final String id) throws IOException {
+        final long offset = index.getOffset(id);
+        if (offset < 0) {
+            return null;
+        }
+        return getRawRecord(offset, index.getLength(id));
+    }
+
+    /**
+     * Returns all the records with the supplied id, in the order they occur
+     * in the file.
+     *
+     * @param id - the id of the records to fetch
+     * @return the records, empty if there are none
+     * @throws IOException if the records can not be read
+     */
+    public List<RawRecord> getRawRecords(final String id) throws IOException {
+        final List<RawRecord> records = new ArrayList<RawRecord>();
+        for (final long[] location : index.getLocations(id)) {
+            records.add(getRawRecord(location[0], (int) location[1]));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the record stored at the supplied location in the file, as
+     * returned by {@link RawRecordIndex#getLocations(String)}.
+     *
+     * @param offset - the byte offset of the record in the file
+     * @param length - the length in bytes of the record
+     * @return the record
+     * @throws IOException if the record can not be read
+     */
+    public RawRecord getRawRecord(final long offset, final int length) throws IOException {
+        return new RawRecord(readBytes(offset, length));
+    }
+
+    /**
+     * Reads <code>length</code> bytes from the file starting at
+     * <code>offset</code>, in a single positional read.
+     */
+    private byte[] readBytes(final long offset, final int length) throws IOException {
+        if (channel == null) {
+            throw new IOException("reader has been closed: " + marcFile);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("index is out of date for " + marcFile);
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
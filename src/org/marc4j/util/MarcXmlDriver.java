@@ -21,23 +21,34 @@
 package org.marc4j.util;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.Result;
-import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.marc4j.Constants;
 import org.marc4j.MarcStreamReader;
 import org.marc4j.MarcXmlWriter;
+import org.marc4j.TemplatesCache;
 import org.marc4j.converter.CharConverter;
 import org.marc4j.converter.impl.AnselToUnicode;
 import org.marc4j.converter.impl.Iso5426ToUnicode;
@@ -67,6 +78,15 @@ import org.marc4j.marc.Record;
  *       -out modsoutput.xml input.mrc
  * </pre>
  * <p>
+ * Several files can be converted at once. The following example converts each file to MODS on four threads, writing
+ * the results to the existing directory mods:
+ *
+ * <pre>
+ *     java org.marc4j.util.MarcXmlDriver -convert MARC8 -threads 4 \
+ *       -xsl http://www.loc.gov/standards/mods/v3/MARC21slim2MODS3.xsl \
+ *       -out mods batch1.mrc batch2.mrc batch3.mrc
+ * </pre>
+ * <p>
  * For usage, run from the command-line with the following command:
  *
  * <pre>
@@ -90,29 +110,40 @@ public class MarcXmlDriver {
      * </p>
      * <ul>
      * <li>-xsl &lt;stylesheet URL&gt; - post-process using XSLT-stylesheet</li>
-     * <li>-out &lt;output file&gt; - write to output file</li>
+     * <li>-out &lt;output file&gt; - write to output file, or to this directory when there are several input
+     * files</li>
      * <li>-convert &lt;encoding&gt; - convert &lt;encoding&gt; to UTF-8
      * (Supported encodings: MARC8, ISO5426, ISO6937)</li>
      * <li>-encode &lt;encoding&gt; - read data using encoding &lt;encoding&gt;</li>
      * <li>-normalize - perform Unicode normalization</li>
+     * <li>-threads &lt;number&gt; - the number of input files to convert at once</li>
      * <li>-usage - show usage</li>
-     * <li>&lt;input file&gt; - input file with MARC records
+     * <li>&lt;input file&gt; ... - one or more input files with MARC records
      * </ul>
-     * 
+     * <p>
+     * Several input files are each written to a file of the same name with the extension <code>.xml</code>, in the
+     * output directory or else next to the input file. With <code>-threads</code> they are converted on that many
+     * threads, which share the compiled stylesheet but each use a transformer of their own.
+     * </p>
+     *
      * @param args - the command-line arguments
      */
     public static void main(final String args[]) {
         final long start = System.currentTimeMillis();
 
-        String input = null;
+        final List<String> inputs = new ArrayList<String>();
         String output = null;
         String stylesheet = null;
         String convert = null;
         String encoding = "ISO_8859_1";
         boolean normalize = false;
+        int threads = 1;
 
         for (int i = 0; i < args.length; i++) {
-            if (args[i].equals("-xsl")) {
+            if (!inputs.isEmpty()) {
+                // input files must be last
+                inputs.add(args[i].trim());
+            } else if (args[i].equals("-xsl")) {
                 if (i == args.length - 1) {
                     usage();
                 }
@@ -134,50 +165,148 @@ public class MarcXmlDriver {
                 encoding = args[++i].trim();
             } else if (args[i].equals("-normalize")) {
                 normalize = true;
+            } else if (args[i].equals("-threads")) {
+                if (i == args.length - 1) {
+                    usage();
+                }
+                try {
+                    threads = Integer.parseInt(args[++i].trim());
+                } catch (final NumberFormatException e) {
+                    usage();
+                }
+                if (threads < 1) {
+                    usage();
+                }
             } else if (args[i].equals("-usage")) {
                 usage();
             } else if (args[i].equals("-help")) {
                 usage();
             } else {
-                input = args[i].trim();
-
-                // Must be last arg
-                if (i != args.length - 1) {
-                    usage();
-                }
+                inputs.add(args[i].trim());
             }
         }
-        if (input == null) {
+        if (inputs.isEmpty()) {
             usage();
         }
 
-        InputStream in = null;
-        try {
-            in = new FileInputStream(input);
-        } catch (final FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        MarcStreamReader reader = null;
-        if (encoding != null) {
-            reader = new MarcStreamReader(in, encoding);
-        } else {
-            reader = new MarcStreamReader(in);
+        if (convert != null && !Constants.MARC_8_ENCODING.equals(convert) &&
+                !Constants.ISO5426_ENCODING.equals(convert) && !Constants.ISO6937_ENCODING.equals(convert)) {
+            System.err.println("Unknown character set");
+            System.exit(1);
         }
 
-        OutputStream out = null;
-        if (output != null) {
+        // compile the stylesheet once for all the input files
+        final Templates templates = stylesheet == null ? null : TemplatesCache.getTemplates(stylesheet);
+
+        if (inputs.size() == 1) {
+            InputStream in = null;
             try {
-                out = new FileOutputStream(output);
+                in = new FileInputStream(inputs.get(0));
             } catch (final FileNotFoundException e) {
                 e.printStackTrace();
             }
+
+            OutputStream out = null;
+            if (output != null) {
+                try {
+                    out = new FileOutputStream(output);
+                } catch (final FileNotFoundException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                out = System.out;
+            }
+
+            convert(in, out, templates, convert, encoding, normalize);
+        } else if (!convertAll(inputs, output, threads, templates, convert, encoding, normalize)) {
+            System.exit(1);
+        }
+
+        System.err.println("Total time: " + (System.currentTimeMillis() - start) + " miliseconds");
+    }
+
+    /**
+     * Converts the input files on the given number of threads, and returns false if any of them failed. Nothing is
+     * converted when two input files would be written to the same output file.
+     */
+    private static boolean convertAll(final List<String> inputs, final String outputDir, final int threads,
+            final Templates templates, final String convert, final String encoding, final boolean normalize) {
+        final Map<File, String> outputs = new HashMap<File, String>();
+        final List<File> outputFiles = new ArrayList<File>();
+
+        for (final String input : inputs) {
+            final File inputFile = new File(input);
+            final String name = inputFile.getName().replaceFirst("\\.[^.]*$", "") + ".xml";
+            final File outputFile = new File(outputDir != null ? new File(outputDir) : inputFile.getAbsoluteFile()
+                    .getParentFile(), name).getAbsoluteFile();
+
+            if (outputs.containsKey(outputFile)) {
+                System.err.println("Input files " + outputs.get(outputFile) + " and " + input +
+                        " would both be written to " + outputFile);
+                return false;
+            }
+            outputs.put(outputFile, input);
+            outputFiles.add(outputFile);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> conversions = new ArrayList<Future<?>>();
+
+        for (int i = 0; i < inputs.size(); i++) {
+            final File inputFile = new File(inputs.get(i));
+            final File outputFile = outputFiles.get(i);
+
+            conversions.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws IOException {
+                    final InputStream in = new FileInputStream(inputFile);
+                    try {
+                        final OutputStream out = new FileOutputStream(outputFile);
+                        try {
+                            convert(in, out, templates, convert, encoding, normalize);
+                        } finally {
+                            out.close();
+                        }
+                    } finally {
+                        in.close();
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        boolean ok = true;
+        for (int i = 0; i < conversions.size(); i++) {
+            try {
+                conversions.get(i).get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (final ExecutionException e) {
+                System.err.println("Error converting " + inputs.get(i) + ": " + e.getCause());
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Converts the records of one input stream, writing them as MARCXML or through the compiled stylesheet.
+     */
+    private static void convert(final InputStream in, final OutputStream out, final Templates templates,
+            final String convert, final String encoding, final boolean normalize) {
+        MarcStreamReader reader = null;
+        if (encoding != null) {
+            reader = new MarcStreamReader(in, encoding);
         } else {
-            out = System.out;
+            reader = new MarcStreamReader(in);
         }
 
         MarcXmlWriter writer = null;
 
-        if (stylesheet == null) {
+        if (templates == null) {
             if (convert != null) {
                 writer = new MarcXmlWriter(out, "UTF8");
             } else {
@@ -197,8 +326,7 @@ public class MarcXmlDriver {
                 outputWriter = new BufferedWriter(outputWriter);
             }
             final Result result = new StreamResult(outputWriter);
-            final Source source = new StreamSource(stylesheet);
-            writer = new MarcXmlWriter(result, source);
+            writer = new MarcXmlWriter(result, templates);
         }
         writer.setIndent(true);
 
@@ -210,9 +338,6 @@ public class MarcXmlDriver {
                 charconv = new Iso5426ToUnicode();
             } else if (Constants.ISO6937_ENCODING.equals(convert)) {
                 charconv = new Iso6937ToUnicode();
-            } else {
-                System.err.println("Unknown character set");
-                System.exit(1);
             }
             writer.setConverter(charconv);
         }
@@ -229,18 +354,17 @@ public class MarcXmlDriver {
             writer.write(record);
         }
         writer.close();
-
-        System.err.println("Total time: " + (System.currentTimeMillis() - start) + " miliseconds");
     }
 
     private static void usage() {
         System.err.println("MARC4J, Copyright (C) 2002-2006 Bas Peters");
-        System.err.println("Usage: org.marc4j.util.MarcXmlDriver [-options] <file.mrc>");
+        System.err.println("Usage: org.marc4j.util.MarcXmlDriver [-options] <file.mrc> [<file.mrc> ...]");
         System.err.println("       -convert <encoding> = Converts <encoding> to UTF-8");
         System.err.println("       Valid encodings are: MARC8, ISO5426, ISO6937");
         System.err.println("       -normalize = perform Unicode normalization");
         System.err.println("       -xsl <file> = Post-process MARCXML using XSLT stylesheet <file>");
-        System.err.println("       -out <file> = Output using <file>");
+        System.err.println("       -out <file> = Output using <file>, a directory when there are several input files");
+        System.err.println("       -threads <number> = Convert <number> input files at once");
         System.err.println("       -usage or -help = this message");
         System.err.println("The program outputs well-formed MARCXML");
         System.err.println("See http://marc4j.tigris.org for more information.");
@@ -6,7 +6,7 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -128,6 +128,17 @@ public class RawRecord {
         return (-1);
     }
 
+    /**
+     * Creates a RawRecord from the supplied record bytes, which may hold
+     * several consecutive records that share the same id.
+     *
+     * @param recordBytes - the bytes of the record
+     */
+    public RawRecord(final byte[] recordBytes) {
+        rawRecordData = recordBytes;
+        id = getRecordId();
+    }
+
     /**
      * Creates a new raw record from the two supplied raw records.
      *
@@ -170,38 +181,37 @@ public class RawRecord {
      * @return The value of the field with the supplied ID
      */
     public String getFieldVal(final String idField) {
-        String recordStr = null;
-
-        try {
-            recordStr = new String(rawRecordData, "ISO-8859-1");
-        } catch (final UnsupportedEncodingException e) {
-            e.printStackTrace();
-        }
-        int offset = Integer.parseInt(recordStr.substring(12, 17));
-        if (offset == 99999 || recordStr.charAt(offset - 1) != Constants.FT) {
-            offset = recordStr.indexOf(Constants.FT) + 1;
+        final byte[] data = rawRecordData;
+        int offset = parseNumber(data, 12, 5);
+        if (offset == 99999 || data[offset - 1] != Constants.FT) {
+            offset = byteArrayContains(data, Constants.FT) + 1;
         }
         int dirOffset = 24;
-        String fieldNum = recordStr.substring(dirOffset, dirOffset + 3);
 
         while (dirOffset < offset) {
-            if (fieldNum.equals(idField)) {
-                final int length = Integer.parseInt(recordStr.substring(dirOffset + 3,
-                        dirOffset + 7));
-                final int offset2 = Integer.parseInt(recordStr.substring(dirOffset + 7,
-                        dirOffset + 12));
-                final String id = recordStr.substring(offset + offset2,
-                        offset + offset2 + length - 1).trim();
+            if (tagMatches(data, dirOffset, idField)) {
+                final int length = parseNumber(data, dirOffset + 3, 4);
+                final int offset2 = parseNumber(data, dirOffset + 7, 5);
+                final String id = new String(data, offset + offset2, length - 1,
+                        StandardCharsets.ISO_8859_1).trim();
                 return id;
             }
 
             dirOffset += 12;
-            fieldNum = recordStr.substring(dirOffset, dirOffset + 3);
         }
 
         return null;
     }
 
+    private static boolean tagMatches(final byte[] data, final int dirOffset, final String tag) {
+        return data[dirOffset] == tag.charAt(0) && data[dirOffset + 1] == tag.charAt(1) &&
+                data[dirOffset + 2] == tag.charAt(2);
+    }
+
+    private static int parseNumber(final byte[] data, final int offset, final int length) {
+        return Integer.parseInt(new String(data, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
     /**
      * Gets the record in byte form.
      *
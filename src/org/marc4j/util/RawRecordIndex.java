@@ -0,0 +1,354 @@
+package org.marc4j.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sidecar index for a file of binary MARC records, mapping the record id of
+ * every record to its byte offset and length in the file.
+ * <p>
+ * The index is built by scanning the file once with a {@link RawRecordReader},
+ * so record ids are taken from the 001 field, falling back to the 035 field,
+ * and consecutive records with the same id are indexed as one entry, just like
+ * the reader merges them. The index is written next to the MARC file, with
+ * <code>.idx</code> appended to its name. An {@link IndexedRawRecordReader}
+ * uses the index to fetch records by id with a single seek.
+ * </p>
+ * <p>
+ * The index file stores the size and modification time of the MARC file it
+ * was built for, so an index that has gone stale can be detected with
+ * {@link #isCurrent(File)}.
+ * </p>
+ * <p>
+ * The index of a block compressed file, written by {@link BlockRecordWriter},
+ * has the same layout, but its offsets are virtual offsets that point into
+ * the uncompressed data of a block, see {@link BlockRecordReader}.
+ * </p>
+ */
+public class RawRecordIndex {
+
+    private static final int MAGIC = 0x4D524958; // "MRIX"
+
+    private static final int VERSION = 1;
+
+    private final String[] ids;
+
+    private final long[] offsets;
+
+    private final int[] lengths;
+
+    private final long fileSize;
+
+    private final long fileModified;
+
+    private RawRecordIndex(final String[] ids, final long[] offsets, final int[] lengths, final long fileSize,
+            final long fileModified) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+    }
+
+    /**
+     * Returns the file the index for the supplied MARC file is stored in by
+     * default.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @return the sidecar index file
+     */
+    public static File getIndexFile(final File marcFile) {
+        return new File(marcFile.getPath() + ".idx");
+    }
+
+    /**
+     * Scans the supplied file of binary MARC records and builds an index of
+     * its records.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @return the index of the records in the file
+     * @throws IOException if the file can not be read
+     */
+    public static RawRecordIndex build(final File marcFile) throws IOException {
+        final long fileSize = marcFile.length();
+        final long fileModified = marcFile.lastModified();
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        final FileInputStream input = new FileInputStream(marcFile);
+        try {
+            final RawRecordReader reader = new RawRecordReader(input);
+            long offset = 0;
+
+            while (reader.hasNext()) {
+                final RawRecord record = reader.next();
+                final int length = record.getRecordBytes().length;
+                final String id = record.getRecordId();
+
+                if (id != null) {
+                    entries.add(new Entry(id, offset, length));
+                }
+                offset += length;
+            }
+        } finally {
+            input.close();
+        }
+
+        return build(entries, fileSize, fileModified);
+    }
+
+    /**
+     * Builds an index from the supplied entries.
+     *
+     * @param entries - the indexed records, in file order
+     * @param fileSize - the size of the file the records are in
+     * @param fileModified - the modification time of that file
+     * @return the index of the records
+     */
+    static RawRecordIndex build(final List<Entry> entries, final long fileSize, final long fileModified) {
+        // sort on id, keeping records with the same id in file order
+        final Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted, new Comparator<Entry>() {
+
+            @Override
+            public int compare(final Entry entry1, final Entry entry2) {
+                final int cmp = entry1.id.compareTo(entry2.id);
+                return cmp != 0 ? cmp : Long.compare(entry1.offset, entry2.offset);
+            }
+        });
+
+        final String[] ids = new String[sorted.length];
+        final long[] offsets = new long[sorted.length];
+        final int[] lengths = new int[sorted.length];
+
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = sorted[i].id;
+            offsets[i] = sorted[i].offset;
+            lengths[i] = sorted[i].length;
+        }
+
+        return new RawRecordIndex(ids, offsets, lengths, fileSize, fileModified);
+    }
+
+    /**
+     * Reads an index written by {@link #write(File)}.
+     *
+     * @param indexFile - the file holding the index
+     * @return the index
+     * @throws IOException if the index can not be read
+     */
+    public static RawRecordIndex read(final File indexFile) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a MARC record index: " + indexFile);
+            }
+            final long fileSize = in.readLong();
+            final long fileModified = in.readLong();
+            final int count = in.readInt();
+
+            final String[] ids = new String[count];
+            final long[] offsets = new long[count];
+            final int[] lengths = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readUTF();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+            return new RawRecordIndex(ids, offsets, lengths, fileSize, fileModified);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index to the supplied file. The index is written to a
+     * temporary file in the same directory first, which then replaces the
+     * index file, so a failed write never leaves a partial index behind.
+     *
+     * @param indexFile - the file to write the index to
+     * @throws IOException if the index can not be written
+     */
+    public void write(final File indexFile) throws IOException {
+        final File target = indexFile.getAbsoluteFile();
+        final File tempFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        boolean written = false;
+        try {
+            writeTo(tempFile);
+            if (!tempFile.renameTo(target)) {
+                // renaming onto an existing file fails on some platforms
+                if (target.exists() && !target.delete() || !tempFile.renameTo(target)) {
+                    throw new IOException("can not replace index file " + indexFile);
+                }
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void writeTo(final File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(fileModified);
+            out.writeInt(ids.length);
+
+            for (int i = 0; i < ids.length; i++) {
+                out.writeUTF(ids[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns true if the supplied MARC file has not changed since this index
+     * was built for it.
+     *
+     * @param marcFile - the file of binary MARC records
+     * @return true if the index matches the file
+     */
+    public boolean isCurrent(final File marcFile) {
+        return marcFile.length() == fileSize && marcFile.lastModified() == fileModified;
+    }
+
+    /**
+     * Returns the number of records in the index.
+     *
+     * @return the number of indexed records
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns true if a record with the supplied id is in the index.
+     *
+     * @param id - the record id to look for
+     * @return true if the id is indexed
+     */
+    public boolean contains(final String id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Returns the byte offset of the record with the supplied id, or -1 if
+     * there is no such record. If the file holds several records with that id
+     * the offset of the first one is returned.
+     *
+     * @param id - the record id to look for
+     * @return the offset of the record in the file
+     */
+    public long getOffset(final String id) {
+        final int index = find(id);
+        return index >= 0 ? offsets[index] : -1;
+    }
+
+    /**
+     * Returns the length in bytes of the record with the supplied id, or -1
+     * if there is no such record.
+     *
+     * @param id - the record id to look for
+     * @return the length of the record
+     */
+    public int getLength(final String id) {
+        final int index = find(id);
+        return index >= 0 ? lengths[index] : -1;
+    }
+
+    /**
+     * Returns the offsets and lengths of all the records with the supplied
+     * id, in file order, as pairs of <code>{offset, length}</code>.
+     *
+     * @param id - the record id to look for
+     * @return the locations of the records, empty if there are none
+     */
+    public List<long[]> getLocations(final String id) {
+        final List<long[]> result = new ArrayList<long[]>();
+        for (int index = find(id); index >= 0 && index < ids.length && ids[index].equals(id); index++) {
+            result.add(new long[] { offsets[index], lengths[index] });
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the first entry with the supplied id, or a
+     * negative number if there is none.
+     */
+    private int find(final String id) {
+        int index = Arrays.binarySearch(ids, id);
+        while (index > 0 && ids[index - 1].equals(id)) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Command line interface for building the index of a file of binary MARC
+     * records. The arguments are the MARC file and, optionally, the file to
+     * write the index to.
+     *
+     * @param args - the command-line arguments
+     */
+    public static void main(final String[] args) {
+        if (args.length < 1 || args.length > 2 || args[0].equals("-help") || args[0].equals("-usage")) {
+            usage(args.length < 1 || args.length > 2 ? 1 : 0);
+        }
+        final File marcFile = new File(args[0]);
+        final File indexFile = args.length > 1 ? new File(args[1]) : getIndexFile(marcFile);
+
+        try {
+            final long start = System.currentTimeMillis();
+            final RawRecordIndex index = build(marcFile);
+            index.write(indexFile);
+            System.err.println("Indexed " + index.size() + " records from " + marcFile + " in " +
+                    (System.currentTimeMillis() - start) + " ms");
+        } catch (final IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage(final int exitcode) {
+        System.err.println("Usage: org.marc4j.util.RawRecordIndex <file.mrc> [<file.idx>]");
+        System.err.println("       Writes an index of the record ids in file.mrc to file.idx");
+        System.err.println("       (default: file.mrc.idx)");
+        System.exit(exitcode);
+    }
+
+    /**
+     * The location of a record, or of a run of records with the same id, that
+     * an index is built from.
+     */
+    static final class Entry {
+
+        final String id;
+
+        final long offset;
+
+        int length;
+
+        Entry(final String id, final long offset, final int length) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
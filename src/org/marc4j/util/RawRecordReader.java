@@ -10,8 +10,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Read a binary marc file, treating the records mostly as opaque blocks of data.
@@ -102,7 +107,9 @@ public class RawRecordReader {
      * <li>-h &lt;pattern&gt;  a regex specifying field tags. Only those records that have one of the specified field tag(s) will be returned.</li>
      * <li>&lt;pattern&gt;     a regex specifying record ids. Only those records whose id matches the pattern will be returned</li>
      * <li>&lt;filename.txt&gt;   the name of a file containing records ids, (one per line)
-     *             Only those records whose id matches one of the ids in that file will be returned</li>
+     *             Only those records whose id matches one of the ids in that file will be returned.
+     *             When the input file has an up to date index (see {@link RawRecordIndex}) the records
+     *             are looked up in the index instead of scanning the whole file</li>
      * </ul>
      * @param args - the command-line arguments
      */
@@ -122,6 +129,8 @@ public class RawRecordReader {
             String idRegex = null;
             String hasFieldRegex = null;
             String idsLookedForFile = null;
+            File marcFile = null;
+            InputStream marcInput = null;
             
             while (offset >= 0 && offset < args.length) {
                 if (args[offset].startsWith("-")) {
@@ -157,7 +166,9 @@ public class RawRecordReader {
                     } 
                 }
                 else if (args[offset].endsWith(".mrc")) {
-                    reader = new RawRecordReader(new FileInputStream(new File(args[offset++])));
+                    marcFile = new File(args[offset++]);
+                    marcInput = new FileInputStream(marcFile);
+                    reader = new RawRecordReader(marcInput);
                 }
                 else if (args[offset].endsWith(".txt")) {
                     idsLookedForFile = args[offset++];
@@ -194,7 +205,14 @@ public class RawRecordReader {
                 }
 
                 idStream.close();
-                processInput(reader, null, null, idsLookedFor);
+                final RawRecordIndex index = merge ? findIndex(marcFile) : null;
+                if (index != null) {
+                    // the records are read through the index instead
+                    marcInput.close();
+                    processInput(new IndexedRawRecordReader(marcFile, index), idsLookedFor);
+                } else {
+                    processInput(reader, null, null, idsLookedFor);
+                }
 
             } else {
                 processInput(reader, null, null, null);
@@ -269,6 +287,57 @@ public class RawRecordReader {
         }
     }
 
+    /**
+     * Returns the sidecar index of the supplied file if there is one that is
+     * up to date and can be read, or null otherwise.
+     */
+    private static RawRecordIndex findIndex(final File marcFile) {
+        if (marcFile == null) {
+            return null;
+        }
+        final File indexFile = RawRecordIndex.getIndexFile(marcFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            final RawRecordIndex index = RawRecordIndex.read(indexFile);
+            return index.isCurrent(marcFile) ? index : null;
+        } catch (final IOException e) {
+            // a corrupt index is ignored, the file is scanned instead
+            return null;
+        }
+    }
+
+    /**
+     * Outputs the records whose ids are in the pull-list by looking them up in
+     * the index, in the order they occur in the file just like a full scan would.
+     */
+    static void processInput(final IndexedRawRecordReader reader, final Set<String> idsLookedFor)
+            throws IOException {
+        final List<long[]> locations = new ArrayList<long[]>();
+
+        for (final String id : idsLookedFor) {
+            locations.addAll(reader.getIndex().getLocations(id));
+        }
+        Collections.sort(locations, new Comparator<long[]>() {
+
+            @Override
+            public int compare(final long[] location1, final long[] location2) {
+                return Long.compare(location1[0], location2[0]);
+            }
+        });
+
+        try {
+            for (final long[] location : locations) {
+                final byte recordBytes[] = reader.getRawRecord(location[0], (int) location[1]).getRecordBytes();
+                System.out.write(recordBytes);
+                System.out.flush();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
     static void processInput(final RawRecordReader reader, final String idRegex,
             final String recordHas, final HashSet<String> idsLookedFor) throws IOException {
         while (reader.hasNext()) {
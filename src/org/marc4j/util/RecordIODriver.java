@@ -17,6 +17,7 @@ import org.marc4j.MarcTxtWriter;
 import org.marc4j.MarcWriter;
 import org.marc4j.MarcXmlWriter;
 import org.marc4j.Mrk8StreamWriter;
+import org.marc4j.ParallelGZIPOutputStream;
 import org.marc4j.converter.impl.UnicodeToAnsel;
 import org.marc4j.marc.Record;
 
@@ -121,6 +122,9 @@ public class RecordIODriver {
         if (driverInfo.output != null) {
             try {
                 out = new FileOutputStream(driverInfo.output);
+                if (driverInfo.output.endsWith(".gz")) {
+                    out = new ParallelGZIPOutputStream(out);
+                }
             } catch (final FileNotFoundException e) {
                 e.printStackTrace();
             }
@@ -288,6 +292,10 @@ public class RecordIODriver {
             if (driverInfo.pretty)     jsonwriter.setIndent(true);
             if (driverInfo.normalize)  jsonwriter.setUnicodeNormalization(true);
             writer = jsonwriter;
+        } else if (driverInfo.convert.equalsIgnoreCase("MARC_IN_JSON_LINES") || driverInfo.convert.equalsIgnoreCase("jsonl")) {
+            MarcJsonWriter jsonwriter = new MarcJsonWriter(out, MarcJsonWriter.MARC_IN_JSON_LINES);
+            if (driverInfo.normalize)  jsonwriter.setUnicodeNormalization(true);
+            writer = jsonwriter;
         } else if (driverInfo.convert.equalsIgnoreCase("MARC_JSON") || driverInfo.convert.equalsIgnoreCase("json2")) {
             MarcJsonWriter jsonwriter = new MarcJsonWriter(out, MarcJsonWriter.MARC_JSON);
             if (driverInfo.pretty)     jsonwriter.setIndent(true);
@@ -334,7 +342,7 @@ public class RecordIODriver {
         System.err.println("   or: org.marc4j.util.RecordIODriver [-options] <file.xml>");
         System.err.println("   or: org.marc4j.util.RecordIODriver [-options] <file.json>");
         System.err.println("       -convert <format> = Produce output in the specified format");
-        System.err.println("           Valid formats are: xml, json, utf8, marc8, mrk8, ncr, text ");
+        System.err.println("           Valid formats are: xml, json, jsonl, utf8, marc8, mrk8, ncr, text ");
         System.err.println("       -encoding <inputFile encoding> = expected character encoding of input file");
         System.err.println("       -normalize = perform Unicode normalization");
         System.err.println("       -combine = combine consecutive that have the same record id");
@@ -344,7 +352,7 @@ public class RecordIODriver {
         System.err.println("       -edit <file.properties> = apply all the edits specified in the file <file.properties> to the records");
         System.err.println("       -matches <pattern> = only output records that match the specified pattern");
         System.err.println("       -notmatches <pattern> = only output records that do not match the specified pattern");
-        System.err.println("       -out <file> = Output to <file> instead of stdout");
+        System.err.println("       -out <file> = Output to <file> instead of stdout, gzip compressed if <file> ends with .gz");
         System.err.println("       -help <option> = more verbose help message about the specified option");
         System.err.println("       -usage = this message");
         System.exit(exitcode);
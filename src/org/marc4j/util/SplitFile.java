@@ -2,21 +2,20 @@ package org.marc4j.util;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import org.marc4j.MarcReader;
 import org.marc4j.MarcPermissiveStreamReader;
-import org.marc4j.MarcStreamWriter;
-import org.marc4j.MarcWriter;
-import org.marc4j.marc.Record;
+import org.marc4j.MarcRollingWriter;
 
 /**
  * @author tod
  *
- * Provides a basic utility for splitting file of MARC records.
+ * Provides a basic utility for splitting file of MARC records. The records
+ * are written with a {@link MarcRollingWriter}, either rolling over to a new
+ * file every so many records or bytes, or partitioned over a fixed number of
+ * files by their control number. With <code>-raw</code> the records are copied
+ * as they are, without being decoded and encoded again.
  */
 public class SplitFile {
 
@@ -31,6 +30,9 @@ public class SplitFile {
         String input = null;
         InputStream inStream = null;
         int count = 100;
+        long bytes = 0;
+        int partitions = 0;
+        boolean raw = false;
         String outBase = null;
         
         for (int i = 0; i < args.length; i++) {
@@ -45,6 +47,26 @@ public class SplitFile {
                 } catch (java.lang.NumberFormatException e) {
                     usage(1);
                 }
+            } else if (args[i].equals("-bytes")) {
+                if (i == args.length - 1) {
+                    usage(1);
+                }
+                try {
+                    bytes = Long.parseLong(args[++i].trim());
+                } catch (java.lang.NumberFormatException e) {
+                    usage(1);
+                }
+            } else if (args[i].equals("-partitions")) {
+                if (i == args.length - 1) {
+                    usage(1);
+                }
+                try {
+                    partitions = Integer.parseInt(args[++i].trim());
+                } catch (java.lang.NumberFormatException e) {
+                    usage(1);
+                }
+            } else if (args[i].equals("-raw")) {
+                raw = true;
             } else if (args[i].equals("-out")) {
                 if (i == args.length - 1) {
                     usage(1);
@@ -77,27 +99,29 @@ public class SplitFile {
             }
         }
 
-        MarcReader reader = null;
-        try {
-            reader = new MarcPermissiveStreamReader(inStream, true, true);
-            int fcount = 0;
+        if (outBase == null) {
+            outBase = "output";
+        }
+
+        final MarcRollingWriter writer = new MarcRollingWriter(outBase, ".mrc", "UTF-8");
+        writer.setAllowOversizeEntry(true);
+        writer.setMaxRecords(count);
+        writer.setMaxBytes(bytes);
+        writer.setPartitions(partitions);
+        if (raw) {
+            // records are kept apart, as they would be when decoded
+            final RawRecordReader reader = new RawRecordReader(inStream, false);
             while (reader.hasNext()) {
-                fcount++;
-                String outName = String.format("%s-%02d%s", outBase, fcount, ".mrc");
-                OutputStream outStream = new FileOutputStream(outName);
-                MarcWriter writer = new MarcStreamWriter(outStream, true);
-                // System.out.println(String.format("Opened file %s\n", outName));
-                for (int i=0; i<count && reader.hasNext(); i++) {
-                    Record record = reader.next();
-                    writer.write(record);
-                }
-                writer.close();
+                writer.writeRaw(reader.next().getRecordBytes());
+            }
+        } else {
+            final MarcReader reader = new MarcPermissiveStreamReader(inStream, true, true);
+            while (reader.hasNext()) {
+                writer.write(reader.next());
             }
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         }
-        
+        writer.close();
+
         System.err.println("Total time: " + (System.currentTimeMillis() - start) + " miliseconds");
     }
     
@@ -105,6 +129,10 @@ public class SplitFile {
         System.err.println("Usage: org.marc4j.util.SplitFile [-options] <file.mrc>");
         System.err.println("\t-help: print this message");
         System.err.println("\t-count <num>: max number of records in an output file (default: 100)");
+        System.err.println("\t-bytes <num>: max number of bytes in an output file (default: no limit)");
+        System.err.println("\t-partitions <num>: spread the records over this number of files by their");
+        System.err.println("\t        control number, instead of filling one file after the other");
+        System.err.println("\t-raw: copy the records without decoding them or converting them to UTF-8");
         System.err.println("\t-out: basename for output files (default: ouput)");
         System.err.println("\t-usage: print usage info (same as -help)");
         System.exit(status);
@@ -10,6 +10,7 @@ public class UtilDriver
     public static String[][] commands = { {"marcdiff", "org.marc4j.util.MarcDiff" },
                                           {"getrecord", "org.marc4j.util.RawRecordReader" },
                                           {"getids", "org.marc4j.util.RawRecordReader", "-id" },
+                                          {"marcindex", "org.marc4j.util.RawRecordIndex" },
                                           {"marcsort", "org.marc4j.util.MarcSorter" },
                                           {"marcupdate", "org.marc4j.util.MarcMerger" },
                                           {"printrecord", "org.marc4j.util.RecordIODriver", "-convert", "text"},
@@ -29,6 +30,7 @@ public class UtilDriver
      * <li>marcdiff     -   org.marc4j.util.MarcDiff </li>
      * <li>getrecord    -   org.marc4j.util.RawRecordReader </li>
      * <li>getids       -   org.marc4j.util.RawRecordReader -id </li>
+     * <li>marcindex    -   org.marc4j.util.RawRecordIndex </li>
      * <li>marcsort     -   org.marc4j.util.MarcSorter </li>
      * <li>marcupdate   -   org.marc4j.util.MarcMerger </li>
      * <li>printrecord  -   org.marc4j.util.RecordIODriver -convert text</li>
@@ -110,6 +112,7 @@ public class UtilDriver
         System.err.println("       Valid commands are:");
         System.err.println("          getrecord - extract record(s) from a file of binary MARC records");
         System.err.println("          getids - extract only the ids from a file of binary MARC records");
+        System.err.println("          marcindex - build an index of the record ids in a file of binary MARC records for fast lookup");
         System.err.println("          marcdiff - compare to files of MARC records showing the differences");
         System.err.println("          marcsort - sort a file of binary MARC records based on the control numbers");
         System.err.println("          marcupdate - merge a set of changes (add, edits and deletes) into a file of binary MARC records");
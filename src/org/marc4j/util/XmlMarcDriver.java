@@ -20,6 +20,7 @@
 
 package org.marc4j.util;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -33,6 +34,7 @@ import javax.xml.transform.stream.StreamSource;
 import org.marc4j.Constants;
 import org.marc4j.MarcStreamWriter;
 import org.marc4j.MarcXmlReader;
+import org.marc4j.MarcXmlTranscoder;
 import org.marc4j.converter.CharConverter;
 import org.marc4j.converter.impl.UnicodeToAnsel;
 import org.marc4j.converter.impl.UnicodeToIso5426;
@@ -150,14 +152,6 @@ public class XmlMarcDriver {
         } catch (final FileNotFoundException e) {
             e.printStackTrace();
         }
-        MarcXmlReader reader = null;
-        if (stylesheet == null) {
-            reader = new MarcXmlReader(in);
-        } else {
-            final Source source = new StreamSource(stylesheet);
-            reader = new MarcXmlReader(in, source);
-        }
-
         OutputStream out = null;
         if (output != null) {
             try {
@@ -168,16 +162,10 @@ public class XmlMarcDriver {
         } else {
             out = System.out;
         }
+        out = new BufferedOutputStream(out);
 
-        MarcStreamWriter writer = null;
-        if (encoding != null) {
-            writer = new MarcStreamWriter(out, encoding);
-        } else {
-            writer = new MarcStreamWriter(out);
-        }
-
+        CharConverter charconv = null;
         if (convert != null) {
-            CharConverter charconv = null;
             if (Constants.MARC_8_ENCODING.equals(convert)) {
                 charconv = new UnicodeToAnsel();
             } else if (Constants.ISO5426_ENCODING.equals(convert)) {
@@ -188,17 +176,36 @@ public class XmlMarcDriver {
                 System.err.println("Unknown character set");
                 System.exit(1);
             }
-            writer.setConverter(charconv);
         }
 
-        while (reader.hasNext()) {
-            final Record record = reader.next();
-            if (Constants.MARC_8_ENCODING.equals(convert)) {
-                record.getLeader().setCharCodingScheme(' ');
+        if (stylesheet == null) {
+            // without a stylesheet the XML is encoded as it is read
+            final MarcXmlTranscoder transcoder = new MarcXmlTranscoder(out, encoding != null ? encoding
+                    : "ISO8859_1", false);
+            transcoder.setConverter(charconv);
+            transcoder.transcode(in);
+            transcoder.close();
+        } else {
+            final Source source = new StreamSource(stylesheet);
+            final MarcXmlReader reader = new MarcXmlReader(in, source);
+
+            MarcStreamWriter writer = null;
+            if (encoding != null) {
+                writer = new MarcStreamWriter(out, encoding);
+            } else {
+                writer = new MarcStreamWriter(out);
+            }
+            writer.setConverter(charconv);
+
+            while (reader.hasNext()) {
+                final Record record = reader.next();
+                if (Constants.MARC_8_ENCODING.equals(convert)) {
+                    record.getLeader().setCharCodingScheme(' ');
+                }
+                writer.write(record);
             }
-            writer.write(record);
+            writer.close();
         }
-        writer.close();
 
         System.err.println("Total time: " + (System.currentTimeMillis() - start) + " miliseconds");
     }
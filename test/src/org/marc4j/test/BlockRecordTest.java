@@ -0,0 +1,140 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marc4j.MarcBlockReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.Record;
+import org.marc4j.util.BlockRecordReader;
+import org.marc4j.util.BlockRecordWriter;
+import org.marc4j.util.RawRecord;
+import org.marc4j.util.RawRecordIndex;
+import org.marc4j.util.RawRecordReader;
+
+/**
+ * Tests of {@link BlockRecordWriter}, {@link BlockRecordReader} and
+ * {@link MarcBlockReader}.
+ */
+public class BlockRecordTest {
+
+    private static final File INPUT = new File("test/resources/pride-and-prejudice-fixed.mrc");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlainGzip() throws IOException {
+        final File file = writeBlocks();
+        final InputStream in = new GZIPInputStream(new FileInputStream(file));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        assertArrayEquals(Files.readAllBytes(INPUT.toPath()), out.toByteArray());
+    }
+
+    @Test
+    public void testFetchById() throws IOException {
+        final File file = writeBlocks();
+        assertTrue(RawRecordIndex.getIndexFile(file).exists());
+        final BlockRecordReader reader = new BlockRecordReader(file);
+
+        // the index built by scanning the blocks is the one the writer wrote
+        final RawRecordIndex scanned = BlockRecordReader.buildIndex(file);
+        assertEquals(scanned.size(), reader.getIndex().size());
+
+        int count = 0;
+        final RawRecordReader raw = new RawRecordReader(new FileInputStream(INPUT));
+        while (raw.hasNext()) {
+            final RawRecord record = raw.next();
+            if (record.getRecordId() == null) {
+                continue;
+            }
+            assertEquals(scanned.getOffset(record.getRecordId()), reader.getIndex().getOffset(record.getRecordId()));
+            final List<RawRecord> fetched = reader.getRawRecords(record.getRecordId());
+            assertTrue(fetched.size() > 0);
+            if (fetched.size() == 1) {
+                assertArrayEquals(record.getRecordBytes(), fetched.get(0).getRecordBytes());
+            }
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(null, reader.getRawRecord("no-such-id"));
+        reader.close();
+    }
+
+    @Test
+    public void testSameIdRunKeptInOneBlock() throws IOException {
+        final RawRecordReader raw = new RawRecordReader(new FileInputStream("test/resources/chabon.mrc"));
+        assertTrue(raw.hasNext());
+        final RawRecord first = raw.next();
+        assertTrue(raw.hasNext());
+        final RawRecord second = raw.next();
+        final File file = new File(folder.getRoot(), "run.mrc.gz");
+        final BlockRecordWriter writer = new BlockRecordWriter(file);
+        // a run of records with the same id that is larger than a block
+        final int copies = BlockRecordWriter.BLOCK_SIZE / first.getRecordBytes().length + 2;
+        writer.writeRaw(second.getRecordBytes());
+        for (int i = 0; i < copies; i++) {
+            writer.writeRaw(first.getRecordBytes());
+        }
+        writer.writeRaw(second.getRecordBytes());
+        writer.close();
+
+        final BlockRecordReader reader = new BlockRecordReader(file);
+        assertEquals(1, reader.getRawRecords(first.getRecordId()).size());
+        assertEquals(copies * first.getRecordBytes().length, reader.getRawRecord(first.getRecordId())
+                .getRecordBytes().length);
+        assertEquals(2, reader.getRawRecords(second.getRecordId()).size());
+        assertEquals(reader.getIndex().size(), BlockRecordReader.buildIndex(file).size());
+        reader.close();
+    }
+
+    @Test
+    public void testParallelRead() throws IOException {
+        final File file = writeBlocks();
+        final List<Record> expected = new ArrayList<Record>();
+        final MarcReader plain = new MarcStreamReader(new FileInputStream(INPUT));
+        while (plain.hasNext()) {
+            expected.add(plain.next());
+        }
+
+        final MarcBlockReader reader = new MarcBlockReader(new FileInputStream(file), 3);
+        for (final Record record : expected) {
+            assertTrue(reader.hasNext());
+            assertEquals(record.toString(), reader.next().toString());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    private File writeBlocks() throws IOException {
+        final File file = new File(folder.getRoot(), "blocks.mrc.gz");
+        final BlockRecordWriter writer = new BlockRecordWriter(file);
+        final RawRecordReader reader = new RawRecordReader(new FileInputStream(INPUT));
+        while (reader.hasNext()) {
+            writer.writeRaw(reader.next().getRecordBytes());
+        }
+        writer.close();
+        return file;
+    }
+}
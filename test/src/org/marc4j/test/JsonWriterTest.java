@@ -5,6 +5,8 @@ import org.marc4j.MarcJsonReader;
 import org.marc4j.MarcJsonWriter;
 import org.marc4j.MarcStreamReader;
 import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.MarcFactory;
 import org.marc4j.marc.Record;
 import org.marc4j.test.utils.StaticTestRecords;
 import org.marc4j.test.utils.TestUtils;
@@ -36,6 +38,26 @@ public class JsonWriterTest  {
         writer.close();
     }
 
+    @Test
+    public void testOverriddenToMarcInJson() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        MarcJsonWriter writer = new MarcJsonWriter(expected, MarcJsonWriter.MARC_IN_JSON);
+        writer.write(getSummerlandRecord());
+        writer.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MarcJsonWriter custom = new MarcJsonWriter(out, MarcJsonWriter.MARC_IN_JSON) {
+
+            @Override
+            protected String toMarcInJson(final Record record) {
+                return "[" + super.toMarcInJson(record) + "]";
+            }
+        };
+        custom.write(getSummerlandRecord());
+        custom.close();
+        assertEquals("[" + expected.toString("UTF-8") + "]", out.toString("UTF-8"));
+    }
+
     @Test
     public void testMarcJsonWriter() throws Exception {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -194,6 +216,33 @@ public class JsonWriterTest  {
         out.close();
     }
 
+    @Test
+    public void testEscaping() throws Exception {
+        MarcFactory factory = MarcFactory.newInstance();
+        Record record = factory.newRecord("00000nam a2200000 a 4500");
+        record.addVariableField(factory.newControlField("001", "a/b\"c\\d\t\u0001\u00e9\u20ac"));
+        DataField df = factory.newDataField("245", '1', '0');
+        df.addSubfield(factory.newSubfield('a', "x\ny"));
+        record.addVariableField(df);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MarcJsonWriter writer = new MarcJsonWriter(out);
+        writer.setEscapeSlash(true);
+        writer.write(record);
+        writer.setEscapeSlash(false);
+        writer.setQuoteLabels(false);
+        writer.write(record);
+        writer.close();
+
+        String expected = "{\"leader\":\"00000nam a2200000 a 4500\",\"fields\":[" +
+                "{\"001\":\"a\\/b\\\"c\\\\d\\t\\u0001\u00e9\\u20ac\"}," +
+                "{\"245\":{\"subfields\":[{\"a\":\"x\\ny\"}],\"ind1\":\"1\",\"ind2\":\"0\"}}]}\n" +
+                "{leader:\"00000nam a2200000 a 4500\",fields:[" +
+                "{001:\"a/b\\\"c\\\\d\\t\\u0001\u00e9\\u20ac\"}," +
+                "{245:{subfields:[{a:\"x\\ny\"}],ind1:\"1\",ind2:\"0\"}}]}\n";
+        assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+    }
+
     private Record getJSONRecordFromFile(String fileName) {
         InputStream input = getClass().getResourceAsStream(fileName);
         assertNotNull(fileName,input);
@@ -0,0 +1,146 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.marc4j.Constants;
+import org.marc4j.MarcException;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcReaderConfig;
+import org.marc4j.MarcReaderFactory;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.impl.LazyRecordImpl;
+import org.marc4j.test.utils.StaticTestRecords;
+
+/**
+ * Tests of {@link LazyRecordImpl}.
+ */
+public class LazyRecordTest {
+
+    @Test
+    public void testLazyRecordsMatchDecodedRecords() throws IOException {
+        final String[] resources = { StaticTestRecords.RESOURCES_CHABON_MRC, StaticTestRecords.RESOURCES_SUMMERLAND_MRC,
+            StaticTestRecords.RESOURCES_BRKRTEST_MRC, StaticTestRecords.RESOURCES_BRKRTEST_UTF8_MRC };
+
+        for (final String resource : resources) {
+            final MarcReader expected = new MarcStreamReader(getClass().getResourceAsStream(resource));
+            final MarcStreamReader lazy = new MarcStreamReader(getClass().getResourceAsStream(resource));
+            lazy.setLazyDecoding(true);
+
+            while (expected.hasNext()) {
+                final Record record = lazy.next();
+                assertTrue(record instanceof LazyRecordImpl);
+                assertEquals(expected.next().toString(), record.toString());
+            }
+            assertFalse(lazy.hasNext());
+        }
+    }
+
+    @Test
+    public void testDecodeOnOtherThreads() throws Exception {
+        final List<String> expected = new ArrayList<String>();
+        final MarcReader reader = new MarcStreamReader(getClass().getResourceAsStream(
+                StaticTestRecords.RESOURCES_BRKRTEST_MRC));
+        while (reader.hasNext()) {
+            expected.add(reader.next().toString());
+        }
+
+        for (int round = 0; round < 20; round++) {
+            final MarcStreamReader lazy = new MarcStreamReader(getClass().getResourceAsStream(
+                    StaticTestRecords.RESOURCES_BRKRTEST_MRC));
+            lazy.setLazyDecoding(true);
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            final List<Future<String>> decoded = new ArrayList<Future<String>>();
+            // the MARC-8 records are decoded while the reader parses the next ones
+            while (lazy.hasNext()) {
+                final Record record = lazy.next();
+                decoded.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() {
+                        return record.toString();
+                    }
+                }));
+            }
+            executor.shutdown();
+            assertEquals(expected.size(), decoded.size());
+            for (int i = 0; i < decoded.size(); i++) {
+                assertEquals(expected.get(i), decoded.get(i).get());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorsReportedOnAccess() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/summerland.mrc"));
+        final String raw = new String(data, StandardCharsets.ISO_8859_1);
+
+        // drop the field terminator of the 245 field
+        data[raw.indexOf(Constants.FT, raw.indexOf("Summerland /"))] = 'x';
+
+        final MarcStreamReader reader = new MarcStreamReader(new ByteArrayInputStream(data));
+        reader.setLazyDecoding(true);
+
+        final Record record = reader.next();
+        assertEquals("12883376", record.getControlNumber());
+        assertEquals("Chabon, Michael.", ((DataField) record.getVariableField("100")).getSubfield('a').getData());
+
+        // the error is reported on every access, not just the first
+        for (int i = 0; i < 2; i++) {
+            try {
+                ((DataField) record.getVariableField("245")).getSubfields();
+                fail("Expected an exception decoding a broken field");
+            } catch (final MarcException e) {
+                assertTrue(e.getMessage().startsWith("error parsing data field for tag: 245"));
+            }
+        }
+    }
+
+    @Test
+    public void testSerializeLazyRecord() throws Exception {
+        final MarcStreamReader reader = new MarcStreamReader(getClass().getResourceAsStream(
+                StaticTestRecords.RESOURCES_SUMMERLAND_MRC));
+        reader.setLazyDecoding(true);
+        final Record record = reader.next();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(record);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final Record copy = (Record) in.readObject();
+        assertEquals(record.toString(), copy.toString());
+    }
+
+    @Test
+    public void testFactorySwitch() throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("marc.lazy_decode", "true");
+        final MarcReader reader = MarcReaderFactory.makeReader(new MarcReaderConfig(props),
+                getClass().getResourceAsStream(StaticTestRecords.RESOURCES_CHABON_MRC));
+
+        assertTrue(reader.next() instanceof LazyRecordImpl);
+    }
+}
@@ -0,0 +1,85 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marc4j.MarcFileChannelWriter;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.MarcStreamWriter;
+import org.marc4j.MarcWriter;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcFileChannelWriter}.
+ */
+public class MarcFileChannelWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameOutputAsStreamWriter() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/pride-and-prejudice-fixed.mrc"));
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MarcStreamWriter streamWriter = new MarcStreamWriter(expected, "UTF-8");
+        streamWriter.setConverter(new AnselToUnicode());
+        copy(data, streamWriter);
+
+        // a large threshold batches many records per write, a small one writes a few at a time
+        for (final int threshold : new int[] { MarcFileChannelWriter.DEFAULT_FLUSH_THRESHOLD, 5000, 0 }) {
+            final File file = folder.newFile();
+            final MarcFileChannelWriter writer = new MarcFileChannelWriter(file, "UTF-8");
+            writer.setConverter(new AnselToUnicode());
+            writer.setFlushThreshold(threshold);
+            copy(data, writer);
+
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    @Test
+    public void testFlushBatch() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/pride-and-prejudice-fixed.mrc"));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MarcStreamWriter streamWriter = new MarcStreamWriter(expected);
+        final File file = folder.newFile();
+        final MarcFileChannelWriter writer = new MarcFileChannelWriter(file);
+
+        // several records are collected and written with one gathering write
+        final MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(data));
+        for (int i = 0; i < 5; i++) {
+            final Record record = reader.next();
+            streamWriter.write(record);
+            writer.write(record);
+        }
+        assertEquals(0, file.length());
+        writer.flush();
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+
+        writer.write(reader.next());
+        writer.close();
+        assertTrue(file.length() > expected.size());
+    }
+
+    private static void copy(final byte[] data, final MarcWriter writer) {
+        final MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(data));
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,86 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcFileSplitter;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+
+/**
+ * Tests of {@link MarcFileSplitter}.
+ */
+public class MarcFileSplitterTest {
+
+    @Test
+    public void testRangesMatchSequentialRead() throws IOException {
+        assertRangesMatch("test/resources/pride-and-prejudice-fixed.mrc", false, false, null);
+        assertRangesMatch("test/resources/chabon.mrc", false, false, null);
+    }
+
+    @Test
+    public void testRangesMatchPermissiveRead() throws IOException {
+        assertRangesMatch("test/resources/pride-and-prejudice-with-many-errors.mrc", true, true, "BESTGUESS");
+        assertRangesMatch("test/resources/bad_too_long_plus_2.mrc", true, true, "BESTGUESS");
+    }
+
+    @Test
+    public void testFindRecordStart() throws IOException {
+        final File file = new File("test/resources/pride-and-prejudice-fixed.mrc");
+        final MarcFileSplitter splitter = new MarcFileSplitter(file);
+        final List<Long> starts = new ArrayList<Long>();
+        final InputStream input = new FileInputStream(file);
+        final byte[] leader = new byte[24];
+        long offset = 0;
+        while (input.read(leader) == 24) {
+            starts.add(offset);
+            final int length = Integer.parseInt(new String(leader, 0, 5, "US-ASCII"));
+            input.skip(length - 24);
+            offset += length;
+        }
+        input.close();
+
+        assertEquals(0, splitter.findRecordStart(0));
+        for (int i = 1; i < starts.size(); i++) {
+            assertEquals((long) starts.get(i), splitter.findRecordStart(starts.get(i)));
+            assertEquals((long) starts.get(i), splitter.findRecordStart(starts.get(i - 1) + 1));
+        }
+        assertEquals(splitter.getFileSize(), splitter.findRecordStart(starts.get(starts.size() - 1) + 1));
+        splitter.close();
+    }
+
+    private static void assertRangesMatch(final String fileName, final boolean permissive,
+            final boolean toUtf8, final String encoding) throws IOException {
+        final File file = new File(fileName);
+        final List<String> expected = new ArrayList<String>();
+        final InputStream input = new FileInputStream(file);
+        final MarcReader sequential = new MarcPermissiveStreamReader(input, permissive, toUtf8, encoding);
+        while (sequential.hasNext()) {
+            expected.add(sequential.next().toString());
+        }
+        input.close();
+
+        final MarcFileSplitter splitter = new MarcFileSplitter(file);
+        for (final int parts : new int[] { 1, 2, 3, 7, 50 }) {
+            final List<String> actual = new ArrayList<String>();
+            final List<MarcReader> readers = splitter.getReaders(parts, permissive, toUtf8, encoding);
+            assertTrue(readers.size() <= parts);
+            for (final MarcReader reader : readers) {
+                while (reader.hasNext()) {
+                    actual.add(reader.next().toString());
+                }
+            }
+            assertEquals(fileName + " in " + parts + " parts", expected, actual);
+        }
+        splitter.close();
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcJsonLinesReader;
+import org.marc4j.MarcJsonReader;
+import org.marc4j.MarcJsonWriter;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcReaderConfig;
+import org.marc4j.MarcReaderFactory;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcJsonLinesReader} and the JSON Lines format of
+ * {@link MarcJsonWriter}.
+ */
+public class MarcJsonLinesReaderTest {
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcJsonWriter writer = new MarcJsonWriter(out, MarcJsonWriter.MARC_IN_JSON_LINES);
+        // indentation doesn't apply to JSON Lines
+        writer.setIndent(true);
+        int written = 0;
+        for (final File file : new File("test/resources").listFiles()) {
+            if (!file.getName().endsWith(".mrc")) {
+                continue;
+            }
+            final MarcReader reader = new MarcPermissiveStreamReader(new FileInputStream(file), true, true);
+            try {
+                while (reader.hasNext()) {
+                    writer.write(reader.next());
+                    written++;
+                }
+            } catch (final MarcException e) {
+                // only the records before the error are written
+            }
+        }
+        writer.close();
+        assertTrue(written > 100);
+        final byte[] bytes = out.toByteArray();
+        final String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+        assertEquals(written, lines.length);
+        for (final String line : lines) {
+            assertTrue(line, line.startsWith("{\"leader\":") && line.endsWith("}"));
+        }
+
+        final List<String> expected = readAll(new MarcJsonReader(new InputStreamReader(new ByteArrayInputStream(
+                bytes), StandardCharsets.UTF_8)));
+        assertEquals(written, expected.size());
+        assertEquals(expected, readAll(new MarcJsonLinesReader(new ByteArrayInputStream(bytes))));
+        for (final int chunkSize : new int[] { 1, 4096, bytes.length * 2 }) {
+            final MarcReader reader = new MarcJsonLinesReader(new ByteArrayInputStream(bytes), 3, chunkSize);
+            assertEquals("chunk size " + chunkSize, expected, readAll(reader));
+        }
+    }
+
+    @Test
+    public void testOneLinePerRecord() {
+        final MarcFactory factory = MarcFactory.newInstance();
+        final Record record = factory.newRecord("00000nam a2200000 a 4500");
+        record.addVariableField(factory.newControlField("001", "line 1\nline 2\u001f"));
+        final DataField df = factory.newDataField("245", '1', '"');
+        df.addSubfield(factory.newSubfield('a', "a/b \"c\" é€"));
+        record.addVariableField(df);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcJsonWriter writer = new MarcJsonWriter(out, MarcJsonWriter.MARC_IN_JSON_LINES);
+        writer.setQuoteLabels(false);
+        writer.write(record);
+        writer.write(record);
+        writer.close();
+
+        final String line = "{\"leader\":\"00000nam a2200000 a 4500\",\"fields\":[" +
+                "{\"001\":\"line 1\\nline 2\\u001f\"}," +
+                "{\"245\":{\"subfields\":[{\"a\":\"a/b \\\"c\\\" é\\u20ac\"}],\"ind1\":\"1\",\"ind2\":\"\\\"\"}}]}\n";
+        assertEquals(line + line, new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        final MarcReader reader = new MarcJsonLinesReader(new ByteArrayInputStream(out.toByteArray()), 2, 1);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(reader.hasNext());
+            final Record read = reader.next();
+            assertEquals("line 1\nline 2\u001f", read.getControlNumber());
+            assertEquals("a/b \"c\" é€", ((DataField) read.getVariableField("245")).getSubfield('a')
+                    .getData());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testMalformedLine() {
+        final StringBuilder json = new StringBuilder("\uFEFF");
+        for (int i = 0; i < 10; i++) {
+            if (i == 5) {
+                json.append("]\n");
+            }
+            json.append("{\"leader\":\"00000nam a2200000 a 4500\",\"fields\":[{\"001\":\"" + i + "\"}]}\n");
+        }
+        final byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (final MarcReader reader : new MarcReader[] { new MarcJsonLinesReader(new ByteArrayInputStream(bytes)),
+            new MarcJsonLinesReader(new ByteArrayInputStream(bytes), 2, 1) }) {
+            int read = 0;
+            try {
+                while (reader.hasNext()) {
+                    assertEquals(String.valueOf(read), reader.next().getControlNumber());
+                    read++;
+                }
+                fail("malformed input should fail");
+            } catch (final MarcException e) {
+                assertEquals(5, read);
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testFactoryDetection() throws IOException {
+        final MarcReaderConfig config = new MarcReaderConfig().setDecodeThreads(2);
+        MarcReader reader = MarcReaderFactory.makeReader(config, null, "test/resources/summerland-marc-in-json.json");
+        assertTrue(reader instanceof MarcJsonLinesReader);
+        assertEquals(1, readAll(reader).size());
+
+        reader = MarcReaderFactory.makeReader(config, null, "test/resources/summerland-marc-in-json-indented.json");
+        assertTrue(reader instanceof MarcJsonReader);
+        assertEquals(1, readAll(reader).size());
+    }
+
+    private static List<String> readAll(final MarcReader reader) {
+        final List<String> records = new ArrayList<String>();
+        while (reader.hasNext()) {
+            records.add(reader.next().toString());
+        }
+        return records;
+    }
+}
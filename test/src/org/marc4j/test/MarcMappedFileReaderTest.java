@@ -0,0 +1,120 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcMappedFileReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+
+/**
+ * Tests of {@link MarcMappedFileReader}.
+ */
+public class MarcMappedFileReaderTest {
+
+    @Test
+    public void testReadMatchesStreamReader() throws IOException {
+        final File file = new File("test/resources/chabon.mrc");
+        assertSameRecords(file, new MarcMappedFileReader(file));
+    }
+
+    @Test
+    public void testRecordsCrossingWindows() throws IOException {
+        // the smallest window is 100000 bytes, so this file needs several
+        final File file = new File("test/resources/pride-and-prejudice-fixed.mrc");
+        final MarcMappedFileReader reader = new MarcMappedFileReader(file, null, 1);
+        assertSameRecords(file, reader);
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testRecordOffsets() throws IOException {
+        final File file = new File("test/resources/chabon.mrc");
+        final byte[] data = Files.readAllBytes(file.toPath());
+        final MarcMappedFileReader reader = new MarcMappedFileReader(file);
+
+        assertEquals(-1, reader.getRecordOffset());
+        reader.next();
+        assertEquals(0, reader.getRecordOffset());
+        reader.next();
+        final int firstLength = Integer.parseInt(new String(data, 0, 5, "US-ASCII"));
+        assertEquals(firstLength, reader.getRecordOffset());
+        reader.close();
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        final byte[] data = Files.readAllBytes(new File("test/resources/chabon.mrc").toPath());
+        final File file = File.createTempFile("truncated", ".mrc");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(data, 0, data.length - 10);
+        out.close();
+
+        final MarcMappedFileReader reader = new MarcMappedFileReader(file);
+        reader.next();
+        try {
+            reader.next();
+            fail("Expected an exception for a truncated record");
+        } catch (final MarcException e) {
+            assertEquals("Premature end of file encountered", e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testNoMoreRecordsAfterTruncatedRecord() throws IOException {
+        final byte[] data = Files.readAllBytes(new File("test/resources/chabon.mrc").toPath());
+        final File file = File.createTempFile("truncated", ".mrc");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(data, 0, data.length - 10);
+        out.close();
+
+        final MarcMappedFileReader reader = new MarcMappedFileReader(file);
+        int read = 0;
+        int errors = 0;
+        while (reader.hasNext()) {
+            try {
+                reader.next();
+                read++;
+            } catch (final MarcException e) {
+                // keep reading, as callers of the other readers do
+                errors++;
+                assertTrue("the reader keeps failing on the same record", errors == 1);
+            }
+        }
+        assertEquals(1, read);
+        assertEquals(1, errors);
+        assertFalse(reader.hasNext());
+    }
+
+    private void assertSameRecords(final File file, final MarcReader mapped) throws IOException {
+        final InputStream input = new FileInputStream(file);
+        final MarcReader expected = new MarcStreamReader(input);
+        int count = 0;
+
+        while (expected.hasNext()) {
+            assertTrue(mapped.hasNext());
+            assertEquals(expected.next().toString(), mapped.next().toString());
+            count++;
+        }
+        assertFalse(mapped.hasNext());
+        assertTrue(count > 0);
+        input.close();
+    }
+}
@@ -0,0 +1,92 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcParallelStreamReader;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcReaderConfig;
+import org.marc4j.MarcReaderFactory;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcParallelStreamReader}.
+ */
+public class MarcParallelStreamReaderTest {
+
+    @Test
+    public void testSameRecordsAsSequentialReader() throws IOException {
+        assertSameRecords("test/resources/chabon.mrc", false, false, "ISO8859_1");
+        assertSameRecords("test/resources/pride-and-prejudice-fixed.mrc", false, true, "MARC8");
+    }
+
+    @Test
+    public void testSameRecordsAsPermissiveReader() throws IOException {
+        assertSameRecords("test/resources/pride-and-prejudice-with-many-errors.mrc", true, true, "BESTGUESS");
+        assertSameRecords("test/resources/bad_too_long_plus_2.mrc", true, true, "BESTGUESS");
+        assertSameRecords("test/resources/bad_hathi_records.mrc", true, true, "BESTGUESS");
+    }
+
+    @Test
+    public void testErrorReturnedInOrder() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/chabon.mrc"));
+        final MarcReader reader = new MarcParallelStreamReader(new ByteArrayInputStream(data, 0, data.length - 10),
+                4);
+
+        assertTrue(reader.hasNext());
+        assertEquals("11939876", reader.next().getControlNumber());
+        assertTrue(reader.hasNext());
+        try {
+            reader.next();
+            fail("Expected an exception for the truncated record");
+        } catch (final MarcException e) {
+            assertEquals("Premature end of file encountered", e.getMessage());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testFactoryMode() throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("marc.decode_threads", "4");
+        final MarcReader reader = MarcReaderFactory.makeReader(new MarcReaderConfig(props),
+                getClass().getResourceAsStream("/chabon.mrc"));
+
+        assertTrue(reader instanceof MarcParallelStreamReader);
+        int count = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
+    private void assertSameRecords(final String file, final boolean permissive, final boolean toUtf8,
+            final String defaultEncoding) throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get(file));
+        final MarcReader expected = new MarcPermissiveStreamReader(new ByteArrayInputStream(data), permissive,
+                toUtf8, defaultEncoding);
+        final MarcReader parallel = new MarcParallelStreamReader(new ByteArrayInputStream(data), 3, permissive,
+                toUtf8, defaultEncoding);
+
+        while (expected.hasNext()) {
+            assertTrue(parallel.hasNext());
+            final Record expectedRecord = expected.next();
+            final Record record = parallel.next();
+            assertEquals(expectedRecord.toString(), record.toString());
+            assertEquals(String.valueOf(expectedRecord.getErrors()), String.valueOf(record.getErrors()));
+        }
+        assertFalse(parallel.hasNext());
+    }
+}
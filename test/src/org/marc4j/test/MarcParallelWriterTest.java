@@ -0,0 +1,158 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcJsonWriter;
+import org.marc4j.MarcParallelWriter;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.MarcStreamWriter;
+import org.marc4j.MarcWriter;
+import org.marc4j.MarcXmlWriter;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcParallelWriter}.
+ */
+public class MarcParallelWriterTest {
+
+    private static final String FILE = "test/resources/pride-and-prejudice-fixed.mrc";
+
+    @Test
+    public void testSameOutputAsStreamWriter() throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MarcStreamWriter writer = new MarcStreamWriter(expected, "UTF-8");
+        writer.setConverter(new AnselToUnicode());
+        copy(writer);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final MarcParallelWriter parallel = new MarcParallelWriter(actual, MarcParallelWriter.ISO2709, 4);
+        parallel.setEncoding("UTF-8");
+        parallel.setConverterFactory(AnselToUnicode::new);
+        copy(parallel);
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testSameOutputAsXmlWriter() throws IOException {
+        for (final boolean indent : new boolean[] { false, true }) {
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final MarcXmlWriter writer = new MarcXmlWriter(expected, indent);
+            writer.setConverter(new AnselToUnicode());
+            copy(writer);
+
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final MarcParallelWriter parallel = new MarcParallelWriter(actual, MarcParallelWriter.MARCXML, 4);
+            parallel.setIndent(indent);
+            parallel.setConverter(new AnselToUnicode());
+            copy(parallel);
+
+            assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testEmptyXmlCollection() throws IOException {
+        for (final boolean indent : new boolean[] { false, true }) {
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new MarcXmlWriter(expected, indent).close();
+
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final MarcParallelWriter parallel = new MarcParallelWriter(actual, MarcParallelWriter.MARCXML, 2);
+            parallel.setIndent(indent);
+            parallel.close();
+
+            assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testSameOutputAsJsonWriter() throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MarcJsonWriter writer = new MarcJsonWriter(expected, MarcJsonWriter.MARC_JSON);
+        writer.setConverter(new AnselToUnicode());
+        copy(writer);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final MarcParallelWriter parallel = new MarcParallelWriter(actual, MarcParallelWriter.MARC_JSON, 4);
+        parallel.setConverterFactory(AnselToUnicode::new);
+        copy(parallel);
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testErrorForOversizeRecord() throws IOException {
+        final MarcReader reader = new MarcStreamReader(Files.newInputStream(Paths.get("test/resources/chabon.mrc")));
+        final Record record = reader.next();
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 110000; i++) {
+            data.append("x");
+        }
+        record.getDataFields().get(0).getSubfields().get(0).setData(data.toString());
+
+        final MarcParallelWriter parallel = new MarcParallelWriter(new ByteArrayOutputStream(),
+                MarcParallelWriter.ISO2709, 2);
+        parallel.write(record);
+        try {
+            parallel.close();
+            fail("Expected an exception for the oversized record");
+        } catch (final MarcException e) {
+            assertTrue(e.getMessage().startsWith("Record is too long"));
+        }
+    }
+
+    @Test
+    public void testFailedRecordLeftOut() throws IOException {
+        final MarcReader reader = new MarcStreamReader(Files.newInputStream(Paths.get(FILE)));
+        final Record first = reader.next();
+        final Record invalid = reader.next();
+        final Record last = reader.next();
+        invalid.setLeader(null);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final MarcXmlWriter writer = new MarcXmlWriter(expected);
+        writer.write(first);
+        writer.write(last);
+        writer.close();
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final MarcParallelWriter parallel = new MarcParallelWriter(actual, MarcParallelWriter.MARCXML, 2);
+        parallel.write(first);
+        parallel.write(invalid);
+        parallel.write(last);
+        try {
+            parallel.close();
+            fail("Expected an exception for the invalid record");
+        } catch (final MarcException e) {
+            assertEquals("Marc record didn't validate", e.getMessage());
+        }
+        assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+
+        // closing again does nothing
+        parallel.close();
+        assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+    }
+
+    private static void copy(final MarcWriter writer) throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get(FILE));
+        final MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(data));
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,117 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcError;
+import org.marc4j.MarcException;
+import org.marc4j.MarcParallelXmlReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcXmlPullReader;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcParallelXmlReader}.
+ */
+public class MarcParallelXmlReaderTest {
+
+    private static final String RECORD = "<marc:record><marc:leader>00714cam a2200205 a 4500</marc:leader>"
+            + "<marc:controlfield tag=\"001\">%d</marc:controlfield>"
+            + "<marc:datafield tag=\"245\" ind1=\"1\" ind2=\"0\"><marc:subfield code=\"a\">%s</marc:subfield>"
+            + "</marc:datafield></marc:record>\n";
+
+    @Test
+    public void testSameAsPullReader() throws IOException {
+        final File[] files = new File("test/resources").listFiles();
+        int compared = 0;
+        for (final File file : files) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            final List<String> expected = readAll(new MarcXmlPullReader(new FileInputStream(file)));
+            // cut before every record
+            final List<String> actual = readAll(new MarcParallelXmlReader(new FileInputStream(file), 3, 1));
+            assertEquals(file.getName(), expected, actual);
+            compared++;
+        }
+        assertTrue(compared > 10);
+    }
+
+    @Test
+    public void testMarkupAroundRecords() throws IOException {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<!DOCTYPE marc:collection [ <!ENTITY title \"The <b>title</b>\"> ]>\n");
+        xml.append("<!-- <marc:record> -->\n");
+        xml.append("<marc:collection xmlns:marc=\"http://www.loc.gov/MARC21/slim\" note='a > b'>\n");
+        for (int i = 0; i < 200; i++) {
+            xml.append(String.format(RECORD, i, i % 3 == 0 ? "<![CDATA[</marc:record><marc:record>]]>" : "&title;"));
+            if (i % 7 == 0) {
+                xml.append("<extra><marc:record/><?pi </marc:collection> ?></extra><!-- </marc:record> -->\n");
+            }
+        }
+        xml.append("</marc:collection>\n<!-- trailing -->\n");
+        final byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+        final List<String> expected = readAll(new MarcXmlPullReader(new ByteArrayInputStream(bytes)));
+        // the empty records nested in the extra elements are read as well
+        assertEquals(229, expected.size());
+        for (final int chunkSize : new int[] { 1, 500, 4096, bytes.length * 2 }) {
+            final MarcParallelXmlReader reader = new MarcParallelXmlReader(new ByteArrayInputStream(bytes), 4,
+                    chunkSize);
+            assertEquals("chunk size " + chunkSize, expected, readAll(reader));
+        }
+    }
+
+    @Test
+    public void testTruncatedInput() {
+        final StringBuilder xml = new StringBuilder("<collection xmlns=\"http://www.loc.gov/MARC21/slim\">");
+        for (int i = 0; i < 10; i++) {
+            xml.append(String.format(RECORD, i, "title").replace("marc:", ""));
+        }
+        xml.append("<record><leader>00714cam a2200205 a 4500</leader><controlfield ta");
+
+        final MarcReader reader = new MarcParallelXmlReader(new ByteArrayInputStream(xml.toString().getBytes(
+                StandardCharsets.UTF_8)), 2, 200);
+        int read = 0;
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+                read++;
+            }
+            fail("truncated input should fail");
+        } catch (final MarcException e) {
+            assertEquals(10, read);
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    /**
+     * Returns the records of the reader with their errors, as strings.
+     */
+    private static List<String> readAll(final MarcReader reader) {
+        final List<String> records = new ArrayList<String>();
+        while (reader.hasNext()) {
+            final Record record = reader.next();
+            final StringBuilder sb = new StringBuilder(record.toString());
+            if (record.getErrors() != null) {
+                for (final MarcError error : record.getErrors()) {
+                    sb.append(error.toString()).append('\n');
+                }
+            }
+            records.add(sb.toString());
+        }
+        return records;
+    }
+}
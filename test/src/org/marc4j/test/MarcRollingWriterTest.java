@@ -0,0 +1,132 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcRollingWriter;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.Record;
+import org.marc4j.util.RawRecordReader;
+
+/**
+ * Tests of {@link MarcRollingWriter}.
+ */
+public class MarcRollingWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRollByRecordCount() throws IOException {
+        final List<Record> records = read(new File("test/resources/summerland.mrc"));
+        final String base = new File(folder.getRoot(), "out").getPath();
+        final MarcRollingWriter writer = new MarcRollingWriter(base);
+        writer.setMaxRecords(2);
+        for (int i = 0; i < 3; i++) {
+            for (final Record record : records) {
+                writer.write(record);
+            }
+        }
+        writer.close();
+
+        final int total = records.size() * 3;
+        final List<File> files = writer.getFiles();
+        assertEquals((total + 1) / 2, files.size());
+        assertEquals(new File(base + "-01.mrc"), files.get(0));
+        int count = 0;
+        for (final File file : files) {
+            final int inFile = read(file).size();
+            assertTrue(inFile <= 2);
+            count += inFile;
+        }
+        assertEquals(total, count);
+    }
+
+    @Test
+    public void testRawRollBySizeMatchesInput() throws IOException {
+        final File input = new File("test/resources/pride-and-prejudice-fixed.mrc");
+        final MarcRollingWriter writer = new MarcRollingWriter(new File(folder.getRoot(), "out").getPath());
+        writer.setMaxBytes(20000);
+        final RawRecordReader reader = new RawRecordReader(new FileInputStream(input), false);
+        while (reader.hasNext()) {
+            writer.writeRaw(reader.next().getRecordBytes());
+        }
+        writer.close();
+
+        // the files put back together give the input again
+        final ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (final File file : writer.getFiles()) {
+            final byte[] data = Files.readAllBytes(file.toPath());
+            assertTrue(data.length <= 20000);
+            joined.write(data);
+        }
+        assertTrue(writer.getFiles().size() > 1);
+        assertArrayEquals(Files.readAllBytes(input.toPath()), joined.toByteArray());
+    }
+
+    @Test
+    public void testPartitionsByControlNumber() throws IOException {
+        final File input = new File("test/resources/pride-and-prejudice-fixed.mrc");
+        final List<Record> records = read(input);
+
+        // decoded and raw records land in the same partitions
+        final MarcRollingWriter decoded = new MarcRollingWriter(new File(folder.getRoot(), "decoded").getPath());
+        decoded.setPartitions(4);
+        records.parallelStream().forEach(decoded::write);
+        decoded.close();
+
+        final MarcRollingWriter raw = new MarcRollingWriter(new File(folder.getRoot(), "raw").getPath());
+        raw.setPartitions(4);
+        final RawRecordReader reader = new RawRecordReader(new FileInputStream(input), false);
+        while (reader.hasNext()) {
+            raw.writeRaw(reader.next().getRecordBytes());
+        }
+        raw.close();
+
+        assertEquals(4, decoded.getFiles().size());
+        final Map<String, Integer> partitionOf = new HashMap<String, Integer>();
+        int count = 0;
+        for (int i = 1; i <= 4; i++) {
+            final List<Record> fromDecoded = read(new File(folder.getRoot(), String.format("decoded-%02d.mrc", i)));
+            final List<Record> fromRaw = read(new File(folder.getRoot(), String.format("raw-%02d.mrc", i)));
+            assertEquals(fromRaw.size(), fromDecoded.size());
+            for (final Record record : fromDecoded) {
+                partitionOf.put(record.getControlNumber(), i);
+            }
+            for (final Record record : fromRaw) {
+                assertEquals(Integer.valueOf(i), partitionOf.get(record.getControlNumber()));
+            }
+            count += fromDecoded.size();
+        }
+        assertEquals(records.size(), count);
+    }
+
+    private static List<Record> read(final File file) throws IOException {
+        final List<Record> records = new ArrayList<Record>();
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final MarcReader reader = new MarcStreamReader(input);
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        } finally {
+            input.close();
+        }
+        return records;
+    }
+}
@@ -0,0 +1,78 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcSplitStreamWriter;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.VariableField;
+import org.marc4j.test.utils.StaticTestRecords;
+
+/**
+ * Tests of {@link MarcSplitStreamWriter}.
+ */
+public class MarcSplitStreamWriterTest {
+
+    @Test
+    public void testItemsSpreadOverRecords() {
+        final List<Record> records = writeWithItems(1000, 2000);
+
+        assertTrue(records.size() > 1);
+        int items = 0;
+        for (final Record record : records) {
+            // every part keeps all the other fields
+            assertEquals(StaticTestRecords.getSummerlandRecord().getDataFields().size(), record.getDataFields()
+                    .size() - record.getVariableFields("999").size());
+            assertTrue(record.getVariableFields("999").size() > 0);
+            // the threshold applies to the field data
+            assertTrue(record.getLeader().getRecordLength() - record.getLeader().getBaseAddressOfData() < 2000 + 50);
+            for (final VariableField field : record.getVariableFields("999")) {
+                assertEquals("item " + items++, ((DataField) field).getSubfield('a').getData());
+            }
+        }
+        assertEquals(1000, items);
+    }
+
+    @Test
+    public void testThresholdBelowFixedFields() {
+        // the fields that aren't split already exceed the threshold, so every
+        // record gets a single item
+        final List<Record> records = writeWithItems(5, 100);
+        assertEquals(5, records.size());
+    }
+
+    @Test
+    public void testRecordWithoutItems() {
+        assertEquals(1, writeWithItems(0, 100).size());
+    }
+
+    private static List<Record> writeWithItems(final int count, final int threshold) {
+        final MarcFactory factory = MarcFactory.newInstance();
+        final Record record = StaticTestRecords.getSummerlandRecord();
+        for (int i = 0; i < count; i++) {
+            record.addVariableField(factory.newDataField("999", ' ', ' ', "a", "item " + i, "b", "39000" + i));
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcSplitStreamWriter writer = new MarcSplitStreamWriter(out, "UTF-8", threshold, "999");
+        writer.write(record);
+        writer.close();
+
+        final List<Record> records = new ArrayList<Record>();
+        final MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(out.toByteArray()));
+        while (reader.hasNext()) {
+            records.add(reader.next());
+        }
+        return records;
+    }
+}
@@ -1,6 +1,7 @@
 
 package org.marc4j.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -11,8 +12,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import org.junit.Test;
+import org.marc4j.MarcBinaryParser;
 import org.marc4j.MarcException;
 import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.Record;
 
 /**
  * Tests of {@link MarcStreamReader}.
@@ -72,4 +75,35 @@ public class MarcStreamReaderTest {
             fail("Failed to parse record read from byte stream");
         }
     }
+
+    @Test
+    public void testParseRecordsFromSharedBuffer() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/summerland.mrc"));
+        final byte[] buf = new byte[data.length + 10];
+        System.arraycopy(data, 0, buf, 10, data.length);
+
+        final MarcBinaryParser parser = new MarcBinaryParser();
+        final int length = MarcBinaryParser.parseRecordLength(buf, 10);
+        final Record parsed = parser.parseRecord(buf, 10, length);
+
+        final MarcStreamReader reader = new MarcStreamReader(new ByteArrayInputStream(data));
+        assertEquals(reader.next().toString(), parsed.toString());
+    }
+
+    @Test
+    public void testUnterminatedSubfield() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/summerland.mrc"));
+        final int recordLength = MarcBinaryParser.parseRecordLength(data, 0);
+
+        // overwrite the terminators of the last field and the record
+        data[recordLength - 2] = 'x';
+        data[recordLength - 1] = 'x';
+
+        try {
+            new MarcStreamReader(new ByteArrayInputStream(data, 0, recordLength)).next();
+            fail("Expected an exception for a record without terminators");
+        } catch (final MarcException e) {
+            assertEquals("an error occured reading input", e.getMessage());
+        }
+    }
 }
@@ -1,12 +1,30 @@
 package org.marc4j.test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
+import org.marc4j.MarcBinaryEncoder;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
 import org.marc4j.MarcStreamWriter;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.DataField;
 import org.marc4j.marc.Record;
 import org.marc4j.test.utils.StaticTestRecords;
 import org.marc4j.test.utils.TestUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created with IntelliJ IDEA.
@@ -28,5 +46,84 @@ public class MarcStreamWriterTest {
         TestUtils.validateBytesAgainstFile(out.toByteArray(), StaticTestRecords.RESOURCES_SUMMERLAND_MRC);
     }
 
+    @Test
+    public void testWritersInParallel() throws Exception {
+        final byte[] source = Files.readAllBytes(Paths.get("test/resources/pride-and-prejudice-fixed.mrc"));
+        final byte[] expected = rewrite(source);
+
+        // each writer has its own encoder, so they can safely run at once
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+        for (int t = 0; t < 8; t++) {
+            results.add(executor.submit(new Callable<byte[]>() {
+
+                @Override
+                public byte[] call() {
+                    return rewrite(source);
+                }
+            }));
+        }
+        for (final Future<byte[]> result : results) {
+            assertArrayEquals(expected, result.get());
+        }
+        executor.shutdown();
+    }
+
+    private static byte[] rewrite(final byte[] source) {
+        final MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(source));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcStreamWriter writer = new MarcStreamWriter(out, "UTF-8");
+        writer.setConverter(new AnselToUnicode());
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testOverriddenHooksAreUsed() throws Exception {
+        final byte[] source = Files.readAllBytes(Paths.get("test/resources/pride-and-prejudice-fixed.mrc"));
+
+        // a subclass that overrides a hook without changing it writes the same bytes
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcStreamWriter writer = new MarcStreamWriter(out, "UTF-8") {
+
+            @Override
+            protected byte[] getDataElement(final String data) throws IOException {
+                return super.getDataElement(data);
+            }
+        };
+        writer.setConverter(new AnselToUnicode());
+        MarcReader reader = new MarcStreamReader(new ByteArrayInputStream(source));
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+        }
+        assertArrayEquals(rewrite(source), out.toByteArray());
+
+        // and the output of a hook that changes the data is written
+        final ByteArrayOutputStream upper = new ByteArrayOutputStream();
+        final MarcStreamWriter upperWriter = new MarcStreamWriter(upper) {
+
+            @Override
+            protected byte[] getDataElement(final String data) throws IOException {
+                return super.getDataElement(data.toUpperCase());
+            }
+        };
+        reader = new MarcStreamReader(new ByteArrayInputStream(source));
+        final Record record = reader.next();
+        final String title = ((DataField) record.getVariableField("245")).getSubfield('a').getData();
+        upperWriter.write(record);
+        reader = new MarcStreamReader(new ByteArrayInputStream(upper.toByteArray()));
+        assertEquals(title.toUpperCase(), ((DataField) reader.next().getVariableField("245")).getSubfield('a')
+                .getData());
+    }
 
+    @Test
+    public void testFormatNumber() {
+        final byte[] buf = new byte[5];
+        MarcBinaryEncoder.formatNumber(buf, 0, 5, 42);
+        assertEquals("00042", new String(buf));
+        MarcBinaryEncoder.formatNumber(buf, 1, 4, 12345);
+        assertEquals("09999", new String(buf));
+    }
 }
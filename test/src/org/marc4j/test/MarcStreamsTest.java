@@ -0,0 +1,95 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+import org.marc4j.MarcFileSpliterator;
+import org.marc4j.MarcFileSplitter;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcStreams;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link MarcStreams}, {@link org.marc4j.MarcReaderSpliterator} and
+ * {@link MarcFileSpliterator}.
+ */
+public class MarcStreamsTest {
+
+    private static final File FILE = new File("test/resources/pride-and-prejudice-fixed.mrc");
+
+    @Test
+    public void testReaderStream() throws IOException {
+        final List<String> expected = readSequentially();
+
+        final InputStream input = new FileInputStream(FILE);
+        final List<String> sequential = MarcStreams.stream(new MarcPermissiveStreamReader(input, true, true))
+                .map(Record::toString).collect(Collectors.toList());
+        input.close();
+        assertEquals(expected, sequential);
+
+        final InputStream input2 = new FileInputStream(FILE);
+        final List<String> parallel = MarcStreams.stream(new MarcPermissiveStreamReader(input2, true, true))
+                .parallel().map(Record::toString).collect(Collectors.toList());
+        input2.close();
+        assertEquals(expected, parallel);
+    }
+
+    @Test
+    public void testFileStream() throws IOException {
+        final List<String> expected = readSequentially();
+
+        try (Stream<Record> records = MarcStreams.stream(FILE, true, true, "BESTGUESS")) {
+            assertEquals(expected, records.map(Record::toString).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testFileSplitting() throws IOException {
+        final List<String> expected = readSequentially();
+        final MarcFileSplitter splitter = new MarcFileSplitter(FILE);
+
+        final Spliterator<Record> whole = new MarcFileSpliterator(splitter, 0, splitter.getFileSize(), true,
+                true, "BESTGUESS", 4096);
+        final Spliterator<Record> prefix = whole.trySplit();
+        assertNotNull(prefix);
+        assertEquals(splitter.getFileSize(), prefix.estimateSize() + whole.estimateSize());
+
+        // once records have been read from a range it is no longer split
+        whole.tryAdvance(record -> { });
+        assertNull(whole.trySplit());
+
+        final List<String> parallel = StreamSupport.stream(new MarcFileSpliterator(splitter, 0,
+                splitter.getFileSize(), true, true, "BESTGUESS", 4096), true).map(Record::toString)
+                .collect(Collectors.toList());
+        assertEquals(expected, parallel);
+        splitter.close();
+    }
+
+    private static List<String> readSequentially() throws IOException {
+        final InputStream input = new FileInputStream(FILE);
+        try {
+            final MarcPermissiveStreamReader reader = new MarcPermissiveStreamReader(input, true, true,
+                    "BESTGUESS");
+            final List<String> records = new ArrayList<String>();
+            while (reader.hasNext()) {
+                records.add(reader.next().toString());
+            }
+            return records;
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcError;
+import org.marc4j.MarcException;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcXmlPullReader;
+import org.marc4j.MarcXmlReader;
+import org.marc4j.marc.Record;
+import org.marc4j.test.utils.TestUtils;
+
+/**
+ * Tests of {@link MarcXmlPullReader}.
+ */
+public class MarcXmlPullReaderTest {
+
+    @Test
+    public void testReadRecords() throws IOException {
+        final InputStream input = getClass().getResourceAsStream("/chabon.xml");
+        final MarcReader reader = new MarcXmlPullReader(input);
+
+        assertTrue(reader.hasNext());
+        TestUtils.validateKavalieAndClayRecord(reader.next());
+        assertTrue(reader.hasNext());
+        TestUtils.validateSummerlandRecord(reader.next());
+        assertFalse(reader.hasNext());
+        input.close();
+    }
+
+    @Test
+    public void testSameAsMarcXmlReader() throws IOException {
+        final File[] files = new File("test/resources").listFiles();
+        int compared = 0;
+        for (final File file : files) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            final List<String> expected = readAll(new MarcXmlReader(new FileInputStream(file)));
+            final List<String> actual = readAll(new MarcXmlPullReader(new FileInputStream(file)));
+            assertEquals(file.getName(), expected, actual);
+            compared++;
+        }
+        assertTrue(compared > 10);
+    }
+
+    @Test(expected = MarcException.class)
+    public void testMalformedXml() {
+        final String xml = "<collection><record><leader>00714cam a2200205 a 4500</leader></collection>";
+        final MarcReader reader = new MarcXmlPullReader(new ByteArrayInputStream(xml.getBytes(
+                StandardCharsets.UTF_8)));
+        reader.hasNext();
+    }
+
+    /**
+     * Returns the records of the reader with their errors, as strings.
+     */
+    private static List<String> readAll(final MarcReader reader) {
+        final List<String> records = new ArrayList<String>();
+        while (reader.hasNext()) {
+            final Record record = reader.next();
+            final StringBuilder sb = new StringBuilder(record.toString());
+            if (record.getErrors() != null) {
+                for (final MarcError error : record.getErrors()) {
+                    sb.append(error.toString()).append('\n');
+                }
+            }
+            records.add(sb.toString());
+        }
+        return records;
+    }
+}
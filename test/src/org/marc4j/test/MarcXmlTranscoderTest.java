@@ -0,0 +1,127 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamWriter;
+import org.marc4j.MarcXmlReader;
+import org.marc4j.MarcXmlTranscoder;
+import org.marc4j.converter.CharConverter;
+import org.marc4j.converter.impl.UnicodeToAnsel;
+
+/**
+ * Tests of {@link MarcXmlTranscoder}.
+ */
+public class MarcXmlTranscoderTest {
+
+    @Test
+    public void testSameAsReaderAndWriter() throws IOException {
+        int compared = 0;
+        for (final File file : new File("test/resources").listFiles()) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            final byte[] xml = Files.readAllBytes(file.toPath());
+            final byte[] expected;
+            try {
+                expected = readAndWrite(xml, "UTF-8", null);
+            } catch (final MarcException e) {
+                // not a MARCXML collection
+                continue;
+            }
+            assertArrayEquals(file.getName(), expected, transcode(xml, "UTF-8", null));
+            compared++;
+        }
+        assertTrue(compared > 10);
+    }
+
+    @Test
+    public void testFieldOrder() throws IOException {
+        final String xml = "<collection xmlns=\"http://www.loc.gov/MARC21/slim\"><record>"
+                + "<controlfield tag=\"005\">20010101</controlfield>"
+                + "<datafield tag=\"245\" ind1=\"1\" ind2=\"\"><subfield code=\"a\">Titre été</subfield>"
+                + "<subfield>no code</subfield><subfield code=\"\">empty code</subfield></datafield>"
+                + "<controlfield tag=\"001\">first</controlfield>"
+                + "<datafield tag=\"500\" ind1=\" \"><subfield code=\"a\">no second indicator</subfield></datafield>"
+                + "<controlfield tag=\"000\">ignored</controlfield>"
+                + "<controlfield tag=\"008\">late control field</controlfield>"
+                + "<controlfield tag=\"001\">second</controlfield>"
+                + "<leader>00000nam  2200000 a 4500</leader>"
+                + "</record><record><leader>00000cam a2200000 a 4500</leader>"
+                + "<controlfield tag=\"001\">u1</controlfield><unknown>passed over</unknown>"
+                + "<datafield tag=\"100\" ind1=\"1\" ind2=\" \"><subfield code=\"a\">é</subfield></datafield>"
+                + "</record></collection>";
+        final byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+
+        for (final String encoding : new String[] { "UTF-8", "ISO8859_1" }) {
+            assertArrayEquals(encoding, readAndWrite(bytes, encoding, null), transcode(bytes, encoding, null));
+        }
+
+        // the encoding is chosen from a leader that comes first
+        final byte[] leaderFirst = xml.replace("<leader>00000nam  2200000 a 4500</leader>", "").replace(
+                "<record><controlfield tag=\"005\">", "<record><leader>00000nam  2200000 a 4500</leader>"
+                        + "<controlfield tag=\"005\">").getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(readAndWrite(leaderFirst, MarcStreamWriter.ENCODING_BY_CHAR_CODE, null), transcode(
+                leaderFirst, MarcStreamWriter.ENCODING_BY_CHAR_CODE, null));
+    }
+
+    @Test
+    public void testConverter() throws IOException {
+        final InputStream input = getClass().getResourceAsStream("/OCLC_814388508.xml");
+        final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            xml.write(buffer, 0, read);
+        }
+        input.close();
+
+        final byte[] expected = readAndWrite(xml.toByteArray(), "ISO8859_1", new UnicodeToAnsel());
+        assertArrayEquals(expected, transcode(xml.toByteArray(), "ISO8859_1", new UnicodeToAnsel()));
+    }
+
+    @Test(expected = MarcException.class)
+    public void testTruncatedRecord() {
+        final String xml = "<collection><record><leader>00714cam a2200205 a 4500</leader>";
+        new MarcXmlTranscoder(new ByteArrayOutputStream()).transcode(new ByteArrayInputStream(xml.getBytes(
+                StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] readAndWrite(final byte[] xml, final String encoding, final CharConverter converter) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcStreamWriter writer = new MarcStreamWriter(out, encoding, true);
+        writer.setConverter(converter);
+        final MarcReader reader = new MarcXmlReader(new ByteArrayInputStream(xml));
+        int count = 0;
+        while (reader.hasNext()) {
+            writer.write(reader.next());
+            count++;
+        }
+        writer.close();
+        assertTrue(count > 0);
+        return out.toByteArray();
+    }
+
+    private static byte[] transcode(final byte[] xml, final String encoding, final CharConverter converter) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MarcXmlTranscoder transcoder = new MarcXmlTranscoder(out, encoding, true);
+        transcoder.setConverter(converter);
+        final int count = transcoder.transcode(new ByteArrayInputStream(xml));
+        transcoder.close();
+        assertEquals(count > 0, out.size() > 0);
+        return out.toByteArray();
+    }
+}
@@ -5,6 +5,7 @@ import org.custommonkey.xmlunit.XMLTestCase;
 import org.junit.Test;
 import org.marc4j.Constants;
 import org.marc4j.MarcException;
+import org.marc4j.MarcPermissiveStreamReader;
 import org.marc4j.MarcReader;
 import org.marc4j.MarcStreamReader;
 import org.marc4j.MarcXmlWriter;
@@ -19,11 +20,18 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class MarcXmlWriterTest extends XMLTestCase {
 
@@ -305,4 +313,67 @@ public class MarcXmlWriterTest extends XMLTestCase {
         }
         testoutput.close();
     }
+
+    /**
+     * Tests that writing to an OutputStream, which serializes the XML directly, gives the same bytes as writing
+     * through the JAXP null transform.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDirectSerializerMatchesTransform() throws Exception {
+        final MarcFactory factory = MarcFactory.newInstance();
+        final Record record = factory.newRecord("00000nam a2200000 a 4500");
+        record.addVariableField(factory.newControlField("001", "a&b<c>d\"e'f"));
+        final DataField field = factory.newDataField("245", '1', '0');
+        field.addSubfield(factory.newSubfield('a', "tab\tnewline\nreturn\r\u0001\u007f\u0085\u00e9\u2028"));
+        field.addSubfield(factory.newSubfield('b', ""));
+        field.addSubfield(factory.newSubfield('c', "\ud83d\ude00 \udc00 &amp;"));
+        record.addVariableField(field);
+        assertSameAsTransform(Collections.singletonList(record), false);
+
+        for (final File file : new File("test/resources").listFiles()) {
+            if (!file.getName().endsWith(".mrc")) {
+                continue;
+            }
+            final List<Record> records = new ArrayList<Record>();
+            final InputStream input = new FileInputStream(file);
+            final MarcReader reader = new MarcPermissiveStreamReader(input, true, true);
+            try {
+                while (reader.hasNext()) {
+                    final Record next = reader.next();
+                    if (factory.validateRecord(next)) {
+                        records.add(next);
+                    }
+                }
+            } catch (final MarcException e) {
+                // compare the records read before the error
+            }
+            input.close();
+            assertSameAsTransform(records, true);
+        }
+    }
+
+    private static void assertSameAsTransform(final List<Record> records, final boolean checkNonXMLChars)
+            throws Exception {
+        for (final boolean indent : new boolean[] { false, true }) {
+            final ByteArrayOutputStream direct = new ByteArrayOutputStream();
+            final MarcXmlWriter directWriter = new MarcXmlWriter(direct, indent);
+            directWriter.setCheckNonXMLChars(checkNonXMLChars);
+
+            final StringWriter transformed = new StringWriter();
+            final MarcXmlWriter transformWriter = new MarcXmlWriter(new StreamResult(transformed));
+            transformWriter.setIndent(indent);
+            transformWriter.setCheckNonXMLChars(checkNonXMLChars);
+
+            for (final Record record : records) {
+                directWriter.write(record);
+                transformWriter.write(record);
+            }
+            directWriter.close();
+            transformWriter.close();
+
+            assertEquals(transformed.toString() + "\n", new String(direct.toByteArray(), "UTF-8"));
+        }
+    }
 }
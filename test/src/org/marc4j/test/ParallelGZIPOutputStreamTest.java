@@ -0,0 +1,107 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcReaderConfig;
+import org.marc4j.MarcReaderFactory;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.ParallelGZIPOutputStream;
+import org.marc4j.marc.Record;
+
+/**
+ * Tests of {@link ParallelGZIPOutputStream} and of reading gzip compressed
+ * input with the {@link MarcReaderFactory}.
+ */
+public class ParallelGZIPOutputStreamTest {
+
+    @Test
+    public void testMembersDecompressToInput() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/pride-and-prejudice-fixed.mrc"));
+        final byte[] compressed = compress(data, 4096);
+
+        // every block is a member of its own
+        assertEquals((data.length + 4095) / 4096, countMembers(compressed));
+        assertArrayEquals(data, gunzip(compressed));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        final byte[] compressed = compress(new byte[0], 4096);
+        assertEquals(1, countMembers(compressed));
+        assertEquals(0, gunzip(compressed).length);
+    }
+
+    @Test
+    public void testFactoryReadsCompressedInput() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get("test/resources/summerland.mrc"));
+        final MarcReader reader = MarcReaderFactory.makeReader(new MarcReaderConfig(), new ByteArrayInputStream(
+                compress(data, 100)));
+        final MarcReader expected = new MarcStreamReader(new ByteArrayInputStream(data));
+        while (expected.hasNext()) {
+            final Record record = expected.next();
+            assertEquals(record.toString(), reader.next().toString());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    private static byte[] compress(final byte[] data, final int blockSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(out, 3, blockSize,
+                Deflater.DEFAULT_COMPRESSION);
+        // uneven writes, with flushes in between as some writers do
+        for (int off = 0; off < data.length; off += 1000) {
+            gzip.write(data, off, Math.min(1000, data.length - off));
+            gzip.flush();
+        }
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(final byte[] compressed) throws IOException {
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static int countMembers(final byte[] compressed) throws IOException {
+        // inflate the members one by one, skipping their headers and trailers
+        int members = 0;
+        int off = 0;
+        while (off < compressed.length) {
+            final Inflater inflater = new Inflater(true);
+            inflater.setInput(compressed, off + 10, compressed.length - off - 10);
+            final byte[] buffer = new byte[8192];
+            try {
+                while (!inflater.finished()) {
+                    inflater.inflate(buffer);
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException(e);
+            }
+            off += 10 + (compressed.length - off - 10 - inflater.getRemaining()) + 8;
+            inflater.end();
+            members++;
+        }
+        return members;
+    }
+}
@@ -69,6 +69,68 @@ public class PermissiveReaderTest {
         assertEquals("Should NOT be expanded", "&#x0043;haracter Test", sf.getData());
     }
 
+    @Test
+    public void testLatin1RecordClaimingUtf8() throws Exception {
+        MarcFactory factory = MarcFactory.newInstance();
+        Record r = factory.newRecord("00000cam a2200000 a 4500");
+        r.addVariableField(factory.newControlField("001", "12345"));
+        r.addVariableField(factory.newDataField("245", '1', '0', "a", "Les caf\u00e9s de Paris /", "c", "Andr\u00e9."));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MarcStreamWriter writer = new MarcStreamWriter(out, "ISO8859_1");
+        writer.write(r);
+        writer.close();
+
+        // the accented letters at the end of words can't be MARC-8 or UNIMARC
+        // diacritics, so the record is decoded as ISO-8859-1 straight away
+        MarcReader reader = new MarcPermissiveStreamReader(new ByteArrayInputStream(out.toByteArray()), true, true);
+        Record record = reader.next();
+        DataField f = (DataField) record.getVariableField("245");
+        assertEquals("Les caf\u00e9s de Paris /", f.getSubfield('a').getData());
+        assertEquals("Andr\u00e9.", f.getSubfield('c').getData());
+        boolean foundGuess = false;
+        for (MarcError error : record.getErrors()) {
+            if (error.message.contains("choosing ISO8859_1")) {
+                foundGuess = true;
+            }
+        }
+        assertTrue(foundGuess);
+    }
+
+    @Test
+    public void testMissingTerminatorAtEndOfFile() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MarcStreamWriter writer = new MarcStreamWriter(out);
+        writer.write(StaticTestRecords.chabon[0]);
+        writer.write(StaticTestRecords.chabon[1]);
+        writer.close();
+        byte[] data = out.toByteArray();
+        int firstLength = Integer.parseInt(new String(data, 0, 5, "US-ASCII"));
+        int secondLength = data.length - firstLength;
+
+        // state a record length that is too short for the last record, and
+        // drop its record terminator
+        byte[] broken = new byte[data.length - 1];
+        System.arraycopy(data, 0, broken, 0, broken.length);
+        byte[] shortLength = String.format("%05d", secondLength - 20).getBytes("US-ASCII");
+        System.arraycopy(shortLength, 0, broken, firstLength, 5);
+
+        MarcReader reader = new MarcPermissiveStreamReader(new ByteArrayInputStream(broken), true, false);
+        RecordTestingUtils.assertEqualsIgnoreLeader(StaticTestRecords.chabon[0], reader.next());
+        Record record = reader.next();
+        RecordTestingUtils.assertEqualsIgnoreLeader(StaticTestRecords.chabon[1], record);
+        assertFalse(reader.hasNext());
+
+        boolean foundError = false;
+        for (MarcError error : record.getErrors()) {
+            if (error.message.startsWith("No Record terminator found, end of file reached, Terminator appended")) {
+                assertTrue(error.message, error.message.endsWith(
+                        "(record found at bytes " + firstLength + "-" + (data.length - 1) + ")"));
+                foundError = true;
+            }
+        }
+        assertTrue(foundError);
+    }
+
     private ByteArrayInputStream getInputStreamForTestRecordWithNumericCoding() {
         MarcFactory factory =  MarcFactory.newInstance();
         Record r = StaticTestRecords.chabon[0];
@@ -0,0 +1,165 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marc4j.util.IndexedRawRecordReader;
+import org.marc4j.util.RawRecord;
+import org.marc4j.util.RawRecordIndex;
+import org.marc4j.util.RawRecordReader;
+
+/**
+ * Tests of {@link RawRecordIndex} and {@link IndexedRawRecordReader}.
+ */
+public class RawRecordIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFetchMatchesScan() throws IOException {
+        final File file = copyResource("pride-and-prejudice-fixed.mrc");
+        final List<RawRecord> scanned = scan(file);
+        final IndexedRawRecordReader reader = new IndexedRawRecordReader(file);
+
+        assertTrue(RawRecordIndex.getIndexFile(file).exists());
+
+        // records without an id can't be indexed, records sharing an id are
+        // all indexed and the first one is returned
+        final Map<String, List<RawRecord>> byId = new HashMap<String, List<RawRecord>>();
+        int withId = 0;
+        for (final RawRecord record : scanned) {
+            if (record.getRecordId() == null) {
+                continue;
+            }
+            withId++;
+            if (!byId.containsKey(record.getRecordId())) {
+                byId.put(record.getRecordId(), new ArrayList<RawRecord>());
+            }
+            byId.get(record.getRecordId()).add(record);
+        }
+        assertEquals(withId, reader.getIndex().size());
+
+        for (final Map.Entry<String, List<RawRecord>> entry : byId.entrySet()) {
+            final RawRecord fetched = reader.getRawRecord(entry.getKey());
+            assertEquals(entry.getKey(), fetched.getRecordId());
+            assertArrayEquals(entry.getValue().get(0).getRecordBytes(), fetched.getRecordBytes());
+            assertEquals(entry.getValue().size(), reader.getIndex().getLocations(entry.getKey()).size());
+        }
+        assertNull(reader.getRawRecord("no-such-id"));
+        reader.close();
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final File file = copyResource("chabon.mrc");
+        final RawRecordIndex built = RawRecordIndex.build(file);
+        final File indexFile = folder.newFile("chabon.idx");
+        built.write(indexFile);
+
+        final RawRecordIndex read = RawRecordIndex.read(indexFile);
+        assertTrue(read.isCurrent(file));
+        assertEquals(built.size(), read.size());
+
+        long offset = 0;
+        for (final RawRecord record : scan(file)) {
+            assertEquals(offset, read.getOffset(record.getRecordId()));
+            assertEquals(record.getRecordBytes().length, read.getLength(record.getRecordId()));
+            offset += record.getRecordBytes().length;
+        }
+        assertEquals(-1, read.getOffset("no-such-id"));
+    }
+
+    @Test
+    public void testStaleIndexIsRebuilt() throws IOException {
+        final File file = copyResource("chabon.mrc");
+        RawRecordIndex.build(file).write(RawRecordIndex.getIndexFile(file));
+
+        // replace the file with a different one
+        Files.copy(new File("test/resources/summerland.mrc").toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        assertFalse(RawRecordIndex.read(RawRecordIndex.getIndexFile(file)).isCurrent(file));
+
+        final IndexedRawRecordReader reader = new IndexedRawRecordReader(file);
+        final RawRecord expected = scan(file).get(0);
+        assertArrayEquals(expected.getRecordBytes(), reader.getRawRecord(expected.getRecordId()).getRecordBytes());
+        reader.close();
+    }
+
+    @Test
+    public void testCorruptIndexIsRebuilt() throws IOException {
+        final File file = copyResource("chabon.mrc");
+        final File indexFile = RawRecordIndex.getIndexFile(file);
+        RawRecordIndex.build(file).write(indexFile);
+        final byte[] index = Files.readAllBytes(indexFile.toPath());
+        // an index cut short by a failed write
+        Files.write(indexFile.toPath(), Arrays.copyOf(index, index.length / 2));
+
+        final IndexedRawRecordReader reader = new IndexedRawRecordReader(file);
+        final RawRecord expected = scan(file).get(1);
+        assertArrayEquals(expected.getRecordBytes(), reader.getRawRecord(expected.getRecordId()).getRecordBytes());
+        reader.close();
+        assertArrayEquals(index, Files.readAllBytes(indexFile.toPath()));
+        // no temporary files are left next to the index
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testPullListWithCorruptIndex() throws IOException {
+        final File file = copyResource("chabon.mrc");
+        final RawRecord expected = scan(file).get(1);
+        final File idFile = new File(folder.getRoot(), "ids.txt");
+        Files.write(idFile.toPath(), (expected.getRecordId() + "\n").getBytes("UTF-8"));
+        Files.write(RawRecordIndex.getIndexFile(file).toPath(), new byte[] { 'M', 'R' });
+
+        // the corrupt index is ignored and the file is scanned instead
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintStream stdout = System.out;
+        System.setOut(new PrintStream(out));
+        try {
+            RawRecordReader.main(new String[] { file.getPath(), idFile.getPath() });
+        } finally {
+            System.setOut(stdout);
+        }
+        assertArrayEquals(expected.getRecordBytes(), out.toByteArray());
+    }
+
+    private File copyResource(final String name) throws IOException {
+        final File copy = new File(folder.getRoot(), name);
+        Files.copy(new File("test/resources", name).toPath(), copy.toPath());
+        return copy;
+    }
+
+    private static List<RawRecord> scan(final File file) throws IOException {
+        final List<RawRecord> records = new ArrayList<RawRecord>();
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final RawRecordReader reader = new RawRecordReader(input);
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        } finally {
+            input.close();
+        }
+        return records;
+    }
+}
@@ -0,0 +1,101 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcException;
+import org.marc4j.MarcXmlReader;
+import org.marc4j.RecordStack;
+import org.marc4j.marc.MarcFactory;
+import org.marc4j.marc.Record;
+import org.marc4j.test.utils.TestUtils;
+
+/**
+ * Tests of {@link RecordStack}.
+ */
+public class RecordStackTest {
+
+    @Test
+    public void testRecordsInOrder() throws InterruptedException {
+        final List<Record> records = newRecords(1000);
+        final RecordStack queue = new RecordStack(7, 2);
+        final Thread producer = new Thread(() -> {
+            for (final Record record : records) {
+                queue.push(record);
+            }
+            queue.end();
+        });
+        producer.start();
+
+        for (final Record record : records) {
+            assertTrue(queue.hasNext());
+            assertSame(record, queue.pop());
+        }
+        assertFalse(queue.hasNext());
+        assertNull(queue.pop());
+        producer.join();
+    }
+
+    @Test
+    public void testExceptionAfterRecords() {
+        final List<Record> records = newRecords(3);
+        final RecordStack queue = new RecordStack(2, 2);
+        for (final Record record : records) {
+            queue.push(record);
+        }
+        final MarcException error = new MarcException("bad input");
+        queue.passException(error);
+
+        for (final Record record : records) {
+            assertSame(record, queue.pop());
+        }
+        try {
+            queue.hasNext();
+            fail("the exception should be passed on");
+        } catch (final MarcException e) {
+            assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testInterruptedConsumer() {
+        final RecordStack queue = new RecordStack();
+        Thread.currentThread().interrupt();
+        try {
+            queue.hasNext();
+            fail("waiting should be interrupted");
+        } catch (final MarcException e) {
+            // the interrupt status is kept for the caller
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testBatchedXmlReader() throws Exception {
+        final InputStream input = getClass().getResourceAsStream("/chabon.xml");
+        final MarcXmlReader reader = new MarcXmlReader(input, 1, 1);
+        TestUtils.validateKavalieAndClayRecord(reader.next());
+        TestUtils.validateSummerlandRecord(reader.next());
+        assertFalse(reader.hasNext());
+        input.close();
+    }
+
+    private static List<Record> newRecords(final int count) {
+        final MarcFactory factory = MarcFactory.newInstance();
+        final List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < count; i++) {
+            final Record record = factory.newRecord();
+            record.addVariableField(factory.newControlField("001", "id" + i));
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,120 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcReaderConfig;
+import org.marc4j.MarcReaderFactory;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.TagSelector;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.VariableField;
+
+/**
+ * Tests reading binary MARC records with a {@link TagSelector}.
+ */
+public class TagSelectorTest {
+
+    private static final String FILE = "test/resources/selectedRecs.mrc";
+
+    @Test
+    public void testParse() {
+        assertNull(TagSelector.parse(null));
+        assertNull(TagSelector.parse(" "));
+
+        final TagSelector list = TagSelector.parse("001:020:035:245");
+        assertTrue(list.selects("001"));
+        assertTrue(list.selects("245"));
+        assertFalse(list.selects("100"));
+        assertTrue(list.selects("x245".getBytes(), 1));
+        assertFalse(list.selects("x246".getBytes(), 1));
+
+        final TagSelector pattern = TagSelector.parse("00[1-8]|6..");
+        assertTrue(pattern.selects("008"));
+        assertTrue(pattern.selects("650"));
+        assertFalse(pattern.selects("009"));
+        assertFalse(pattern.selects("245"));
+        assertTrue(pattern.selects("6AB"));
+        assertFalse(pattern.selects("7AB"));
+    }
+
+    @Test
+    public void testStreamReader() throws IOException {
+        final TagSelector selector = TagSelector.parse("001:020:035:245");
+        final List<Record> expected = readAll(new MarcStreamReader(open()));
+
+        final InputStream input = open();
+        final MarcStreamReader reader = new MarcStreamReader(input);
+        reader.setTagSelector(selector);
+        assertSelected(expected, readAll(reader), selector);
+        input.close();
+    }
+
+    @Test
+    public void testPermissiveReader() throws IOException {
+        final TagSelector selector = TagSelector.parse("0..|245");
+        final List<Record> expected = readAll(new MarcPermissiveStreamReader(open(), true, true));
+
+        final InputStream input = open();
+        final MarcPermissiveStreamReader reader = new MarcPermissiveStreamReader(input, true, true);
+        reader.setTagSelector(selector);
+        assertSelected(expected, readAll(reader), selector);
+        input.close();
+    }
+
+    @Test
+    public void testReaderFactory() throws IOException {
+        final MarcReaderConfig config = new MarcReaderConfig().setPermissiveReader(true).setToUtf8(true)
+                .setIncludeFields("001:245");
+        final List<Record> expected = readAll(new MarcPermissiveStreamReader(open(), true, true));
+
+        assertSelected(expected, readAll(MarcReaderFactory.makeReader(config, null, FILE)), config.getTagSelector());
+
+        config.setDecodeThreads(4);
+        assertSelected(expected, readAll(MarcReaderFactory.makeReader(config, null, FILE)), config.getTagSelector());
+    }
+
+    private static void assertSelected(final List<Record> expected, final List<Record> actual,
+            final TagSelector selector) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLeader().toString(), actual.get(i).getLeader().toString());
+
+            final List<String> fields = new ArrayList<String>();
+            for (final VariableField field : expected.get(i).getVariableFields()) {
+                if (selector.selects(field.getTag())) {
+                    fields.add(field.toString());
+                }
+            }
+            final List<String> selected = new ArrayList<String>();
+            for (final VariableField field : actual.get(i).getVariableFields()) {
+                selected.add(field.toString());
+            }
+            assertFalse(selected.isEmpty());
+            assertEquals(fields, selected);
+        }
+    }
+
+    private static InputStream open() throws IOException {
+        return new FileInputStream(FILE);
+    }
+
+    private static List<Record> readAll(final MarcReader reader) {
+        final List<Record> records = new ArrayList<Record>();
+        while (reader.hasNext()) {
+            records.add(reader.next());
+        }
+        return records;
+    }
+}
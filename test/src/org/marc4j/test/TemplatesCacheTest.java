@@ -0,0 +1,124 @@
+package org.marc4j.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.marc4j.MarcXmlWriter;
+import org.marc4j.TemplatesCache;
+import org.marc4j.marc.Record;
+import org.marc4j.test.utils.StaticTestRecords;
+
+/**
+ * Tests of {@link TemplatesCache}.
+ */
+public class TemplatesCacheTest {
+
+    // lists the titles of the records
+    private static final String STYLESHEET = "<xsl:stylesheet version=\"1.0\""
+            + " xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" xmlns:marc=\"http://www.loc.gov/MARC21/slim\">"
+            + "<xsl:template match=\"/\"><titles><xsl:for-each select=\"//marc:datafield[@tag='245']\">"
+            + "<%s><xsl:value-of select=\"marc:subfield[@code='a']\"/></%1$s>"
+            + "</xsl:for-each></titles></xsl:template></xsl:stylesheet>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        TemplatesCache.clear();
+    }
+
+    @Test
+    public void testCachedByLocation() throws IOException {
+        final File file = writeStylesheet("title");
+
+        final Templates templates = TemplatesCache.getTemplates(file.getPath());
+        assertSame(templates, TemplatesCache.getTemplates(file.toURI().toString()));
+        assertSame(templates, TemplatesCache.getTemplates(new StreamSource(file)));
+
+        // a changed file is compiled again
+        writeStylesheet("name");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        final Templates changed = TemplatesCache.getTemplates(file.getPath());
+        assertNotSame(templates, changed);
+        assertTrue(transform(changed, StaticTestRecords.summerland).contains("<name>Summerland /</name>"));
+    }
+
+    @Test
+    public void testWritersOnSeveralThreads() throws Exception {
+        final Templates templates = TemplatesCache.getTemplates(writeStylesheet("title").getPath());
+        final Record[] records = StaticTestRecords.chabon;
+        final String expected = transform(templates, records);
+        assertTrue(expected.contains("<title>Summerland /</title>"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 32; i++) {
+            results.add(executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    return transform(templates, records);
+                }
+            }));
+        }
+        for (final Future<String> result : results) {
+            assertEquals(expected, result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWriterWithStylesheetUrl() throws IOException {
+        final File file = writeStylesheet("title");
+        final StringWriter out = new StringWriter();
+        final MarcXmlWriter writer = new MarcXmlWriter(new StreamResult(out), file.getPath());
+        writer.write(StaticTestRecords.summerland[0]);
+        writer.close();
+
+        assertEquals(transform(TemplatesCache.getTemplates(file.getPath()), StaticTestRecords.summerland),
+                out.toString());
+    }
+
+    private static String transform(final Templates templates, final Record[] records) {
+        final StringWriter out = new StringWriter();
+        final MarcXmlWriter writer = new MarcXmlWriter(new StreamResult(out), templates);
+        for (final Record record : records) {
+            writer.write(record);
+        }
+        writer.close();
+        return out.toString();
+    }
+
+    private File writeStylesheet(final String element) throws IOException {
+        final File file = new File(folder.getRoot(), "titles.xsl");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        writer.write(String.format(STYLESHEET, element));
+        writer.close();
+        return file;
+    }
+}